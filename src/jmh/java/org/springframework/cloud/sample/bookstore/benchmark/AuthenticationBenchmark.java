@@ -0,0 +1,97 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.benchmark;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.cloud.sample.bookstore.inmemory.InMemoryUserRepository;
+import org.springframework.cloud.sample.bookstore.web.model.User;
+import org.springframework.cloud.sample.bookstore.web.security.CachingReactiveAuthenticationManager;
+import org.springframework.cloud.sample.bookstore.web.security.CachingReactiveUserDetailsService;
+import org.springframework.cloud.sample.bookstore.web.security.RepositoryUserDetailsService;
+import org.springframework.cloud.sample.bookstore.web.security.SecurityAuthorities;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UserDetailsRepositoryReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Benchmarks HTTP Basic authentication of a binding user, verifying the password with
+ * BCrypt on every request against verifying it once and caching the result.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthenticationBenchmark {
+
+	private static final String USERNAME = "user";
+
+	private static final String PASSWORD = "password";
+
+	private ReactiveAuthenticationManager bcryptAuthenticationManager;
+
+	private ReactiveAuthenticationManager cachingAuthenticationManager;
+
+	@Setup
+	public void setUp() {
+		PasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+		InMemoryUserRepository userRepository = new InMemoryUserRepository();
+		userRepository
+			.save(new User(USERNAME, passwordEncoder.encode(PASSWORD), SecurityAuthorities.FULL_ACCESS,
+					SecurityAuthorities.BOOK_STORE_ID_PREFIX + "bookstore"))
+			.block();
+		UserDetailsRepositoryReactiveAuthenticationManager manager = new UserDetailsRepositoryReactiveAuthenticationManager(
+				new CachingReactiveUserDetailsService(new RepositoryUserDetailsService(userRepository), 10000,
+						Duration.ofMinutes(5)));
+		manager.setPasswordEncoder(passwordEncoder);
+		this.bcryptAuthenticationManager = manager;
+		this.cachingAuthenticationManager = new CachingReactiveAuthenticationManager(manager, 10000,
+				Duration.ofMinutes(5));
+	}
+
+	@Benchmark
+	public Authentication bcrypt() {
+		return this.bcryptAuthenticationManager.authenticate(credentials()).block();
+	}
+
+	@Benchmark
+	public Authentication cached() {
+		return this.cachingAuthenticationManager.authenticate(credentials()).block();
+	}
+
+	private static Authentication credentials() {
+		return UsernamePasswordAuthenticationToken.unauthenticated(USERNAME, PASSWORD);
+	}
+
+}
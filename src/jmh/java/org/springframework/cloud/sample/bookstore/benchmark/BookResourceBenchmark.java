@@ -0,0 +1,116 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.sample.bookstore.web.controller.BookController;
+import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.cloud.sample.bookstore.web.model.BookStore;
+import org.springframework.cloud.sample.bookstore.web.resource.BookResource;
+import org.springframework.cloud.sample.bookstore.web.resource.BookResourceAssembler;
+import org.springframework.cloud.sample.bookstore.web.resource.BookStoreResource;
+import org.springframework.cloud.sample.bookstore.web.resource.BookStoreResourceAssembler;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.server.reactive.WebFluxLinkBuilder;
+
+/**
+ * Benchmarks building the HATEOAS representation of a book store and serializing it
+ * with Jackson. The self link of every book used to be built with its own
+ * {@link WebFluxLinkBuilder} call; that approach is kept here as the baseline of
+ * {@link #toCollectionModel()}. Run with {@code -PjmhProfilers=gc} to compare the
+ * allocation per call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BookResourceBenchmark {
+
+	@Param({ "10", "1000" })
+	public int books;
+
+	private final BookResourceAssembler assembler = new BookResourceAssembler();
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private BookStore bookStore;
+
+	private BookStoreResource bookStoreResource;
+
+	@Setup
+	public void setUp() {
+		this.bookStore = new BookStore("bookstore");
+		for (int i = 0; i < this.books; i++) {
+			this.bookStore.addBook(new Book("book-" + i, "bookstore", new Book("isbn-" + i, "title", "author")));
+		}
+		this.bookStoreResource = new BookStoreResourceAssembler().toModel(this.bookStore).block();
+	}
+
+	@Benchmark
+	public List<BookResource> toCollectionModel() {
+		return this.assembler.toCollectionModel(this.bookStore.getBooks(), this.bookStore.getId()).block();
+	}
+
+	@Benchmark
+	public List<Link> linkBuilderPerBook() {
+		return Flux.fromIterable(this.bookStore.getBooks())
+			.flatMapSequential((book) -> bookLink(book, this.bookStore.getId()))
+			.collect(Collectors.toList())
+			.block();
+	}
+
+	@Benchmark
+	public List<BookResource> toModels() {
+		return this.assembler.toModels(Flux.fromIterable(this.bookStore.getBooks()), this.bookStore.getId())
+			.collectList()
+			.block();
+	}
+
+	@Benchmark
+	public byte[] serializeBookStoreResource() throws JsonProcessingException {
+		return this.objectMapper.writeValueAsBytes(this.bookStoreResource);
+	}
+
+	private static Mono<Link> bookLink(Book book, String bookStoreId) {
+		return WebFluxLinkBuilder
+			.linkTo(WebFluxLinkBuilder.methodOn(BookController.class).getBook(bookStoreId, book.getId(), null))
+			.withSelfRel()
+			.toMono();
+	}
+
+}
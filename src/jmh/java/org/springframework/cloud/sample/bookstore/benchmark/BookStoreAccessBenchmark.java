@@ -0,0 +1,89 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.benchmark;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.cloud.sample.bookstore.web.security.BookStoreAccess;
+import org.springframework.cloud.sample.bookstore.web.security.SecurityAuthorities;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+/**
+ * Benchmarks the per-request book store access check. {@code legacyEvaluator} is the
+ * authority scan that the removed {@code BookStoreIdEvaluator.canAccessBookstore} ran on
+ * every request from a SpEL expression, kept here as the baseline.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BookStoreAccessBenchmark {
+
+	private static final String BOOK_STORE_ID = "bookstore";
+
+	private Authentication authentication;
+
+	private BookStoreAccess bookStoreAccess;
+
+	@Setup
+	public void setUp() {
+		Collection<GrantedAuthority> authorities = AuthorityUtils.createAuthorityList(SecurityAuthorities.FULL_ACCESS,
+				SecurityAuthorities.BOOK_STORE_ID_PREFIX + BOOK_STORE_ID);
+		this.authentication = UsernamePasswordAuthenticationToken.authenticated("user", null, authorities);
+		this.bookStoreAccess = BookStoreAccess.of(authorities);
+	}
+
+	@Benchmark
+	public boolean legacyEvaluator() {
+		return this.authentication.getAuthorities()
+			.stream()
+			.filter((authority) -> authority.getAuthority().startsWith(SecurityAuthorities.BOOK_STORE_ID_PREFIX))
+			.map((authority) -> authority.getAuthority()
+				.substring(SecurityAuthorities.BOOK_STORE_ID_PREFIX.length())
+				.equals(BOOK_STORE_ID))
+			.findFirst()
+			.orElse(true);
+	}
+
+	@Benchmark
+	public boolean precompiledAccess() {
+		return this.bookStoreAccess.canWrite(BOOK_STORE_ID);
+	}
+
+	@Benchmark
+	public boolean accessBuiltPerRequest() {
+		return BookStoreAccess.of(this.authentication.getAuthorities()).canWrite(BOOK_STORE_ID);
+	}
+
+}
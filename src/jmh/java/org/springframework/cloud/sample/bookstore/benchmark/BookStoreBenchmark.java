@@ -0,0 +1,81 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.benchmark;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.cloud.sample.bookstore.web.model.BookStore;
+
+/**
+ * Benchmarks lookups and removals of books embedded in a {@link BookStore}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BookStoreBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	public int books;
+
+	private BookStore bookStore;
+
+	private String bookId;
+
+	@Setup
+	public void setUp() {
+		this.bookStore = new BookStore("bookstore");
+		for (int i = 0; i < this.books; i++) {
+			this.bookStore.addBook(new Book("book-" + i, "bookstore", new Book("isbn-" + i, "title", "author")));
+		}
+		this.bookId = "book-" + (this.books / 2);
+	}
+
+	@Benchmark
+	public Optional<Book> getBookById() {
+		return this.bookStore.getBookById(this.bookId);
+	}
+
+	/**
+	 * Removes a book and adds it back, so that every invocation sees a store of the same
+	 * size.
+	 * @return the removed book
+	 */
+	@Benchmark
+	public Optional<Book> remove() {
+		Optional<Book> book = this.bookStore.remove(this.bookId);
+		book.ifPresent(this.bookStore::addBook);
+		return book;
+	}
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.benchmark;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.cloud.sample.bookstore.inmemory.InMemoryBookStoreRepository;
+import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.cloud.sample.bookstore.web.model.BookStore;
+import org.springframework.cloud.sample.bookstore.web.model.BookSuggestions;
+import org.springframework.cloud.sample.bookstore.web.service.BookSuggestionIndex;
+import org.springframework.cloud.sample.bookstore.web.service.EmbeddedBookStorage;
+
+/**
+ * Benchmarks type-ahead suggestions from the prefix trees of a warm book store. Sampled,
+ * so the report includes the latency percentiles.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BookSuggestionBenchmark {
+
+	private static final String BOOK_STORE_ID = "bookstore";
+
+	private static final String[] WORDS = { "spring", "boot", "cloud", "native", "reactive", "java", "kotlin",
+			"action", "patterns", "microservices", "data", "security", "testing", "streams", "broker" };
+
+	@Param({ "1000", "100000" })
+	public int books;
+
+	private BookSuggestionIndex suggestionIndex;
+
+	private final List<String> prefixes = new ArrayList<>();
+
+	private int next;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		List<Book> books = new ArrayList<>(this.books);
+		for (int i = 0; i < this.books; i++) {
+			String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+			String author = "Author " + WORDS[random.nextInt(WORDS.length)] + " " + (i % 1000);
+			books.add(new Book("book-" + i, BOOK_STORE_ID, new Book("isbn-" + i, title, author)));
+		}
+		InMemoryBookStoreRepository repository = new InMemoryBookStoreRepository();
+		repository.save(new BookStore(BOOK_STORE_ID)).block();
+		repository.pushBooks(BOOK_STORE_ID, books).block();
+		this.suggestionIndex = new BookSuggestionIndex(repository, new EmbeddedBookStorage(repository),
+				Long.MAX_VALUE, Duration.ofHours(1));
+		for (String word : WORDS) {
+			for (int length = 1; length <= word.length(); length++) {
+				this.prefixes.add(word.substring(0, length));
+			}
+		}
+		// build the prefix trees, so only warm lookups are measured
+		this.suggestionIndex.suggest(BOOK_STORE_ID, "s", 10).block();
+	}
+
+	@Benchmark
+	public BookSuggestions suggest() {
+		String prefix = this.prefixes.get(this.next++ % this.prefixes.size());
+		return this.suggestionIndex.suggest(BOOK_STORE_ID, prefix, 10).block();
+	}
+
+}
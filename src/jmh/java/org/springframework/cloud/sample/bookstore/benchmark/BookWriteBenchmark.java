@@ -0,0 +1,113 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cloud.sample.bookstore.ServiceBrokerApplication;
+import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.cloud.sample.bookstore.web.model.BookStore;
+import org.springframework.cloud.sample.bookstore.web.repository.BookStoreRepository;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Samples the latency of writing embedded books to MongoDB with single atomic
+ * {@code $push} and {@code $pull} updates, against reading, modifying and saving the
+ * whole book store document as the baseline. Each invocation adds a book and removes it
+ * again, so the book store keeps its size. Boots the application against an embedded
+ * MongoDB server on its own port.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BookWriteBenchmark {
+
+	private static final String BOOK_STORE_ID = "bookstore";
+
+	@Param({ "100", "10000" })
+	public int books;
+
+	private ConfigurableApplicationContext context;
+
+	private BookStoreRepository repository;
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		this.context = new SpringApplicationBuilder(ServiceBrokerApplication.class)
+			.properties("server.port=0", "spring.data.mongodb.uri=mongodb://localhost:27019/benchmark-db")
+			.run();
+		this.repository = this.context.getBean(BookStoreRepository.class);
+		List<Book> books = new ArrayList<>(this.books);
+		for (int i = 0; i < this.books; i++) {
+			books.add(newBook("book-" + i));
+		}
+		this.repository.deleteAll().block();
+		this.repository.save(new BookStore(BOOK_STORE_ID)).block();
+		this.repository.pushBooks(BOOK_STORE_ID, books).block();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		SpringApplication.exit(this.context);
+	}
+
+	@Benchmark
+	public BookStore atomic() {
+		Book book = newBook("added-" + this.next++);
+		this.repository.pushBook(BOOK_STORE_ID, book).block();
+		return this.repository.pullBook(BOOK_STORE_ID, book.getId()).block();
+	}
+
+	@Benchmark
+	public BookStore readModifyWrite() {
+		Book book = newBook("added-" + this.next++);
+		BookStore bookStore = this.repository.findById(BOOK_STORE_ID).block();
+		bookStore.addBook(book);
+		this.repository.save(bookStore).block();
+		BookStore updated = this.repository.findById(BOOK_STORE_ID).block();
+		updated.remove(book.getId());
+		return this.repository.save(updated).block();
+	}
+
+	private static Book newBook(String bookId) {
+		return new Book(bookId, BOOK_STORE_ID, new Book("isbn-" + bookId, "title " + bookId, "author"));
+	}
+
+}
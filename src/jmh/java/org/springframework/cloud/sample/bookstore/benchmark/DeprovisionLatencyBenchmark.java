@@ -0,0 +1,95 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.benchmark;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.cloud.servicebroker.model.instance.CreateServiceInstanceRequest;
+import org.springframework.cloud.servicebroker.model.instance.DeleteServiceInstanceRequest;
+import org.springframework.cloud.servicebroker.model.instance.DeleteServiceInstanceResponse;
+
+/**
+ * Samples deprovisioning latency with a fixed latency added to each repository call, to
+ * show the p50 and p99 effect of running the independent deletes concurrently.
+ * {@code sequential} chains the same deletes one after another as the baseline.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeprovisionLatencyBenchmark {
+
+	@Param({ "0", "5" })
+	public long latencyMillis;
+
+	private ServiceBrokerFixture fixture;
+
+	private String instanceId;
+
+	@Setup(Level.Trial)
+	public void setUpFixture() {
+		this.fixture = new ServiceBrokerFixture(Duration.ofMillis(this.latencyMillis));
+	}
+
+	@Setup(Level.Invocation)
+	public void provision() {
+		this.instanceId = UUID.randomUUID().toString();
+		this.fixture.getInstanceService()
+			.createServiceInstance(CreateServiceInstanceRequest.builder().serviceInstanceId(this.instanceId).build())
+			.block();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.fixture.destroy();
+	}
+
+	@Benchmark
+	public DeleteServiceInstanceResponse concurrent() {
+		return this.fixture.getInstanceService()
+			.deleteServiceInstance(DeleteServiceInstanceRequest.builder().serviceInstanceId(this.instanceId).build())
+			.block();
+	}
+
+	@Benchmark
+	public Void sequential() {
+		return this.fixture.getBookStoreService()
+			.deleteBookStore(this.instanceId)
+			.then(this.fixture.getBindingService().deleteServiceInstanceBindings(this.instanceId))
+			.then(this.fixture.getInstanceRepository().deleteById(this.instanceId))
+			.block();
+	}
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.benchmark;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstanceBindingRequest;
+import org.springframework.cloud.servicebroker.model.binding.DeleteServiceInstanceBindingRequest;
+import org.springframework.cloud.servicebroker.model.binding.DeleteServiceInstanceBindingResponse;
+import org.springframework.cloud.servicebroker.model.instance.CreateServiceInstanceRequest;
+import org.springframework.cloud.servicebroker.model.instance.DeleteServiceInstanceRequest;
+import org.springframework.cloud.servicebroker.model.instance.DeleteServiceInstanceResponse;
+
+/**
+ * Benchmarks the full reactive chains behind the service broker endpoints against
+ * in-memory repositories, so that only the broker's own work is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServiceBrokerBenchmark {
+
+	private static final String SERVICE_INSTANCE_ID = "benchmark-instance";
+
+	private ServiceBrokerFixture fixture;
+
+	@Setup
+	public void setUp() {
+		this.fixture = new ServiceBrokerFixture(Duration.ZERO);
+		CreateServiceInstanceRequest request = CreateServiceInstanceRequest.builder()
+			.serviceInstanceId(SERVICE_INSTANCE_ID)
+			.build();
+		this.fixture.getInstanceService().createServiceInstance(request).block();
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.fixture.destroy();
+	}
+
+	@Benchmark
+	public DeleteServiceInstanceResponse provisionAndDeprovision() {
+		String instanceId = UUID.randomUUID().toString();
+		return this.fixture.getInstanceService()
+			.createServiceInstance(CreateServiceInstanceRequest.builder().serviceInstanceId(instanceId).build())
+			.then(this.fixture.getInstanceService()
+				.deleteServiceInstance(DeleteServiceInstanceRequest.builder().serviceInstanceId(instanceId).build()))
+			.block();
+	}
+
+	@Benchmark
+	public DeleteServiceInstanceBindingResponse bindAndUnbindWithUser() {
+		return bindAndUnbind(Map.of());
+	}
+
+	@Benchmark
+	public DeleteServiceInstanceBindingResponse bindAndUnbindWithToken() {
+		return bindAndUnbind(Map.of("credential_type", "token"));
+	}
+
+	private DeleteServiceInstanceBindingResponse bindAndUnbind(Map<String, Object> parameters) {
+		String bindingId = UUID.randomUUID().toString();
+		return this.fixture.getBindingService()
+			.createServiceInstanceBinding(CreateServiceInstanceBindingRequest.builder()
+				.serviceInstanceId(SERVICE_INSTANCE_ID)
+				.bindingId(bindingId)
+				.parameters(parameters)
+				.build())
+			.then(this.fixture.getBindingService()
+				.deleteServiceInstanceBinding(DeleteServiceInstanceBindingRequest.builder()
+					.serviceInstanceId(SERVICE_INSTANCE_ID)
+					.bindingId(bindingId)
+					.build()))
+			.block();
+	}
+
+}
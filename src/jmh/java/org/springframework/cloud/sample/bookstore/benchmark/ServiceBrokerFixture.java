@@ -0,0 +1,153 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.benchmark;
+
+import java.time.Duration;
+import java.util.Collection;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import org.springframework.cloud.sample.bookstore.inmemory.InMemoryBookStoreRepository;
+import org.springframework.cloud.sample.bookstore.inmemory.InMemoryRevokedTokenRepository;
+import org.springframework.cloud.sample.bookstore.inmemory.InMemoryServiceBindingRepository;
+import org.springframework.cloud.sample.bookstore.inmemory.InMemoryServiceInstanceRepository;
+import org.springframework.cloud.sample.bookstore.inmemory.InMemoryUserRepository;
+import org.springframework.cloud.sample.bookstore.servicebroker.model.ServiceBinding;
+import org.springframework.cloud.sample.bookstore.servicebroker.service.BookStoreServiceInstanceBindingService;
+import org.springframework.cloud.sample.bookstore.servicebroker.service.BookStoreServiceInstanceService;
+import org.springframework.cloud.sample.bookstore.servicebroker.service.ServiceInstanceOperationExecutor;
+import org.springframework.cloud.sample.bookstore.web.model.ApplicationInformation;
+import org.springframework.cloud.sample.bookstore.web.model.User;
+import org.springframework.cloud.sample.bookstore.web.security.BookStoreTokenService;
+import org.springframework.cloud.sample.bookstore.web.service.BookStorePurger;
+import org.springframework.cloud.sample.bookstore.web.service.BookStoreService;
+import org.springframework.cloud.sample.bookstore.web.service.EmbeddedBookStorage;
+import org.springframework.cloud.sample.bookstore.web.service.UserService;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+/**
+ * Wires the service broker services to in-memory repositories. A fixed latency can be
+ * added to the repository calls made when deprovisioning, to stand in for a remote
+ * database.
+ */
+final class ServiceBrokerFixture {
+
+	private final Scheduler passwordEncoderScheduler;
+
+	private final ServiceInstanceOperationExecutor operationExecutor;
+
+	private final BookStoreService bookStoreService;
+
+	private final InMemoryServiceInstanceRepository instanceRepository;
+
+	private final BookStoreServiceInstanceService instanceService;
+
+	private final BookStoreServiceInstanceBindingService bindingService;
+
+	ServiceBrokerFixture(Duration latency) {
+		InMemoryBookStoreRepository bookStoreRepository = new InMemoryBookStoreRepository() {
+
+			@Override
+			public Mono<Void> deleteById(String id) {
+				return delay(latency).then(super.deleteById(id));
+			}
+
+		};
+		InMemoryUserRepository userRepository = new InMemoryUserRepository() {
+
+			@Override
+			public Flux<User> findByAuthorities(String authority) {
+				return delay(latency).thenMany(super.findByAuthorities(authority));
+			}
+
+			@Override
+			public Mono<Long> deleteByUsernameIn(Collection<String> usernames) {
+				return delay(latency).then(super.deleteByUsernameIn(usernames));
+			}
+
+		};
+		InMemoryServiceBindingRepository bindingRepository = new InMemoryServiceBindingRepository() {
+
+			@Override
+			public Flux<ServiceBinding> findByServiceInstanceId(String serviceInstanceId) {
+				return delay(latency).thenMany(super.findByServiceInstanceId(serviceInstanceId));
+			}
+
+			@Override
+			public Mono<Long> deleteByServiceInstanceId(String serviceInstanceId) {
+				return delay(latency).then(super.deleteByServiceInstanceId(serviceInstanceId));
+			}
+
+		};
+		this.instanceRepository = new InMemoryServiceInstanceRepository() {
+
+			@Override
+			public Mono<Void> deleteById(String id) {
+				return delay(latency).then(super.deleteById(id));
+			}
+
+		};
+		this.passwordEncoderScheduler = Schedulers.newBoundedElastic(Runtime.getRuntime().availableProcessors(),
+				10000, "password-encoder");
+		this.operationExecutor = new ServiceInstanceOperationExecutor(this.instanceRepository, 16, 1024,
+				Duration.ofHours(1));
+		EmbeddedBookStorage bookStorage = new EmbeddedBookStorage(bookStoreRepository);
+		BookStorePurger purger = new BookStorePurger(bookStoreRepository, bookStorage, 1000, Duration.ofMillis(100),
+				Duration.ofMinutes(1), Duration.ofMinutes(5));
+		this.bookStoreService = new BookStoreService(bookStoreRepository, bookStorage, purger, (event) -> {
+		}, 500, false);
+		UserService userService = new UserService(userRepository, new BCryptPasswordEncoder(),
+				this.passwordEncoderScheduler, (event) -> {
+				});
+		this.bindingService = new BookStoreServiceInstanceBindingService(bindingRepository, userService,
+				new BookStoreTokenService(new InMemoryRevokedTokenRepository(), new ObjectMapper(), "",
+						Duration.ofDays(30), Duration.ofHours(1), Duration.ofMinutes(1)),
+				new ApplicationInformation("http://localhost:8080"));
+		this.instanceService = new BookStoreServiceInstanceService(this.bookStoreService, this.instanceRepository,
+				this.operationExecutor, this.bindingService);
+	}
+
+	BookStoreService getBookStoreService() {
+		return this.bookStoreService;
+	}
+
+	InMemoryServiceInstanceRepository getInstanceRepository() {
+		return this.instanceRepository;
+	}
+
+	BookStoreServiceInstanceService getInstanceService() {
+		return this.instanceService;
+	}
+
+	BookStoreServiceInstanceBindingService getBindingService() {
+		return this.bindingService;
+	}
+
+	void destroy() {
+		this.operationExecutor.destroy();
+		this.passwordEncoderScheduler.dispose();
+	}
+
+	private static Mono<Long> delay(Duration latency) {
+		return latency.isZero() ? Mono.empty() : Mono.delay(latency);
+	}
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import org.springframework.cloud.sample.bookstore.inmemory.InMemoryUserRepository;
+import org.springframework.cloud.sample.bookstore.web.model.User;
+import org.springframework.cloud.sample.bookstore.web.security.SecurityAuthorities;
+import org.springframework.cloud.sample.bookstore.web.service.UserService;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+/**
+ * Benchmarks generating binding users, with and without encoding their passwords.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserServiceBenchmark {
+
+	private final AtomicLong usernames = new AtomicLong();
+
+	private Scheduler scheduler;
+
+	private UserService userService;
+
+	@Setup
+	public void setUp() {
+		this.scheduler = Schedulers.newBoundedElastic(Runtime.getRuntime().availableProcessors(), 10000,
+				"password-encoder");
+		this.userService = new UserService(new InMemoryUserRepository(), new BCryptPasswordEncoder(), this.scheduler,
+				(event) -> {
+				});
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.scheduler.dispose();
+	}
+
+	@Benchmark
+	public User generateUser() {
+		return this.userService.generateUser(nextUsername(), SecurityAuthorities.FULL_ACCESS).block();
+	}
+
+	@Benchmark
+	public User createUser() {
+		return this.userService.createUser(nextUsername(), SecurityAuthorities.FULL_ACCESS).block();
+	}
+
+	private String nextUsername() {
+		return "user-" + this.usernames.incrementAndGet();
+	}
+
+}
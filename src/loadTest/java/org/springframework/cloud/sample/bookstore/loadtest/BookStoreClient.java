@@ -0,0 +1,93 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The credentials of one binding, together with the ids of the books known to be in its
+ * book store. Bindings of the same service instance share the list of book ids.
+ */
+final class BookStoreClient {
+
+	private final String bookStoreId;
+
+	private final String username;
+
+	private final String password;
+
+	private final List<String> bookIds;
+
+	BookStoreClient(String bookStoreId, String username, String password, List<String> bookIds) {
+		this.bookStoreId = bookStoreId;
+		this.username = username;
+		this.password = password;
+		this.bookIds = bookIds;
+	}
+
+	static List<String> newBookIds() {
+		return new ArrayList<>();
+	}
+
+	String getBookStoreId() {
+		return this.bookStoreId;
+	}
+
+	String getUsername() {
+		return this.username;
+	}
+
+	String getPassword() {
+		return this.password;
+	}
+
+	void addBook(String bookId) {
+		synchronized (this.bookIds) {
+			this.bookIds.add(bookId);
+		}
+	}
+
+	/**
+	 * Return the id of a random book in the store, or {@code null} if there is none.
+	 */
+	String anyBook() {
+		synchronized (this.bookIds) {
+			return this.bookIds.isEmpty() ? null
+					: this.bookIds.get(ThreadLocalRandom.current().nextInt(this.bookIds.size()));
+		}
+	}
+
+	/**
+	 * Remove and return the id of a random book in the store, so that it is not deleted
+	 * twice, or return {@code null} if there is none.
+	 */
+	String takeBook() {
+		synchronized (this.bookIds) {
+			if (this.bookIds.isEmpty()) {
+				return null;
+			}
+			int index = ThreadLocalRandom.current().nextInt(this.bookIds.size());
+			String bookId = this.bookIds.get(index);
+			this.bookIds.set(index, this.bookIds.get(this.bookIds.size() - 1));
+			this.bookIds.remove(this.bookIds.size() - 1);
+			return bookId;
+		}
+	}
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.loadtest;
+
+/**
+ * The endpoints whose latency is recorded, named as they appear in the report and in the
+ * {@code loadtest.mix} setting.
+ */
+enum Endpoint {
+
+	PROVISION("provision"),
+
+	BIND("bind"),
+
+	PUT_BOOK("put-book"),
+
+	GET_BOOK("get-book"),
+
+	DELETE_BOOK("delete-book"),
+
+	GET_STORE("get-store");
+
+	private final String key;
+
+	Endpoint(String key) {
+		this.key = key;
+	}
+
+	String getKey() {
+		return this.key;
+	}
+
+	static Endpoint fromKey(String key) {
+		for (Endpoint endpoint : values()) {
+			if (endpoint.key.equals(key)) {
+				return endpoint;
+			}
+		}
+		throw new IllegalArgumentException("Unknown endpoint '" + key + "'");
+	}
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Records the latency and the number of failed requests of each endpoint. Latencies are
+ * kept in microseconds, with three significant digits.
+ */
+final class LatencyRecorder {
+
+	private final Map<Endpoint, Histogram> histograms = new EnumMap<>(Endpoint.class);
+
+	private final Map<Endpoint, LongAdder> errors = new EnumMap<>(Endpoint.class);
+
+	private final LongAdder dropped = new LongAdder();
+
+	LatencyRecorder() {
+		for (Endpoint endpoint : Endpoint.values()) {
+			this.histograms.put(endpoint, new ConcurrentHistogram(3));
+			this.errors.put(endpoint, new LongAdder());
+		}
+	}
+
+	void recordSuccess(Endpoint endpoint, long latencyNanos) {
+		this.histograms.get(endpoint).recordValue(TimeUnit.NANOSECONDS.toMicros(Math.max(latencyNanos, 0)));
+	}
+
+	void recordError(Endpoint endpoint) {
+		this.errors.get(endpoint).increment();
+	}
+
+	/**
+	 * Count a request that was never sent because the maximum number of requests in flight
+	 * had been reached.
+	 */
+	void recordDropped() {
+		this.dropped.increment();
+	}
+
+	Histogram getHistogram(Endpoint endpoint) {
+		return this.histograms.get(endpoint);
+	}
+
+	long getErrors(Endpoint endpoint) {
+		return this.errors.get(endpoint).sum();
+	}
+
+	long getDropped() {
+		return this.dropped.sum();
+	}
+
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.loadtest;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cloud.sample.bookstore.ServiceBrokerApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ * Boots the application on a random port against embedded MongoDB, provisions service
+ * instances and binds apps to them through the service broker API, then sends a mix of
+ * book store requests at a fixed rate using the binding credentials.
+ * <p>
+ * Requests are sent on schedule whether or not earlier ones have completed, and their
+ * latency is measured from the time they were scheduled, so that a slow response is not
+ * hidden by delaying the requests queued behind it. Requests sent during the warmup are
+ * not recorded.
+ */
+public final class LoadTest {
+
+	private static final Log logger = LogFactory.getLog(LoadTest.class);
+
+	private static final String SERVICE_ID = "bdb1be2e-360b-495c-8115-d7697f9c6a9e";
+
+	private static final String PLAN_ID = "b973fb78-82f3-49ef-9b8b-c1876974a6cd";
+
+	private static final String ADMIN_USERNAME = "admin";
+
+	private static final String ADMIN_PASSWORD = "supersecret";
+
+	private static final String BROKER_API_VERSION_HEADER = "X-Broker-API-Version";
+
+	private static final String BROKER_API_VERSION = "2.15";
+
+	private static final int SETUP_CONCURRENCY = 16;
+
+	private final LoadTestSettings settings;
+
+	private final WebClient webClient;
+
+	private final LatencyRecorder recorder = new LatencyRecorder();
+
+	private final LatencyRecorder warmupRecorder = new LatencyRecorder();
+
+	private final AtomicLong bookSequence = new AtomicLong();
+
+	private LoadTest(LoadTestSettings settings, WebClient webClient) {
+		this.settings = settings;
+		this.webClient = webClient;
+	}
+
+	public static void main(String[] args) throws IOException {
+		LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+		ConfigurableApplicationContext context = new SpringApplicationBuilder(ServiceBrokerApplication.class)
+			.properties("server.port=0")
+			.run(args);
+		int exitCode;
+		try {
+			String port = context.getEnvironment().getRequiredProperty("local.server.port");
+			new LoadTest(settings, WebClient.create("http://localhost:" + port)).run();
+		}
+		finally {
+			exitCode = SpringApplication.exit(context);
+		}
+		System.exit(exitCode);
+	}
+
+	private void run() throws IOException {
+		List<BookStoreClient> clients = setUp();
+		logger.info("Sending " + this.settings.getRate() + " requests per second for " + this.settings.getWarmup()
+				+ " of warmup and " + this.settings.getDuration() + " measured");
+		Duration elapsed = drive(clients);
+		new LoadTestReport(this.settings).write(this.recorder, elapsed);
+	}
+
+	/**
+	 * Provision the service instances, bind the apps to them round robin, and seed the
+	 * book store of each instance.
+	 */
+	private List<BookStoreClient> setUp() {
+		List<String> instanceIds = Flux.range(0, this.settings.getInstances())
+			.map((i) -> UUID.randomUUID().toString())
+			.flatMapSequential((instanceId) -> timed(Endpoint.PROVISION, provision(instanceId)).thenReturn(instanceId),
+					SETUP_CONCURRENCY)
+			.collectList()
+			.block();
+		Map<String, List<String>> bookIds = new HashMap<>();
+		instanceIds.forEach((instanceId) -> bookIds.put(instanceId, BookStoreClient.newBookIds()));
+		List<BookStoreClient> clients = Flux.range(0, this.settings.getBindings())
+			.map((i) -> instanceIds.get(i % instanceIds.size()))
+			.flatMapSequential((instanceId) -> timed(Endpoint.BIND, bind(instanceId))
+				.map((credentials) -> new BookStoreClient(instanceId, credentials.path("username").asText(),
+						credentials.path("password").asText(), bookIds.get(instanceId))),
+					SETUP_CONCURRENCY)
+			.collectList()
+			.block();
+		Flux.fromIterable(clients.subList(0, instanceIds.size())).flatMap(this::seed, SETUP_CONCURRENCY).blockLast();
+		return clients;
+	}
+
+	private Duration drive(List<BookStoreClient> clients) {
+		long periodNanos = TimeUnit.SECONDS.toNanos(1) / this.settings.getRate();
+		long warmupNanos = this.settings.getWarmup().toNanos();
+		long requests = (warmupNanos + this.settings.getDuration().toNanos()) / periodNanos;
+		long start = System.nanoTime();
+		Flux.interval(Duration.ZERO, Duration.ofNanos(periodNanos))
+			.take(requests)
+			.onBackpressureDrop((tick) -> recorderAt(tick * periodNanos, warmupNanos).recordDropped())
+			.flatMap((tick) -> send(clients, start + tick * periodNanos,
+					recorderAt(tick * periodNanos, warmupNanos)), this.settings.getMaxInFlight())
+			.blockLast();
+		return Duration.ofNanos(System.nanoTime() - start - warmupNanos);
+	}
+
+	private LatencyRecorder recorderAt(long offsetNanos, long warmupNanos) {
+		return (offsetNanos < warmupNanos) ? this.warmupRecorder : this.recorder;
+	}
+
+	/**
+	 * Send one request of the mix with the credentials of a random binding. Reading or
+	 * deleting a book falls back to adding one when the book store is empty.
+	 */
+	private Mono<Void> send(List<BookStoreClient> clients, long scheduledNanos, LatencyRecorder recorder) {
+		BookStoreClient client = clients.get(ThreadLocalRandom.current().nextInt(clients.size()));
+		Endpoint endpoint = this.settings.nextEndpoint();
+		String bookId = null;
+		if (endpoint == Endpoint.GET_BOOK) {
+			bookId = client.anyBook();
+		}
+		else if (endpoint == Endpoint.DELETE_BOOK) {
+			bookId = client.takeBook();
+		}
+		if (bookId == null && (endpoint == Endpoint.GET_BOOK || endpoint == Endpoint.DELETE_BOOK)) {
+			endpoint = Endpoint.PUT_BOOK;
+		}
+		return timed(endpoint, recorder, scheduledNanos, request(client, endpoint, bookId)).then()
+			.onErrorResume((ex) -> Mono.empty());
+	}
+
+	private Mono<?> request(BookStoreClient client, Endpoint endpoint, String bookId) {
+		String storeId = client.getBookStoreId();
+		if (endpoint == Endpoint.GET_BOOK) {
+			return discard(withCredentials(client,
+					this.webClient.get().uri("/bookstores/{storeId}/books/{bookId}", storeId, bookId)));
+		}
+		if (endpoint == Endpoint.DELETE_BOOK) {
+			return discard(withCredentials(client,
+					this.webClient.delete().uri("/bookstores/{storeId}/books/{bookId}", storeId, bookId)));
+		}
+		if (endpoint == Endpoint.GET_STORE) {
+			return discard(withCredentials(client, this.webClient.get().uri("/bookstores/{storeId}", storeId)));
+		}
+		return exchange(withCredentials(client, this.webClient.put().uri("/bookstores/{storeId}/books", storeId))
+			.bodyValue(newBook())).map(LoadTest::selfLinkId).doOnNext(client::addBook);
+	}
+
+	private Mono<JsonNode> provision(String instanceId) {
+		return exchange(asAdmin(this.webClient.put().uri("/v2/service_instances/{instanceId}", instanceId))
+			.bodyValue(Map.of("service_id", SERVICE_ID, "plan_id", PLAN_ID, "organization_guid", "load-test",
+					"space_guid", "load-test")));
+	}
+
+	private Mono<JsonNode> bind(String instanceId) {
+		return exchange(asAdmin(this.webClient.put()
+			.uri("/v2/service_instances/{instanceId}/service_bindings/{bindingId}", instanceId,
+					UUID.randomUUID().toString()))
+			.bodyValue(Map.of("service_id", SERVICE_ID, "plan_id", PLAN_ID, "bind_resource",
+					Map.of("app_guid", UUID.randomUUID().toString()))))
+			.map((response) -> response.path("credentials"));
+	}
+
+	private Mono<Void> seed(BookStoreClient client) {
+		List<Map<String, String>> books = new ArrayList<>();
+		for (int i = 0; i < this.settings.getSeedBooks(); i++) {
+			books.add(newBook());
+		}
+		return exchange(withCredentials(client,
+				this.webClient.post().uri("/bookstores/{storeId}/books", client.getBookStoreId()))
+			.bodyValue(books))
+			.doOnNext((response) -> response.path("ids").forEach((id) -> client.addBook(id.asText())))
+			.then();
+	}
+
+	private Map<String, String> newBook() {
+		long number = this.bookSequence.incrementAndGet();
+		return Map.of("isbn", String.format("978-0-%09d", number), "title", "Load Test Book " + number, "author",
+				"Load Test Author " + (number % 100));
+	}
+
+	private <T> Mono<T> timed(Endpoint endpoint, Mono<T> request) {
+		return Mono.defer(() -> timed(endpoint, this.recorder, System.nanoTime(), request));
+	}
+
+	private static <T> Mono<T> timed(Endpoint endpoint, LatencyRecorder recorder, long startNanos,
+			Mono<T> request) {
+		return request.doOnSuccess((result) -> recorder.recordSuccess(endpoint, System.nanoTime() - startNanos))
+			.doOnError((ex) -> recorder.recordError(endpoint));
+	}
+
+	private static WebClient.RequestBodySpec asAdmin(WebClient.RequestBodySpec request) {
+		return request.headers((headers) -> headers.setBasicAuth(ADMIN_USERNAME, ADMIN_PASSWORD))
+			.header(BROKER_API_VERSION_HEADER, BROKER_API_VERSION);
+	}
+
+	private static <S extends WebClient.RequestHeadersSpec<?>> S withCredentials(BookStoreClient client, S request) {
+		request.headers((headers) -> headers.setBasicAuth(client.getUsername(), client.getPassword()));
+		return request;
+	}
+
+	private static Mono<JsonNode> exchange(WebClient.RequestHeadersSpec<?> request) {
+		return request.exchangeToMono((response) -> response.statusCode().is2xxSuccessful()
+				? response.bodyToMono(JsonNode.class).defaultIfEmpty(NullNode.getInstance())
+				: response.<JsonNode>createError());
+	}
+
+	private static Mono<Void> discard(WebClient.RequestHeadersSpec<?> request) {
+		return request.exchangeToMono((response) -> response.statusCode().is2xxSuccessful()
+				? response.releaseBody() : response.<Void>createError());
+	}
+
+	private static String selfLinkId(JsonNode resource) {
+		for (JsonNode link : resource.path("links")) {
+			if ("self".equals(link.path("rel").asText())) {
+				String href = link.path("href").asText();
+				return href.substring(href.lastIndexOf('/') + 1);
+			}
+		}
+		throw new IllegalStateException("Resource has no self link: " + resource);
+	}
+
+}
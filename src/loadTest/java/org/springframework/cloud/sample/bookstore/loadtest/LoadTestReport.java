@@ -0,0 +1,133 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Writes the results of a run as {@code <label>.json}, holding the settings and the
+ * latency percentiles of each endpoint in milliseconds, and as one
+ * {@code <label>-<endpoint>.hgrm} percentile distribution per endpoint that can be
+ * plotted with the HdrHistogram tools. When a baseline label is given, the percentiles
+ * are compared with the report of that earlier run.
+ */
+final class LoadTestReport {
+
+	private static final Log logger = LogFactory.getLog(LoadTestReport.class);
+
+	private static final double MICROS_PER_MILLI = 1000.0;
+
+	private static final Map<String, Double> PERCENTILES = Map.of("p50", 50.0, "p90", 90.0, "p99", 99.0, "p99.9",
+			99.9);
+
+	private static final String[] COMPARED = { "p50", "p99", "max" };
+
+	private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+	private final LoadTestSettings settings;
+
+	LoadTestReport(LoadTestSettings settings) {
+		this.settings = settings;
+	}
+
+	void write(LatencyRecorder recorder, Duration elapsed) throws IOException {
+		Path directory = Files.createDirectories(this.settings.getReportDirectory());
+		String label = this.settings.getLabel();
+		JsonNode baseline = (this.settings.getBaseline() != null)
+				? this.objectMapper.readTree(directory.resolve(this.settings.getBaseline() + ".json").toFile()) : null;
+		Map<String, Object> endpoints = new LinkedHashMap<>();
+		long requests = 0;
+		for (Endpoint endpoint : Endpoint.values()) {
+			Histogram histogram = recorder.getHistogram(endpoint);
+			long errors = recorder.getErrors(endpoint);
+			if (histogram.getTotalCount() == 0 && errors == 0) {
+				continue;
+			}
+			if (endpoint != Endpoint.PROVISION && endpoint != Endpoint.BIND) {
+				requests += histogram.getTotalCount() + errors;
+			}
+			endpoints.put(endpoint.getKey(), summarize(histogram, errors));
+			Path distribution = directory.resolve(label + "-" + endpoint.getKey() + ".hgrm");
+			try (PrintStream out = new PrintStream(Files.newOutputStream(distribution))) {
+				histogram.outputPercentileDistribution(out, MICROS_PER_MILLI);
+			}
+		}
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("label", label);
+		report.put("timestamp", Instant.now().toString());
+		report.put("settings", this.settings.toMap());
+		report.put("elapsedSeconds", elapsed.toMillis() / MICROS_PER_MILLI);
+		report.put("throughput", requests / Math.max(elapsed.toMillis() / MICROS_PER_MILLI, 1e-3));
+		report.put("dropped", recorder.getDropped());
+		report.put("endpoints", endpoints);
+		Path file = directory.resolve(label + ".json");
+		this.objectMapper.writeValue(file.toFile(), report);
+		logger.info("Load test report written to " + file.toAbsolutePath());
+		if (baseline != null) {
+			compare(baseline, this.objectMapper.valueToTree(report));
+		}
+	}
+
+	private static Map<String, Object> summarize(Histogram histogram, long errors) {
+		Map<String, Object> summary = new LinkedHashMap<>();
+		summary.put("count", histogram.getTotalCount());
+		summary.put("errors", errors);
+		summary.put("mean", histogram.getMean() / MICROS_PER_MILLI);
+		PERCENTILES.entrySet()
+			.stream()
+			.sorted(Map.Entry.comparingByValue())
+			.forEach((percentile) -> summary.put(percentile.getKey(),
+					histogram.getValueAtPercentile(percentile.getValue()) / MICROS_PER_MILLI));
+		summary.put("max", histogram.getMaxValue() / MICROS_PER_MILLI);
+		return summary;
+	}
+
+	private static void compare(JsonNode baseline, JsonNode current) {
+		StringBuilder comparison = new StringBuilder("Latency compared with '")
+			.append(baseline.path("label").asText())
+			.append("' (ms, baseline -> current):");
+		current.path("endpoints").fields().forEachRemaining((endpoint) -> {
+			JsonNode previous = baseline.path("endpoints").path(endpoint.getKey());
+			if (previous.isMissingNode()) {
+				return;
+			}
+			comparison.append(System.lineSeparator()).append(String.format("  %-12s", endpoint.getKey()));
+			for (String statistic : COMPARED) {
+				double before = previous.path(statistic).asDouble();
+				double after = endpoint.getValue().path(statistic).asDouble();
+				double change = (before > 0) ? (after - before) / before * 100 : 0;
+				comparison.append(String.format("  %s %.2f -> %.2f (%+.1f%%)", statistic, before, after, change));
+			}
+		});
+		logger.info(comparison);
+	}
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.util.StringUtils;
+
+/**
+ * Settings of a load test run, read from {@code loadtest.*} system properties.
+ */
+final class LoadTestSettings {
+
+	private static final String DEFAULT_MIX = "put-book=15,get-book=50,delete-book=15,get-store=20";
+
+	private final int instances;
+
+	private final int bindings;
+
+	private final int seedBooks;
+
+	private final int rate;
+
+	private final Duration warmup;
+
+	private final Duration duration;
+
+	private final int maxInFlight;
+
+	private final Map<Endpoint, Integer> mix;
+
+	private final int totalWeight;
+
+	private final String label;
+
+	private final Path reportDirectory;
+
+	private final String baseline;
+
+	private LoadTestSettings(Map<String, String> properties) {
+		this.instances = Integer.parseInt(properties.getOrDefault("instances", "10"));
+		this.bindings = Integer.parseInt(properties.getOrDefault("bindings", "20"));
+		this.seedBooks = Integer.parseInt(properties.getOrDefault("seed-books", "20"));
+		this.rate = Integer.parseInt(properties.getOrDefault("rate", "200"));
+		this.warmup = DurationStyle.detectAndParse(properties.getOrDefault("warmup", "10s"));
+		this.duration = DurationStyle.detectAndParse(properties.getOrDefault("duration", "60s"));
+		this.maxInFlight = Integer.parseInt(properties.getOrDefault("max-in-flight", "1024"));
+		this.mix = parseMix(properties.getOrDefault("mix", DEFAULT_MIX));
+		this.totalWeight = this.mix.values().stream().mapToInt(Integer::intValue).sum();
+		this.label = properties.getOrDefault("label", "local");
+		this.reportDirectory = Path.of(properties.getOrDefault("report-dir", "build/reports/loadtest"));
+		this.baseline = properties.get("baseline");
+		if (this.instances < 1 || this.bindings < this.instances) {
+			throw new IllegalArgumentException("At least one instance and one binding per instance are required");
+		}
+		if (this.rate < 1 || this.totalWeight < 1) {
+			throw new IllegalArgumentException("The rate and the total weight of the mix must be positive");
+		}
+	}
+
+	static LoadTestSettings fromSystemProperties() {
+		Map<String, String> properties = new LinkedHashMap<>();
+		System.getProperties().forEach((key, value) -> {
+			String name = key.toString();
+			if (name.startsWith("loadtest.") && StringUtils.hasText(value.toString())) {
+				properties.put(name.substring("loadtest.".length()), value.toString());
+			}
+		});
+		return new LoadTestSettings(properties);
+	}
+
+	private static Map<Endpoint, Integer> parseMix(String mix) {
+		Map<Endpoint, Integer> weights = new EnumMap<>(Endpoint.class);
+		for (String entry : StringUtils.commaDelimitedListToStringArray(mix)) {
+			String[] pair = StringUtils.split(entry.trim(), "=");
+			if (pair == null) {
+				throw new IllegalArgumentException("Invalid mix entry '" + entry + "', expected <endpoint>=<weight>");
+			}
+			Endpoint endpoint = Endpoint.fromKey(pair[0].trim());
+			if (endpoint == Endpoint.PROVISION || endpoint == Endpoint.BIND) {
+				throw new IllegalArgumentException("Endpoint '" + pair[0] + "' is only called during setup");
+			}
+			weights.put(endpoint, Integer.parseInt(pair[1].trim()));
+		}
+		return weights;
+	}
+
+	/**
+	 * Pick the endpoint of the next request, with a probability proportional to its
+	 * weight in the mix.
+	 */
+	Endpoint nextEndpoint() {
+		int value = ThreadLocalRandom.current().nextInt(this.totalWeight);
+		for (Map.Entry<Endpoint, Integer> entry : this.mix.entrySet()) {
+			value -= entry.getValue();
+			if (value < 0) {
+				return entry.getKey();
+			}
+		}
+		throw new IllegalStateException("Mix weights changed while picking an endpoint");
+	}
+
+	Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("instances", this.instances);
+		map.put("bindings", this.bindings);
+		map.put("seedBooks", this.seedBooks);
+		map.put("rate", this.rate);
+		map.put("warmup", this.warmup.toString());
+		map.put("duration", this.duration.toString());
+		map.put("maxInFlight", this.maxInFlight);
+		Map<String, Integer> mix = new LinkedHashMap<>();
+		this.mix.forEach((endpoint, weight) -> mix.put(endpoint.getKey(), weight));
+		map.put("mix", mix);
+		return map;
+	}
+
+	int getInstances() {
+		return this.instances;
+	}
+
+	int getBindings() {
+		return this.bindings;
+	}
+
+	int getSeedBooks() {
+		return this.seedBooks;
+	}
+
+	int getRate() {
+		return this.rate;
+	}
+
+	Duration getWarmup() {
+		return this.warmup;
+	}
+
+	Duration getDuration() {
+		return this.duration;
+	}
+
+	int getMaxInFlight() {
+		return this.maxInFlight;
+	}
+
+	String getLabel() {
+		return this.label;
+	}
+
+	Path getReportDirectory() {
+		return this.reportDirectory;
+	}
+
+	String getBaseline() {
+		return this.baseline;
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.config;
+
+import org.springframework.cloud.sample.bookstore.inmemory.InMemoryBookStoreRepository;
+import org.springframework.cloud.sample.bookstore.inmemory.InMemoryRevokedTokenRepository;
+import org.springframework.cloud.sample.bookstore.inmemory.InMemoryServiceBindingRepository;
+import org.springframework.cloud.sample.bookstore.inmemory.InMemoryServiceInstanceRepository;
+import org.springframework.cloud.sample.bookstore.inmemory.InMemoryUserRepository;
+import org.springframework.cloud.sample.bookstore.servicebroker.repository.ServiceBindingRepository;
+import org.springframework.cloud.sample.bookstore.servicebroker.repository.ServiceInstanceRepository;
+import org.springframework.cloud.sample.bookstore.web.repository.BookStoreRepository;
+import org.springframework.cloud.sample.bookstore.web.repository.RevokedTokenRepository;
+import org.springframework.cloud.sample.bookstore.web.repository.UserRepository;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Replaces the Mongo repositories with in-memory ones when the {@code in-memory} profile
+ * is active. Books are always stored embedded in their book store with this profile.
+ */
+@Configuration
+@Profile(InMemoryRepositoryConfiguration.IN_MEMORY_PROFILE)
+public class InMemoryRepositoryConfiguration {
+
+	/**
+	 * Profile selecting the in-memory repositories.
+	 */
+	public static final String IN_MEMORY_PROFILE = "in-memory";
+
+	@Bean
+	public BookStoreRepository bookStoreRepository() {
+		return new InMemoryBookStoreRepository();
+	}
+
+	@Bean
+	public UserRepository userRepository() {
+		return new InMemoryUserRepository();
+	}
+
+	@Bean
+	public RevokedTokenRepository revokedTokenRepository() {
+		return new InMemoryRevokedTokenRepository();
+	}
+
+	@Bean
+	public ServiceInstanceRepository serviceInstanceRepository() {
+		return new InMemoryServiceInstanceRepository();
+	}
+
+	@Bean
+	public ServiceBindingRepository serviceBindingRepository() {
+		return new InMemoryServiceBindingRepository();
+	}
+
+}
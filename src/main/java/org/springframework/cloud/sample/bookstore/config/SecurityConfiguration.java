@@ -16,26 +16,51 @@
 
 package org.springframework.cloud.sample.bookstore.config;
 
+import java.time.Duration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.observability.micrometer.Micrometer;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.autoconfigure.security.reactive.EndpointRequest;
+import org.springframework.cloud.sample.bookstore.web.repository.UserRepository;
+import org.springframework.cloud.sample.bookstore.web.security.BearerTokenServerAuthenticationConverter;
+import org.springframework.cloud.sample.bookstore.web.security.BookStoreAuthorizationManager;
+import org.springframework.cloud.sample.bookstore.web.security.BookStoreTokenService;
+import org.springframework.cloud.sample.bookstore.web.security.CachingReactiveAuthenticationManager;
+import org.springframework.cloud.sample.bookstore.web.security.CachingReactiveUserDetailsService;
+import org.springframework.cloud.sample.bookstore.web.security.RepositoryUserDetailsService;
 import org.springframework.cloud.sample.bookstore.web.security.SecurityAuthorities;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UserDetailsRepositoryReactiveAuthenticationManager;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.authentication.AuthenticationWebFilter;
 
 @Configuration
 @EnableWebFluxSecurity
 public class SecurityConfiguration {
 
 	@Bean
-	public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http) {
+	public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http, BookStoreTokenService tokenService) {
 		return http.csrf((csrf) -> csrf.disable())
 			.httpBasic(Customizer.withDefaults())
-			.authorizeExchange((exchange) -> exchange.pathMatchers("/bookstores/**")
+			.addFilterAt(bearerTokenAuthenticationFilter(tokenService), SecurityWebFiltersOrder.AUTHENTICATION)
+			.authorizeExchange((exchange) -> exchange
+				.pathMatchers("/bookstores/{bookStoreId}", "/bookstores/{bookStoreId}/**")
+				.access(new BookStoreAuthorizationManager())
+				.pathMatchers("/bookstores/**")
 				.authenticated()
 				.pathMatchers("/v2/**")
 				.hasAuthority(SecurityAuthorities.ADMIN)
@@ -46,9 +71,46 @@ public class SecurityConfiguration {
 			.build();
 	}
 
+	private AuthenticationWebFilter bearerTokenAuthenticationFilter(BookStoreTokenService tokenService) {
+		ReactiveAuthenticationManager authenticationManager = (authentication) -> tokenService
+			.authenticate((String) authentication.getCredentials());
+		AuthenticationWebFilter filter = new AuthenticationWebFilter(authenticationManager);
+		filter.setServerAuthenticationConverter(new BearerTokenServerAuthenticationConverter());
+		return filter;
+	}
+
 	@Bean
 	public PasswordEncoder passwordEncoder() {
 		return new BCryptPasswordEncoder();
 	}
 
+	@Bean(destroyMethod = "dispose")
+	public Scheduler passwordEncoderScheduler(MeterRegistry meterRegistry,
+			@Value("${bookstore.password-encoder.threads:0}") int threads,
+			@Value("${bookstore.password-encoder.queue-capacity:10000}") int queueCapacity) {
+		int threadCap = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+		Scheduler scheduler = Schedulers.newBoundedElastic(threadCap, queueCapacity, "password-encoder");
+		return Micrometer.timedScheduler(scheduler, meterRegistry, "bookstore.password-encoder");
+	}
+
+	@Bean
+	public CachingReactiveUserDetailsService userDetailsService(UserRepository userRepository,
+			@Value("${bookstore.user-details-cache.maximum-size:10000}") long maximumSize,
+			@Value("${bookstore.user-details-cache.time-to-live:5m}") Duration timeToLive) {
+		return new CachingReactiveUserDetailsService(new RepositoryUserDetailsService(userRepository), maximumSize,
+				timeToLive);
+	}
+
+	@Bean
+	public CachingReactiveAuthenticationManager authenticationManager(ReactiveUserDetailsService userDetailsService,
+			PasswordEncoder passwordEncoder, @Qualifier("passwordEncoderScheduler") Scheduler scheduler,
+			@Value("${bookstore.authentication-cache.maximum-size:10000}") long maximumSize,
+			@Value("${bookstore.authentication-cache.time-to-live:5m}") Duration timeToLive) {
+		UserDetailsRepositoryReactiveAuthenticationManager manager = new UserDetailsRepositoryReactiveAuthenticationManager(
+				userDetailsService);
+		manager.setPasswordEncoder(passwordEncoder);
+		manager.setScheduler(scheduler);
+		return new CachingReactiveAuthenticationManager(manager, maximumSize, timeToLive);
+	}
+
 }
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.inmemory;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.cloud.sample.bookstore.web.model.BookSearch;
+import org.springframework.cloud.sample.bookstore.web.model.BookStore;
+import org.springframework.cloud.sample.bookstore.web.repository.BookStoreRepository;
+
+/**
+ * In-memory {@link BookStoreRepository} for embedded book storage. Book stores are
+ * replaced by updated copies rather than modified, so that readers never observe a
+ * partial update. The copies share an array of books that is only ever appended to, so
+ * adding books does not copy the books a store already holds.
+ */
+public class InMemoryBookStoreRepository extends InMemoryReactiveRepository<BookStore>
+		implements BookStoreRepository {
+
+	public InMemoryBookStoreRepository() {
+		super("id");
+	}
+
+	@Override
+	public Mono<BookStore> findByIdWithBook(String storeId, String bookId) {
+		return findActive(storeId).flatMap((store) -> Mono.justOrEmpty(store.getBookById(bookId))
+			.map((book) -> new BookStore(store.getId(), List.of(book), false, store.getVersion())));
+	}
+
+	@Override
+	public Mono<BookStore> findVersionById(String storeId) {
+		return findActive(storeId).map((store) -> new BookStore(store.getId(), List.of(), false, store.getVersion()));
+	}
+
+	@Override
+	public Mono<Boolean> existsActiveById(String storeId) {
+		return findActive(storeId).hasElement();
+	}
+
+	@Override
+	public Flux<BookStore> findDeleted() {
+		return findAllMatching(BookStore::isDeleted);
+	}
+
+	@Override
+	public Mono<BookStore> pushBook(String storeId, Book book) {
+		return pushBooks(storeId, List.of(book));
+	}
+
+	@Override
+	public Mono<BookStore> pushBook(String storeId, Book book, long expectedVersion) {
+		return push(storeId, List.of(book), (store) -> store.getVersion() == expectedVersion);
+	}
+
+	@Override
+	public Mono<BookStore> pushBooks(String storeId, List<Book> books) {
+		return push(storeId, books, (store) -> true);
+	}
+
+	@Override
+	public Mono<BookStore> pullBook(String storeId, String bookId) {
+		return pull(storeId, bookId, (store) -> true);
+	}
+
+	@Override
+	public Mono<BookStore> pullBook(String storeId, String bookId, long expectedVersion) {
+		return pull(storeId, bookId, (store) -> store.getVersion() == expectedVersion);
+	}
+
+	@Override
+	public Flux<Book> findBooks(String storeId, String afterBookId, int limit) {
+		return streamBooks(storeId)
+			.filter((book) -> afterBookId == null || book.getId().compareTo(afterBookId) > 0)
+			.sort(Comparator.comparing(Book::getId))
+			.take(limit);
+	}
+
+	@Override
+	public Flux<Book> streamBooks(String storeId) {
+		return findActive(storeId).flatMapIterable(BookStore::getBooks);
+	}
+
+	@Override
+	public Flux<Book> searchBooks(String storeId, BookSearch search, String afterBookId, int limit) {
+		Flux<Book> books = streamBooks(storeId)
+			.filter(search::matches)
+			.filter((book) -> afterBookId == null || book.getId().compareTo(afterBookId) > 0)
+			.sort(Comparator.comparing(Book::getId));
+		return (limit > 0) ? books.take(limit) : books;
+	}
+
+	@Override
+	public Mono<Boolean> markDeleted(String storeId) {
+		return Mono
+			.fromSupplier(() -> update(storeId, (store) -> stored(store).withState(true, store.getVersion())))
+			.hasElement();
+	}
+
+	@Override
+	public Mono<Boolean> claimForPurge(String storeId, String purgerId, Instant claimedAt, Instant staleBefore) {
+		return Mono.fromSupplier(() -> update(storeId, (store) -> {
+			StoredBookStore stored = stored(store);
+			return (stored.isDeleted() && stored.isClaimable(purgerId, staleBefore))
+					? stored.withPurgeClaim(purgerId, claimedAt) : null;
+		})).hasElement();
+	}
+
+	@Override
+	public Mono<Long> incrementVersion(String storeId) {
+		return Mono
+			.fromSupplier(() -> update(storeId,
+					(store) -> store.isDeleted() ? null : stored(store).withState(false, store.getVersion() + 1)))
+			.map(BookStore::getVersion);
+	}
+
+	@Override
+	public Mono<Boolean> incrementVersion(String storeId, long expectedVersion) {
+		return Mono.fromSupplier(() -> update(storeId,
+				(store) -> (store.isDeleted() || store.getVersion() != expectedVersion) ? null
+						: stored(store).withState(false, store.getVersion() + 1)))
+			.hasElement();
+	}
+
+	private Mono<BookStore> push(String storeId, List<Book> books, Predicate<BookStore> condition) {
+		return Mono.fromSupplier(() -> update(storeId, (store) -> {
+			if (store.isDeleted() || !condition.test(store)) {
+				return null;
+			}
+			return stored(store).withBooksAdded(books);
+		})).map((store) -> new BookStore(store.getId(), books, false, store.getVersion()));
+	}
+
+	private Mono<BookStore> pull(String storeId, String bookId, Predicate<BookStore> condition) {
+		return Mono.fromSupplier(() -> {
+			AtomicReference<Book> pulled = new AtomicReference<>();
+			BookStore updatedStore = update(storeId, (store) -> {
+				if (store.isDeleted() || !condition.test(store)) {
+					return null;
+				}
+				return store.getBookById(bookId).map((book) -> {
+					pulled.set(book);
+					return stored(store).withBookRemoved(book);
+				}).orElse(null);
+			});
+			return (updatedStore != null)
+					? new BookStore(storeId, List.of(pulled.get()), false, updatedStore.getVersion()) : null;
+		});
+	}
+
+	private Mono<BookStore> findActive(String storeId) {
+		return findById(storeId).filter((store) -> !store.isDeleted());
+	}
+
+	private static StoredBookStore stored(BookStore store) {
+		if (store instanceof StoredBookStore stored) {
+			return stored;
+		}
+		Book[] books = store.getBooks().toArray(new Book[0]);
+		return new StoredBookStore(store.getId(), books, books.length, store.isDeleted(), store.getVersion(), null,
+				null);
+	}
+
+	/**
+	 * {@link BookStore} holding the first {@code size} elements of an array of books.
+	 * Elements below {@code size} are never overwritten, so a store with more books can
+	 * append to the same array while readers still hold this one. The store also holds
+	 * the purge claim, kept in unmapped fields of the Mongo book store document.
+	 */
+	private static final class StoredBookStore extends BookStore {
+
+		private final Book[] books;
+
+		private final int size;
+
+		private final String purgingBy;
+
+		private final Instant purgeClaimedAt;
+
+		private StoredBookStore(String id, Book[] books, int size, boolean deleted, long version, String purgingBy,
+				Instant purgeClaimedAt) {
+			super(id, List.of(), deleted, version);
+			this.books = books;
+			this.size = size;
+			this.purgingBy = purgingBy;
+			this.purgeClaimedAt = purgeClaimedAt;
+		}
+
+		@Override
+		public List<Book> getBooks() {
+			return Collections.unmodifiableList(Arrays.asList(this.books).subList(0, this.size));
+		}
+
+		@Override
+		public void addBook(Book book) {
+			throw new UnsupportedOperationException("Stored book stores are replaced, not modified");
+		}
+
+		@Override
+		public Optional<Book> getBookById(String bookId) {
+			for (int i = 0; i < this.size; i++) {
+				if (this.books[i].getId().equals(bookId)) {
+					return Optional.of(this.books[i]);
+				}
+			}
+			return Optional.empty();
+		}
+
+		@Override
+		public Optional<Book> remove(String bookId) {
+			throw new UnsupportedOperationException("Stored book stores are replaced, not modified");
+		}
+
+		private boolean isClaimable(String purgerId, Instant staleBefore) {
+			return this.purgeClaimedAt == null || purgerId.equals(this.purgingBy)
+					|| this.purgeClaimedAt.isBefore(staleBefore);
+		}
+
+		private StoredBookStore withState(boolean deleted, long version) {
+			return new StoredBookStore(getId(), this.books, this.size, deleted, version, this.purgingBy,
+					this.purgeClaimedAt);
+		}
+
+		private StoredBookStore withPurgeClaim(String purgerId, Instant claimedAt) {
+			return new StoredBookStore(getId(), this.books, this.size, isDeleted(), getVersion(), purgerId, claimedAt);
+		}
+
+		/**
+		 * Append the books after this store's books. Updates of a store are serialized
+		 * and always start from its current copy, so the elements beyond {@code size}
+		 * are unused and the array is only copied when it is full.
+		 */
+		private StoredBookStore withBooksAdded(List<Book> added) {
+			int size = this.size + added.size();
+			Book[] books = this.books;
+			if (size > books.length) {
+				books = Arrays.copyOf(books, Math.max(size, books.length * 2));
+			}
+			for (int i = 0; i < added.size(); i++) {
+				books[this.size + i] = added.get(i);
+			}
+			return new StoredBookStore(getId(), books, size, false, getVersion() + 1, null, null);
+		}
+
+		private StoredBookStore withBookRemoved(Book book) {
+			int index = Arrays.asList(this.books).subList(0, this.size).indexOf(book);
+			Book[] books = new Book[this.size - 1];
+			System.arraycopy(this.books, 0, books, 0, index);
+			System.arraycopy(this.books, index + 1, books, index, this.size - index - 1);
+			return new StoredBookStore(getId(), books, books.length, false, getVersion() + 1, null, null);
+		}
+
+	}
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.inmemory;
+
+import java.util.Comparator;
+
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.repository.reactive.ReactiveSortingRepository;
+
+/**
+ * {@link InMemoryReactiveRepository} for Mongo repositories that also insert and sort.
+ * Inserts fail with a {@link DuplicateKeyException} when the ID is taken, and missing
+ * values sort before all others, as they do in Mongo.
+ *
+ * @param <T> the entity type
+ */
+public class InMemoryReactiveMongoRepository<T> extends InMemoryReactiveRepository<T>
+		implements ReactiveSortingRepository<T, String> {
+
+	protected InMemoryReactiveMongoRepository(String idProperty) {
+		super(idProperty);
+	}
+
+	public <S extends T> Mono<S> insert(S entity) {
+		return Mono.fromCallable(() -> {
+			if (!putIfAbsent(entity)) {
+				throw new DuplicateKeyException("Duplicate key " + getId(entity));
+			}
+			return entity;
+		});
+	}
+
+	public <S extends T> Flux<S> insert(Iterable<S> entities) {
+		return Flux.fromIterable(entities).concatMap(this::insert);
+	}
+
+	public <S extends T> Flux<S> insert(Publisher<S> entities) {
+		return Flux.from(entities).concatMap(this::insert);
+	}
+
+	@Override
+	public Flux<T> findAll(Sort sort) {
+		Comparator<T> comparator = (left, right) -> 0;
+		for (Sort.Order order : sort) {
+			Comparator<T> byProperty = Comparator.comparing((entity) -> propertyValue(entity, order.getProperty()),
+					Comparator.nullsFirst(Comparator.naturalOrder()));
+			comparator = comparator.thenComparing(order.isAscending() ? byProperty : byProperty.reversed());
+		}
+		return findAll().sort(comparator);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Comparable<Object> propertyValue(Object entity, String property) {
+		return (Comparable<Object>) new DirectFieldAccessor(entity).getPropertyValue(property);
+	}
+
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.inmemory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.util.Assert;
+
+/**
+ * {@link ReactiveCrudRepository} that keeps entities in a concurrent map. Like the Mongo
+ * repositories, a missing {@code String} ID is generated on save and set on the entity.
+ *
+ * @param <T> the entity type
+ */
+public class InMemoryReactiveRepository<T> implements ReactiveCrudRepository<T, String> {
+
+	private final Map<String, T> entities = new ConcurrentHashMap<>();
+
+	private final String idProperty;
+
+	protected InMemoryReactiveRepository(String idProperty) {
+		this.idProperty = idProperty;
+	}
+
+	@Override
+	public <S extends T> Mono<S> save(S entity) {
+		Assert.notNull(entity, "Entity must not be null");
+		return Mono.fromSupplier(() -> {
+			String id = getOrGenerateId(entity);
+			T previous = this.entities.put(id, entity);
+			saved(previous, entity);
+			return entity;
+		});
+	}
+
+	@Override
+	public <S extends T> Flux<S> saveAll(Iterable<S> entities) {
+		return Flux.fromIterable(entities).concatMap(this::save);
+	}
+
+	@Override
+	public <S extends T> Flux<S> saveAll(Publisher<S> entityStream) {
+		return Flux.from(entityStream).concatMap(this::save);
+	}
+
+	@Override
+	public Mono<T> findById(String id) {
+		Assert.notNull(id, "ID must not be null");
+		return Mono.fromSupplier(() -> this.entities.get(id));
+	}
+
+	@Override
+	public Mono<T> findById(Publisher<String> id) {
+		return Mono.from(id).flatMap(this::findById);
+	}
+
+	@Override
+	public Mono<Boolean> existsById(String id) {
+		Assert.notNull(id, "ID must not be null");
+		return Mono.fromSupplier(() -> this.entities.containsKey(id));
+	}
+
+	@Override
+	public Mono<Boolean> existsById(Publisher<String> id) {
+		return Mono.from(id).flatMap(this::existsById);
+	}
+
+	@Override
+	public Flux<T> findAll() {
+		return Flux.defer(() -> Flux.fromIterable(new ArrayList<>(this.entities.values())));
+	}
+
+	@Override
+	public Flux<T> findAllById(Iterable<String> ids) {
+		return Flux.fromIterable(ids).concatMap(this::findById);
+	}
+
+	@Override
+	public Flux<T> findAllById(Publisher<String> idStream) {
+		return Flux.from(idStream).concatMap(this::findById);
+	}
+
+	@Override
+	public Mono<Long> count() {
+		return Mono.fromSupplier(() -> (long) this.entities.size());
+	}
+
+	@Override
+	public Mono<Void> deleteById(String id) {
+		Assert.notNull(id, "ID must not be null");
+		return Mono.fromRunnable(() -> remove(id));
+	}
+
+	@Override
+	public Mono<Void> deleteById(Publisher<String> id) {
+		return Mono.from(id).flatMap(this::deleteById);
+	}
+
+	@Override
+	public Mono<Void> delete(T entity) {
+		Assert.notNull(entity, "Entity must not be null");
+		return deleteById(getId(entity));
+	}
+
+	@Override
+	public Mono<Void> deleteAllById(Iterable<? extends String> ids) {
+		return Flux.fromIterable(ids).concatMap(this::deleteById).then();
+	}
+
+	@Override
+	public Mono<Void> deleteAll(Iterable<? extends T> entities) {
+		return Flux.fromIterable(entities).concatMap(this::delete).then();
+	}
+
+	@Override
+	public Mono<Void> deleteAll(Publisher<? extends T> entityStream) {
+		return Flux.from(entityStream).concatMap(this::delete).then();
+	}
+
+	@Override
+	public Mono<Void> deleteAll() {
+		return Mono.fromRunnable(() -> List.copyOf(this.entities.keySet()).forEach(this::remove));
+	}
+
+	/**
+	 * Store the entity only if no entity with the same ID exists.
+	 * @param entity the entity
+	 * @return {@code true} if the entity was stored
+	 */
+	protected boolean putIfAbsent(T entity) {
+		String id = getOrGenerateId(entity);
+		boolean inserted = this.entities.putIfAbsent(id, entity) == null;
+		if (inserted) {
+			saved(null, entity);
+		}
+		return inserted;
+	}
+
+	/**
+	 * Atomically replace the entity with the given ID.
+	 * @param id the entity ID
+	 * @param update the function computing the new entity, returning {@code null} to
+	 * leave the entity unchanged
+	 * @return the new entity, or {@code null} if the entity does not exist or was left
+	 * unchanged
+	 */
+	protected T update(String id, UnaryOperator<T> update) {
+		List<T> updated = new ArrayList<>(2);
+		this.entities.computeIfPresent(id, (key, entity) -> {
+			T replacement = update.apply(entity);
+			if (replacement == null) {
+				return entity;
+			}
+			updated.add(entity);
+			updated.add(replacement);
+			return replacement;
+		});
+		if (updated.isEmpty()) {
+			return null;
+		}
+		saved(updated.get(0), updated.get(1));
+		return updated.get(1);
+	}
+
+	protected Flux<T> findAllMatching(Predicate<? super T> predicate) {
+		return findAll().filter(predicate);
+	}
+
+	protected Mono<Long> deleteAllMatching(Predicate<? super T> predicate) {
+		return Mono.fromSupplier(() -> this.entities.values()
+			.stream()
+			.filter(predicate)
+			.map(this::getId)
+			.toList()
+			.stream()
+			.filter(this::remove)
+			.count());
+	}
+
+	/**
+	 * Called after an entity is stored.
+	 * @param previous the entity previously stored with the same ID, or {@code null}
+	 * @param entity the stored entity
+	 */
+	protected void saved(T previous, T entity) {
+	}
+
+	/**
+	 * Called after an entity is removed.
+	 * @param entity the removed entity
+	 */
+	protected void removed(T entity) {
+	}
+
+	protected String getId(T entity) {
+		return (String) new DirectFieldAccessor(entity).getPropertyValue(this.idProperty);
+	}
+
+	private String getOrGenerateId(T entity) {
+		String id = getId(entity);
+		if (id == null) {
+			id = UUID.randomUUID().toString();
+			new DirectFieldAccessor(entity).setPropertyValue(this.idProperty, id);
+		}
+		return id;
+	}
+
+	private boolean remove(String id) {
+		T entity = this.entities.remove(id);
+		if (entity != null) {
+			removed(entity);
+			return true;
+		}
+		return false;
+	}
+
+}
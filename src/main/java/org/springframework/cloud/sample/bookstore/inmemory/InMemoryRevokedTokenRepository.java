@@ -0,0 +1,39 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.inmemory;
+
+import java.time.Instant;
+
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.sample.bookstore.web.model.RevokedToken;
+import org.springframework.cloud.sample.bookstore.web.repository.RevokedTokenRepository;
+
+public class InMemoryRevokedTokenRepository extends InMemoryReactiveRepository<RevokedToken>
+		implements RevokedTokenRepository {
+
+	public InMemoryRevokedTokenRepository() {
+		super("tokenId");
+	}
+
+	@Override
+	public Mono<Long> deleteByExpiresAtBefore(Instant expiresAt) {
+		return deleteAllMatching((revokedToken) -> revokedToken.getExpiresAt() != null
+				&& revokedToken.getExpiresAt().isBefore(expiresAt));
+	}
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.inmemory;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.sample.bookstore.servicebroker.model.ServiceBinding;
+import org.springframework.cloud.sample.bookstore.servicebroker.repository.ServiceBindingRepository;
+
+public class InMemoryServiceBindingRepository extends InMemoryReactiveMongoRepository<ServiceBinding>
+		implements ServiceBindingRepository {
+
+	public InMemoryServiceBindingRepository() {
+		super("bindingId");
+	}
+
+	@Override
+	public Flux<ServiceBinding> findByServiceInstanceId(String serviceInstanceId) {
+		return findAllMatching((binding) -> serviceInstanceId.equals(binding.getServiceInstanceId()));
+	}
+
+	@Override
+	public Mono<Long> deleteByServiceInstanceId(String serviceInstanceId) {
+		return deleteAllMatching((binding) -> serviceInstanceId.equals(binding.getServiceInstanceId()));
+	}
+
+}
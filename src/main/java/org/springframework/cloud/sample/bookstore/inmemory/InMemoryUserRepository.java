@@ -0,0 +1,78 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.inmemory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.sample.bookstore.web.model.User;
+import org.springframework.cloud.sample.bookstore.web.repository.UserRepository;
+
+/**
+ * In-memory {@link UserRepository} with a secondary index by username, so that user
+ * lookups during authentication do not scan all users.
+ */
+public class InMemoryUserRepository extends InMemoryReactiveRepository<User> implements UserRepository {
+
+	private final Map<String, String> idsByUsername = new ConcurrentHashMap<>();
+
+	public InMemoryUserRepository() {
+		super("id");
+	}
+
+	@Override
+	public Mono<User> findByUsername(String username) {
+		return Mono.fromSupplier(() -> this.idsByUsername.get(username)).flatMap(this::findById);
+	}
+
+	@Override
+	public Flux<User> findByAuthorities(String authority) {
+		return findAllMatching((user) -> hasAuthority(user, authority));
+	}
+
+	@Override
+	public Mono<Long> deleteByUsernameIn(Collection<String> usernames) {
+		return deleteAllMatching((user) -> usernames.contains(user.getUsername()));
+	}
+
+	@Override
+	protected void saved(User previous, User user) {
+		if (previous != null && previous.getUsername() != null
+				&& !previous.getUsername().equals(user.getUsername())) {
+			this.idsByUsername.remove(previous.getUsername(), previous.getId());
+		}
+		if (user.getUsername() != null) {
+			this.idsByUsername.put(user.getUsername(), user.getId());
+		}
+	}
+
+	@Override
+	protected void removed(User user) {
+		if (user.getUsername() != null) {
+			this.idsByUsername.remove(user.getUsername(), user.getId());
+		}
+	}
+
+	private static boolean hasAuthority(User user, String authority) {
+		return user.getAuthorities() != null && user.getAuthorities().contains(authority);
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.invalidation;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bson.Document;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.sample.bookstore.config.InMemoryRepositoryConfiguration;
+import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.cloud.sample.bookstore.web.service.BookStoreChangedEvent;
+import org.springframework.cloud.sample.bookstore.web.service.BookStoreChangedEvent.ChangeType;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Component;
+
+/**
+ * Records the book store changes made through this instance in the
+ * {@code bookStoreEvent} collection, from where the {@link ChangeStreamInvalidator} of
+ * every instance relays them to the clients following the book stores. Recorded changes
+ * are only needed while they are relayed, so they expire after an hour.
+ */
+@Component
+@Profile("!" + InMemoryRepositoryConfiguration.IN_MEMORY_PROFILE)
+@ConditionalOnProperty(name = "bookstore.change-streams.enabled", havingValue = "true")
+public class BookStoreEventLog implements ApplicationListener<BookStoreChangedEvent>, SmartInitializingSingleton {
+
+	/**
+	 * The collection holding the recorded book store changes.
+	 */
+	public static final String COLLECTION = "bookStoreEvent";
+
+	private static final Log logger = LogFactory.getLog(BookStoreEventLog.class);
+
+	private static final Duration RETENTION = Duration.ofHours(1);
+
+	private static final String BOOK_STORE_ID_KEY = "bookStoreId";
+
+	private static final String CHANGE_TYPE_KEY = "changeType";
+
+	private static final String BOOKS_KEY = "books";
+
+	private static final String VERSION_KEY = "version";
+
+	private static final String CREATED_AT_KEY = "createdAt";
+
+	private final ReactiveMongoTemplate mongoTemplate;
+
+	public BookStoreEventLog(ReactiveMongoTemplate mongoTemplate) {
+		this.mongoTemplate = mongoTemplate;
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		this.mongoTemplate.indexOps(COLLECTION)
+			.ensureIndex(new Index().on(CREATED_AT_KEY, Sort.Direction.ASC).expire(RETENTION))
+			.block();
+	}
+
+	@Override
+	public void onApplicationEvent(BookStoreChangedEvent event) {
+		this.mongoTemplate.insert(write(event), COLLECTION)
+			.subscribe(null, (ex) -> logger.warn("Failed to record change to book store " + event.getBookStoreId()
+					+ ", clients following it will miss the change", ex));
+	}
+
+	/**
+	 * Read a recorded book store change.
+	 * @param document the recorded change
+	 * @return the change
+	 */
+	public BookStoreChangedEvent read(Document document) {
+		List<Book> books = document.getList(BOOKS_KEY, Document.class, List.of())
+			.stream()
+			.map((book) -> this.mongoTemplate.getConverter().read(Book.class, book))
+			.toList();
+		return new BookStoreChangedEvent(document.getString(BOOK_STORE_ID_KEY),
+				ChangeType.valueOf(document.getString(CHANGE_TYPE_KEY)), books, document.getLong(VERSION_KEY));
+	}
+
+	private Document write(BookStoreChangedEvent event) {
+		List<Document> books = event.getBooks().stream().map((book) -> {
+			Document document = new Document();
+			this.mongoTemplate.getConverter().write(book, document);
+			return document;
+		}).toList();
+		return new Document(BOOK_STORE_ID_KEY, event.getBookStoreId())
+			.append(CHANGE_TYPE_KEY, event.getChangeType().name())
+			.append(BOOKS_KEY, books)
+			.append(VERSION_KEY, event.getVersion())
+			.append(CREATED_AT_KEY, new Date());
+	}
+
+}
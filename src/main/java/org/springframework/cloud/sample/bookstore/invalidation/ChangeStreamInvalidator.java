@@ -0,0 +1,342 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.invalidation;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cloud.sample.bookstore.config.InMemoryRepositoryConfiguration;
+import org.springframework.cloud.sample.bookstore.servicebroker.model.ServiceBinding;
+import org.springframework.cloud.sample.bookstore.web.model.BookStore;
+import org.springframework.cloud.sample.bookstore.web.model.RevokedToken;
+import org.springframework.cloud.sample.bookstore.web.model.User;
+import org.springframework.cloud.sample.bookstore.web.resource.BookStoreResourceCache;
+import org.springframework.cloud.sample.bookstore.web.security.BookStoreTokenService;
+import org.springframework.cloud.sample.bookstore.web.security.CachingReactiveAuthenticationManager;
+import org.springframework.cloud.sample.bookstore.web.security.CachingReactiveUserDetailsService;
+import org.springframework.cloud.sample.bookstore.web.service.BookStoreEventBroker;
+import org.springframework.cloud.sample.bookstore.web.service.BookSuggestionIndex;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+/**
+ * Watches the {@code bookStore}, {@code user}, {@code serviceBinding} and
+ * {@code revokedToken} collections with change streams and evicts the affected entries
+ * from the local caches, so changes
+ * made through other instances are seen at once rather than when the cached entries
+ * expire. The resume token of each stream is persisted periodically, so a reopened stream
+ * continues where the previous one stopped. Whenever a stream fails, every entry it
+ * guards is evicted before it is reopened, and the cache time-to-live settings bound the
+ * staleness of entries while no stream is open.
+ * <p>
+ * The book store changes recorded by the {@link BookStoreEventLog} of every instance are
+ * watched too and relayed to the {@link BookStoreEventBroker}, so clients following a
+ * book store are sent the changes made through any instance. When that stream fails, the
+ * clients are told to read their book stores again.
+ * <p>
+ * Change streams require a replica set, so watching is only enabled when
+ * {@code bookstore.change-streams.enabled} is set.
+ */
+@Component
+@Profile("!" + InMemoryRepositoryConfiguration.IN_MEMORY_PROFILE)
+@ConditionalOnProperty(name = "bookstore.change-streams.enabled", havingValue = "true")
+public class ChangeStreamInvalidator implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+
+	/**
+	 * The collection holding the last resume token persisted for each node and watched
+	 * collection.
+	 */
+	public static final String RESUME_TOKEN_COLLECTION = "changeStreamResumeToken";
+
+	private static final Log logger = LogFactory.getLog(ChangeStreamInvalidator.class);
+
+	private static final String ID_KEY = "_id";
+
+	private static final String TOKEN_KEY = "token";
+
+	private static final String USERNAME_KEY = "username";
+
+	private static final Duration MIN_BACKOFF = Duration.ofSeconds(1);
+
+	private static final Duration MAX_BACKOFF = Duration.ofMinutes(1);
+
+	/**
+	 * Error codes reported when a stream cannot be resumed from its token, because the
+	 * token is malformed, the oplog no longer holds it or the stream was invalidated.
+	 */
+	private static final int INVALID_RESUME_TOKEN = 260;
+
+	private static final int CHANGE_STREAM_FATAL_ERROR = 280;
+
+	private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+
+	private final ReactiveMongoTemplate mongoTemplate;
+
+	private final BookStoreResourceCache resourceCache;
+
+	private final BookSuggestionIndex suggestionIndex;
+
+	private final CachingReactiveUserDetailsService userDetailsService;
+
+	private final CachingReactiveAuthenticationManager authenticationManager;
+
+	private final BookStoreTokenService tokenService;
+
+	private final BookStoreEventLog eventLog;
+
+	private final BookStoreEventBroker eventBroker;
+
+	private final String nodeId;
+
+	private final Duration resumeTokenInterval;
+
+	private volatile Disposable subscription;
+
+	public ChangeStreamInvalidator(ReactiveMongoTemplate mongoTemplate, BookStoreResourceCache resourceCache,
+			BookSuggestionIndex suggestionIndex, CachingReactiveUserDetailsService userDetailsService,
+			CachingReactiveAuthenticationManager authenticationManager, BookStoreTokenService tokenService,
+			BookStoreEventLog eventLog, BookStoreEventBroker eventBroker,
+			@Value("${bookstore.change-streams.node-id:${HOSTNAME:local}}") String nodeId,
+			@Value("${bookstore.change-streams.resume-token-interval:5s}") Duration resumeTokenInterval) {
+		this.mongoTemplate = mongoTemplate;
+		this.resourceCache = resourceCache;
+		this.suggestionIndex = suggestionIndex;
+		this.userDetailsService = userDetailsService;
+		this.authenticationManager = authenticationManager;
+		this.tokenService = tokenService;
+		this.eventLog = eventLog;
+		this.eventBroker = eventBroker;
+		this.nodeId = nodeId;
+		this.resumeTokenInterval = resumeTokenInterval;
+	}
+
+	@Override
+	public void onApplicationEvent(ApplicationReadyEvent event) {
+		this.subscription = Flux
+			.merge(watch(this.mongoTemplate.getCollectionName(BookStore.class), false, this::bookStoreChanged,
+					this::evictAllBookStores),
+					watch(this.mongoTemplate.getCollectionName(User.class), true, this::userChanged,
+							this::evictAllUsers),
+					watch(this.mongoTemplate.getCollectionName(ServiceBinding.class), false, this::bindingChanged,
+							this::evictAllUsers),
+					watch(this.mongoTemplate.getCollectionName(RevokedToken.class), false, this::tokenRevoked,
+							this::loadRevokedTokens),
+					watch(BookStoreEventLog.COLLECTION, false, this::bookStoreEventRecorded, this::resyncAll))
+			.subscribe();
+	}
+
+	@Override
+	public void destroy() {
+		Disposable subscription = this.subscription;
+		if (subscription != null) {
+			subscription.dispose();
+		}
+	}
+
+	private Flux<BsonValue> watch(String collection, boolean lookupFullDocument,
+			Consumer<ChangeStreamEvent<Document>> handler, Supplier<Mono<Void>> evictAll) {
+		return Flux
+			.defer(() -> loadResumeToken(collection).map(Optional::of)
+				.defaultIfEmpty(Optional.empty())
+				.flatMapMany((resumeToken) -> this.mongoTemplate.changeStream(collection,
+						options(resumeToken, lookupFullDocument), Document.class)))
+			.doOnNext(handler)
+			.mapNotNull(ChangeStreamEvent::getResumeToken)
+			.sample(this.resumeTokenInterval)
+			.concatMap((resumeToken) -> saveResumeToken(collection, resumeToken).thenReturn(resumeToken))
+			.onErrorResume(ChangeStreamInvalidator::isNotResumable,
+					(ex) -> deleteResumeToken(collection).then(Mono.error(ex)))
+			// an invalidated stream completes, it is reopened like a failed one
+			.concatWith(Mono.error(() -> new IllegalStateException("Change stream was closed")))
+			.retryWhen(Retry.backoff(Long.MAX_VALUE, MIN_BACKOFF)
+				.maxBackoff(MAX_BACKOFF)
+				.transientErrors(true)
+				.doBeforeRetryAsync((signal) -> {
+					logger.warn("Change stream on " + collection + " failed, evicting its cached entries",
+							signal.failure());
+					return evictAll.get();
+				}));
+	}
+
+	private void bookStoreChanged(ChangeStreamEvent<Document> event) {
+		String bookStoreId = documentId(event);
+		if (bookStoreId != null) {
+			this.resourceCache.evict(bookStoreId);
+			this.suggestionIndex.evict(bookStoreId);
+		}
+		else {
+			this.resourceCache.evictAll();
+			this.suggestionIndex.evictAll();
+		}
+	}
+
+	private void userChanged(ChangeStreamEvent<Document> event) {
+		Document user = event.getBody();
+		String username = (user != null) ? user.getString(USERNAME_KEY) : null;
+		if (username != null) {
+			this.userDetailsService.evict(username);
+			this.authenticationManager.evict(username);
+		}
+		else {
+			// deleted users are only identified by their document ID
+			String userId = documentId(event);
+			if (userId != null) {
+				this.userDetailsService.evictUserId(userId);
+				this.authenticationManager.evictUserId(userId);
+			}
+			else {
+				this.userDetailsService.evictAll();
+				this.authenticationManager.evictAll();
+			}
+		}
+	}
+
+	/**
+	 * The credentials of a deleted binding are revoked by the instance deleting it, which
+	 * deletes the binding's user or persists the revocation of its token. The deleted user
+	 * is evicted when the user stream reports it; only bindings created before their users
+	 * had unique usernames have a user cached under the binding ID, which is evicted here.
+	 */
+	private void bindingChanged(ChangeStreamEvent<Document> event) {
+		if (event.getOperationType() != OperationType.DELETE) {
+			return;
+		}
+		String bindingId = documentId(event);
+		if (bindingId != null) {
+			this.userDetailsService.evict(bindingId);
+			this.authenticationManager.evict(bindingId);
+		}
+	}
+
+	private void tokenRevoked(ChangeStreamEvent<Document> event) {
+		Document revocation = event.getBody();
+		if (event.getOperationType() != OperationType.DELETE && revocation != null) {
+			this.tokenService.markRevoked(this.mongoTemplate.getConverter().read(RevokedToken.class, revocation));
+		}
+	}
+
+	private void bookStoreEventRecorded(ChangeStreamEvent<Document> event) {
+		Document recorded = event.getBody();
+		if (event.getOperationType() == OperationType.INSERT && recorded != null) {
+			this.eventBroker.publish(this.eventLog.read(recorded));
+		}
+	}
+
+	private Mono<Void> evictAllBookStores() {
+		return Mono.fromRunnable(() -> {
+			this.resourceCache.evictAll();
+			this.suggestionIndex.evictAll();
+		});
+	}
+
+	private Mono<Void> evictAllUsers() {
+		return Mono.fromRunnable(() -> {
+			this.userDetailsService.evictAll();
+			this.authenticationManager.evictAll();
+		});
+	}
+
+	private Mono<Void> loadRevokedTokens() {
+		return this.tokenService.loadRevokedTokens();
+	}
+
+	private Mono<Void> resyncAll() {
+		return Mono.fromRunnable(this.eventBroker::resyncAll);
+	}
+
+	private Mono<BsonValue> loadResumeToken(String collection) {
+		return this.mongoTemplate.findById(resumeTokenId(collection), Document.class, RESUME_TOKEN_COLLECTION)
+			.mapNotNull((document) -> document.getString(TOKEN_KEY))
+			.map(BsonDocument::parse);
+	}
+
+	private Mono<Void> saveResumeToken(String collection, BsonValue resumeToken) {
+		Document document = new Document(ID_KEY, resumeTokenId(collection)).append(TOKEN_KEY,
+				resumeToken.asDocument().toJson());
+		return this.mongoTemplate.save(document, RESUME_TOKEN_COLLECTION).then();
+	}
+
+	private Mono<Void> deleteResumeToken(String collection) {
+		return this.mongoTemplate
+			.remove(Query.query(Criteria.where(ID_KEY).is(resumeTokenId(collection))), RESUME_TOKEN_COLLECTION)
+			.then();
+	}
+
+	private String resumeTokenId(String collection) {
+		return this.nodeId + ":" + collection;
+	}
+
+	private static ChangeStreamOptions options(Optional<BsonValue> resumeToken, boolean lookupFullDocument) {
+		ChangeStreamOptions.ChangeStreamOptionsBuilder builder = ChangeStreamOptions.builder();
+		resumeToken.ifPresent(builder::resumeAfter);
+		if (lookupFullDocument) {
+			builder.fullDocumentLookup(FullDocument.UPDATE_LOOKUP);
+		}
+		return builder.build();
+	}
+
+	private static String documentId(ChangeStreamEvent<Document> event) {
+		ChangeStreamDocument<Document> raw = event.getRaw();
+		BsonDocument documentKey = (raw != null) ? raw.getDocumentKey() : null;
+		BsonValue id = (documentKey != null) ? documentKey.get(ID_KEY) : null;
+		if (id == null) {
+			return null;
+		}
+		if (id.isObjectId()) {
+			return id.asObjectId().getValue().toHexString();
+		}
+		return id.isString() ? id.asString().getValue() : null;
+	}
+
+	private static boolean isNotResumable(Throwable ex) {
+		for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+			if (cause instanceof MongoException mongoException) {
+				int code = mongoException.getCode();
+				return code == INVALID_RESUME_TOKEN || code == CHANGE_STREAM_FATAL_ERROR
+						|| code == CHANGE_STREAM_HISTORY_LOST;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.servicebroker.config;
+
+import reactor.core.publisher.Flux;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.cloud.sample.bookstore.config.InMemoryRepositoryConfiguration;
+import org.springframework.cloud.sample.bookstore.servicebroker.model.ServiceBinding;
+import org.springframework.cloud.sample.bookstore.web.model.User;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+
+@Configuration
+@Profile("!" + InMemoryRepositoryConfiguration.IN_MEMORY_PROFILE)
+public class ServiceBrokerIndexConfiguration implements SmartInitializingSingleton {
+
+	private final ReactiveMongoTemplate mongoTemplate;
+
+	ServiceBrokerIndexConfiguration(ReactiveMongoTemplate mongoTemplate) {
+		this.mongoTemplate = mongoTemplate;
+	}
+
+	/**
+	 * Wait for the binding and user indexes while the application starts, as the bulk
+	 * deletes and reconciliation queries rely on them.
+	 */
+	@Override
+	public void afterSingletonsInstantiated() {
+		Flux.concat(
+				this.mongoTemplate.indexOps(ServiceBinding.class)
+					.ensureIndex(new Index().on("serviceInstanceId", Sort.Direction.ASC)),
+				this.mongoTemplate.indexOps(User.class).ensureIndex(new Index().on("username", Sort.Direction.ASC)),
+				this.mongoTemplate.indexOps(User.class).ensureIndex(new Index().on("authorities", Sort.Direction.ASC)))
+			.blockLast();
+	}
+
+}
@@ -27,6 +27,8 @@ public class ServiceBinding {
 	@Id
 	private String bindingId;
 
+	private String serviceInstanceId;
+
 	private Map<String, Object> parameters;
 
 	private Map<String, Object> credentials;
@@ -34,12 +36,19 @@ public class ServiceBinding {
 	@SuppressWarnings("unused")
 	private ServiceBinding() {
 		this.bindingId = null;
+		this.serviceInstanceId = null;
 		this.parameters = null;
 		this.credentials = null;
 	}
 
 	public ServiceBinding(String bindingId, Map<String, Object> parameters, Map<String, Object> credentials) {
+		this(bindingId, null, parameters, credentials);
+	}
+
+	public ServiceBinding(String bindingId, String serviceInstanceId, Map<String, Object> parameters,
+			Map<String, Object> credentials) {
 		this.bindingId = bindingId;
+		this.serviceInstanceId = serviceInstanceId;
 		this.parameters = parameters;
 		this.credentials = credentials;
 	}
@@ -48,6 +57,10 @@ public class ServiceBinding {
 		return this.bindingId;
 	}
 
+	public String getServiceInstanceId() {
+		return this.serviceInstanceId;
+	}
+
 	public Map<String, Object> getCredentials() {
 		return this.credentials;
 	}
@@ -16,8 +16,10 @@
 
 package org.springframework.cloud.sample.bookstore.servicebroker.model;
 
+import java.time.Instant;
 import java.util.Map;
 
+import org.springframework.cloud.servicebroker.model.instance.OperationState;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -33,6 +35,14 @@ public class ServiceInstance {
 
 	private Map<String, Object> parameters;
 
+	private String operation;
+
+	private OperationState operationState;
+
+	private String operationDescription;
+
+	private Instant operationUpdatedAt;
+
 	@SuppressWarnings("unused")
 	private ServiceInstance() {
 		this.instanceId = null;
@@ -65,4 +75,35 @@ public class ServiceInstance {
 		return this.parameters;
 	}
 
+	public String getOperation() {
+		return this.operation;
+	}
+
+	public OperationState getOperationState() {
+		return this.operationState;
+	}
+
+	public String getOperationDescription() {
+		return this.operationDescription;
+	}
+
+	public Instant getOperationUpdatedAt() {
+		return this.operationUpdatedAt;
+	}
+
+	public boolean isOperationInProgress() {
+		return this.operationState == OperationState.IN_PROGRESS;
+	}
+
+	public ServiceInstance withOperation(String operation, OperationState operationState,
+			String operationDescription) {
+		ServiceInstance instance = new ServiceInstance(this.instanceId, this.serviceDefinitionId, this.planId,
+				this.parameters);
+		instance.operation = operation;
+		instance.operationState = operationState;
+		instance.operationDescription = operationDescription;
+		instance.operationUpdatedAt = Instant.now();
+		return instance;
+	}
+
 }
@@ -16,9 +16,31 @@
 
 package org.springframework.cloud.sample.bookstore.servicebroker.repository;
 
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
 import org.springframework.cloud.sample.bookstore.servicebroker.model.ServiceBinding;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.data.repository.reactive.ReactiveSortingRepository;
+
+/**
+ * Repository of service bindings, limited to operations the in-memory repositories also
+ * support.
+ */
+public interface ServiceBindingRepository
+		extends ReactiveCrudRepository<ServiceBinding, String>, ReactiveSortingRepository<ServiceBinding, String> {
+
+	/**
+	 * Insert a service binding, failing if one with the same ID exists.
+	 * @param <S> the service binding type
+	 * @param binding the service binding to insert
+	 * @return the inserted service binding, or a
+	 * {@link org.springframework.dao.DuplicateKeyException} if the ID is taken
+	 */
+	<S extends ServiceBinding> Mono<S> insert(S binding);
+
+	Flux<ServiceBinding> findByServiceInstanceId(String serviceInstanceId);
 
-public interface ServiceBindingRepository extends ReactiveCrudRepository<ServiceBinding, String> {
+	Mono<Long> deleteByServiceInstanceId(String serviceInstanceId);
 
 }
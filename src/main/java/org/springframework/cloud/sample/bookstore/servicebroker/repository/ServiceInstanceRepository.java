@@ -16,9 +16,33 @@
 
 package org.springframework.cloud.sample.bookstore.servicebroker.repository;
 
+import java.time.Instant;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
 import org.springframework.cloud.sample.bookstore.servicebroker.model.ServiceInstance;
+import org.springframework.cloud.servicebroker.model.instance.OperationState;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.data.repository.reactive.ReactiveSortingRepository;
+
+/**
+ * Repository of service instances, limited to operations the in-memory repositories also
+ * support.
+ */
+public interface ServiceInstanceRepository
+		extends ReactiveCrudRepository<ServiceInstance, String>, ReactiveSortingRepository<ServiceInstance, String> {
+
+	/**
+	 * Insert a service instance, failing if one with the same ID exists.
+	 * @param <S> the service instance type
+	 * @param instance the service instance to insert
+	 * @return the inserted service instance, or a
+	 * {@link org.springframework.dao.DuplicateKeyException} if the ID is taken
+	 */
+	<S extends ServiceInstance> Mono<S> insert(S instance);
 
-public interface ServiceInstanceRepository extends ReactiveCrudRepository<ServiceInstance, String> {
+	Flux<ServiceInstance> findByOperationStateAndOperationUpdatedAtBefore(OperationState operationState,
+			Instant updatedBefore);
 
 }
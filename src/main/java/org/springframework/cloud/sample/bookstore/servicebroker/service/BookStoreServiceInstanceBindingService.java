@@ -18,6 +18,7 @@ package org.springframework.cloud.sample.bookstore.servicebroker.service;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 
 import reactor.core.publisher.Mono;
 
@@ -25,6 +26,7 @@ import org.springframework.cloud.sample.bookstore.servicebroker.model.ServiceBin
 import org.springframework.cloud.sample.bookstore.servicebroker.repository.ServiceBindingRepository;
 import org.springframework.cloud.sample.bookstore.web.model.ApplicationInformation;
 import org.springframework.cloud.sample.bookstore.web.model.User;
+import org.springframework.cloud.sample.bookstore.web.security.BookStoreTokenService;
 import org.springframework.cloud.sample.bookstore.web.security.SecurityAuthorities;
 import org.springframework.cloud.sample.bookstore.web.service.UserService;
 import org.springframework.cloud.servicebroker.exception.ServiceInstanceBindingDoesNotExistException;
@@ -37,6 +39,7 @@ import org.springframework.cloud.servicebroker.model.binding.GetServiceInstanceA
 import org.springframework.cloud.servicebroker.model.binding.GetServiceInstanceBindingRequest;
 import org.springframework.cloud.servicebroker.model.binding.GetServiceInstanceBindingResponse;
 import org.springframework.cloud.servicebroker.service.ServiceInstanceBindingService;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.web.util.UriComponentsBuilder;
 
@@ -49,57 +52,49 @@ public class BookStoreServiceInstanceBindingService implements ServiceInstanceBi
 
 	private static final String PASSWORD_KEY = "password";
 
+	private static final String TOKEN_KEY = "token";
+
+	private static final String CREDENTIAL_TYPE_PARAMETER = "credential_type";
+
+	private static final String TOKEN_CREDENTIAL_TYPE = "token";
+
 	private final ServiceBindingRepository bindingRepository;
 
 	private final UserService userService;
 
+	private final BookStoreTokenService tokenService;
+
 	private final ApplicationInformation applicationInformation;
 
 	public BookStoreServiceInstanceBindingService(ServiceBindingRepository bindingRepository, UserService userService,
-			ApplicationInformation applicationInformation) {
+			BookStoreTokenService tokenService, ApplicationInformation applicationInformation) {
 		this.bindingRepository = bindingRepository;
 		this.userService = userService;
+		this.tokenService = tokenService;
 		this.applicationInformation = applicationInformation;
 	}
 
 	@Override
 	public Mono<CreateServiceInstanceBindingResponse> createServiceInstanceBinding(
 			CreateServiceInstanceBindingRequest request) {
-		return Mono.just(CreateServiceInstanceAppBindingResponse.builder())
-			.flatMap(
-					(responseBuilder) -> this.bindingRepository.existsById(request.getBindingId()).flatMap((exists) -> {
-						if (exists) {
-							return this.bindingRepository.findById(request.getBindingId())
-								.flatMap((serviceBinding) -> Mono.just(responseBuilder.bindingExisted(true)
-									.credentials(serviceBinding.getCredentials())
-									.build()));
-						}
-						else {
-							return createUser(request)
-								.flatMap((user) -> buildCredentials(request.getServiceInstanceId(), user))
-								.flatMap((credentials) -> this.bindingRepository
-									.save(new ServiceBinding(request.getBindingId(), request.getParameters(),
-											credentials))
-									.thenReturn(
-											responseBuilder.bindingExisted(false).credentials(credentials).build()));
-						}
-					}));
+		String instanceId = request.getServiceInstanceId();
+		if (isTokenRequested(request)) {
+			return createToken(request).flatMap((token) -> buildTokenCredentials(instanceId, token))
+				.flatMap((credentials) -> insertBinding(request, credentials, Mono.empty()));
+		}
+		return generateUser(request).flatMap((user) -> this.userService.saveUser(user)
+			.flatMap((saved) -> buildCredentials(instanceId, user)
+				.flatMap((credentials) -> insertBinding(request, credentials, this.userService.discardUser(saved)))));
 	}
 
 	@Override
 	public Mono<DeleteServiceInstanceBindingResponse> deleteServiceInstanceBinding(
 			DeleteServiceInstanceBindingRequest request) {
 		return Mono.just(request.getBindingId())
-			.flatMap((bindingId) -> this.bindingRepository.existsById(bindingId).flatMap((exists) -> {
-				if (exists) {
-					return this.bindingRepository.deleteById(bindingId)
-						.then(this.userService.deleteUser(bindingId))
-						.thenReturn(DeleteServiceInstanceBindingResponse.builder().build());
-				}
-				else {
-					return Mono.error(new ServiceInstanceBindingDoesNotExistException(bindingId));
-				}
-			}));
+			.flatMap((bindingId) -> this.bindingRepository.findById(bindingId)
+				.switchIfEmpty(Mono.error(new ServiceInstanceBindingDoesNotExistException(bindingId)))
+				.flatMap((serviceBinding) -> deleteBindingAndCredentials(serviceBinding)
+					.thenReturn(DeleteServiceInstanceBindingResponse.builder().build())));
 	}
 
 	@Override
@@ -114,6 +109,103 @@ public class BookStoreServiceInstanceBindingService implements ServiceInstanceBi
 					.build())));
 	}
 
+	/**
+	 * Delete all bindings of a service instance together with their credentials, using
+	 * bulk deletes rather than one round trip per binding.
+	 * @param instanceId the service instance ID
+	 * @return completes when the bindings, users and tokens have been removed
+	 */
+	public Mono<Void> deleteServiceInstanceBindings(String instanceId) {
+		return this.bindingRepository.findByServiceInstanceId(instanceId)
+			.filter(this::hasToken)
+			.map(ServiceBinding::getBindingId)
+			.collectList()
+			.flatMap((tokenIds) -> Mono.whenDelayError(
+					tokenIds.isEmpty() ? Mono.empty() : this.tokenService.revokeTokens(tokenIds),
+					this.userService.deleteBookStoreUsers(instanceId).then(),
+					this.bindingRepository.deleteByServiceInstanceId(instanceId).then()));
+	}
+
+	/**
+	 * Insert the binding together with its credentials, so that concurrent identical
+	 * requests are resolved by the database in a single write. The credentials are
+	 * discarded when the insert fails; when the binding already exists, the stored
+	 * credentials are returned instead.
+	 */
+	private Mono<CreateServiceInstanceBindingResponse> insertBinding(CreateServiceInstanceBindingRequest request,
+			Map<String, Object> credentials, Mono<Void> discardCredentials) {
+		String bindingId = request.getBindingId();
+		return this.bindingRepository
+			.insert(new ServiceBinding(bindingId, request.getServiceInstanceId(), request.getParameters(),
+					credentials))
+			.thenReturn(CreateServiceInstanceAppBindingResponse.builder()
+				.bindingExisted(false)
+				.credentials(credentials)
+				.build())
+			.cast(CreateServiceInstanceBindingResponse.class)
+			.onErrorResume((ex) -> {
+				Mono<CreateServiceInstanceBindingResponse> response = (ex instanceof DuplicateKeyException)
+						? existingBindingResponse(bindingId) : Mono.error(ex);
+				return discardCredentials.then(response);
+			});
+	}
+
+	private Mono<CreateServiceInstanceBindingResponse> existingBindingResponse(String bindingId) {
+		return this.bindingRepository.findById(bindingId)
+			.map((serviceBinding) -> CreateServiceInstanceAppBindingResponse.builder()
+				.bindingExisted(true)
+				.credentials(serviceBinding.getCredentials())
+				.build());
+	}
+
+	/**
+	 * Delete the binding and revoke its credentials concurrently. If either fails, the
+	 * binding is restored so that the platform can retry.
+	 */
+	private Mono<Void> deleteBindingAndCredentials(ServiceBinding serviceBinding) {
+		return Mono
+			.whenDelayError(this.bindingRepository.deleteById(serviceBinding.getBindingId()),
+					revokeCredentials(serviceBinding))
+			.onErrorResume((ex) -> this.bindingRepository.save(serviceBinding).then(Mono.error(ex)));
+	}
+
+	private Mono<Void> revokeCredentials(ServiceBinding serviceBinding) {
+		if (hasToken(serviceBinding)) {
+			return this.tokenService.revokeToken(serviceBinding.getBindingId());
+		}
+		return this.userService.deleteUser(usernameOf(serviceBinding));
+	}
+
+	/**
+	 * Bindings created before their users were given unique usernames use the binding ID
+	 * as the username.
+	 */
+	private String usernameOf(ServiceBinding serviceBinding) {
+		Map<String, Object> credentials = serviceBinding.getCredentials();
+		if (credentials == null || credentials.get(USERNAME_KEY) == null) {
+			return serviceBinding.getBindingId();
+		}
+		return credentials.get(USERNAME_KEY).toString();
+	}
+
+	private boolean hasToken(ServiceBinding serviceBinding) {
+		return serviceBinding.getCredentials() != null && serviceBinding.getCredentials().containsKey(TOKEN_KEY);
+	}
+
+	private boolean isTokenRequested(CreateServiceInstanceBindingRequest request) {
+		return request.getParameters() != null
+				&& TOKEN_CREDENTIAL_TYPE.equals(request.getParameters().get(CREDENTIAL_TYPE_PARAMETER));
+	}
+
+	private Mono<Map<String, Object>> buildTokenCredentials(String instanceId, String token) {
+		return buildUri(instanceId).flatMap((uri) -> {
+			Map<String, Object> credentials = new HashMap<>();
+			credentials.put(URI_KEY, uri);
+			credentials.put(TOKEN_KEY, token);
+			return Mono.just(credentials);
+		});
+	}
+
 	private Mono<Map<String, Object>> buildCredentials(String instanceId, User user) {
 		return buildUri(instanceId).flatMap((uri) -> {
 			Map<String, Object> credentials = new HashMap<>();
@@ -131,8 +223,20 @@ public class BookStoreServiceInstanceBindingService implements ServiceInstanceBi
 			.toUriString());
 	}
 
-	private Mono<User> createUser(CreateServiceInstanceBindingRequest request) {
-		return this.userService.createUser(request.getBindingId(), SecurityAuthorities.FULL_ACCESS,
+	private Mono<String> createToken(CreateServiceInstanceBindingRequest request) {
+		return this.tokenService.issueToken(request.getBindingId(), request.getServiceInstanceId(),
+				SecurityAuthorities.FULL_ACCESS,
+				SecurityAuthorities.BOOK_STORE_ID_PREFIX + request.getServiceInstanceId());
+	}
+
+	/**
+	 * Generate the binding's user with a username unique to this request, so that the
+	 * users saved by concurrent identical requests, or left behind by a request that
+	 * failed before inserting its binding, never share the username of the bound user.
+	 */
+	private Mono<User> generateUser(CreateServiceInstanceBindingRequest request) {
+		return this.userService.generateUser(request.getBindingId() + "-" + UUID.randomUUID(),
+				SecurityAuthorities.FULL_ACCESS,
 				SecurityAuthorities.BOOK_STORE_ID_PREFIX + request.getServiceInstanceId());
 	}
 
@@ -21,44 +21,78 @@ import reactor.core.publisher.Mono;
 import org.springframework.cloud.sample.bookstore.servicebroker.model.ServiceInstance;
 import org.springframework.cloud.sample.bookstore.servicebroker.repository.ServiceInstanceRepository;
 import org.springframework.cloud.sample.bookstore.web.service.BookStoreService;
+import org.springframework.cloud.servicebroker.exception.ServiceBrokerConcurrencyException;
+import org.springframework.cloud.servicebroker.exception.ServiceBrokerException;
 import org.springframework.cloud.servicebroker.exception.ServiceInstanceDoesNotExistException;
 import org.springframework.cloud.servicebroker.model.instance.CreateServiceInstanceRequest;
 import org.springframework.cloud.servicebroker.model.instance.CreateServiceInstanceResponse;
 import org.springframework.cloud.servicebroker.model.instance.DeleteServiceInstanceRequest;
 import org.springframework.cloud.servicebroker.model.instance.DeleteServiceInstanceResponse;
+import org.springframework.cloud.servicebroker.model.instance.GetLastServiceOperationRequest;
+import org.springframework.cloud.servicebroker.model.instance.GetLastServiceOperationResponse;
 import org.springframework.cloud.servicebroker.model.instance.GetServiceInstanceRequest;
 import org.springframework.cloud.servicebroker.model.instance.GetServiceInstanceResponse;
+import org.springframework.cloud.servicebroker.model.instance.OperationState;
 import org.springframework.cloud.servicebroker.service.ServiceInstanceService;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 
 @Service
 public class BookStoreServiceInstanceService implements ServiceInstanceService {
 
+	private static final String PROVISION_OPERATION = "provision";
+
+	private static final String DEPROVISION_OPERATION = "deprovision";
+
 	private final BookStoreService storeService;
 
 	private final ServiceInstanceRepository instanceRepository;
 
-	public BookStoreServiceInstanceService(BookStoreService storeService,
-			ServiceInstanceRepository instanceRepository) {
+	private final ServiceInstanceOperationExecutor operationExecutor;
+
+	private final BookStoreServiceInstanceBindingService bindingService;
+
+	public BookStoreServiceInstanceService(BookStoreService storeService, ServiceInstanceRepository instanceRepository,
+			ServiceInstanceOperationExecutor operationExecutor, BookStoreServiceInstanceBindingService bindingService) {
 		this.storeService = storeService;
 		this.instanceRepository = instanceRepository;
+		this.operationExecutor = operationExecutor;
+		this.bindingService = bindingService;
 	}
 
 	@Override
 	public Mono<CreateServiceInstanceResponse> createServiceInstance(CreateServiceInstanceRequest request) {
-		return Mono.just(request.getServiceInstanceId())
-			.flatMap((instanceId) -> Mono.just(CreateServiceInstanceResponse.builder())
-				.flatMap((responseBuilder) -> this.instanceRepository.existsById(instanceId).flatMap((exists) -> {
-					if (exists) {
-						return Mono.just(responseBuilder.instanceExisted(true).build());
-					}
-					else {
-						return this.storeService.createBookStore(instanceId)
-							.then(this.instanceRepository.save(new ServiceInstance(instanceId,
-									request.getServiceDefinitionId(), request.getPlanId(), request.getParameters())))
-							.thenReturn(responseBuilder.build());
+		return Mono.just(request.getServiceInstanceId()).flatMap((instanceId) -> {
+			ServiceInstance serviceInstance = new ServiceInstance(instanceId, request.getServiceDefinitionId(),
+					request.getPlanId(), request.getParameters());
+			if (request.isAsyncAccepted()) {
+				ServiceInstance inProgress = serviceInstance.withOperation(PROVISION_OPERATION,
+						OperationState.IN_PROGRESS, null);
+				return insertIfAbsent(inProgress).flatMap((inserted) -> {
+					if (!inserted) {
+						return existingInstanceResponse(instanceId, true);
 					}
-				})));
+					return runInBackground(serviceInstance, PROVISION_OPERATION,
+							this.storeService.createBookStore(instanceId)
+								.then(this.instanceRepository.save(serviceInstance
+									.withOperation(PROVISION_OPERATION, OperationState.SUCCEEDED, null)))
+								.then(),
+							this.instanceRepository.deleteById(instanceId))
+						.thenReturn(CreateServiceInstanceResponse.builder()
+							.async(true)
+							.operation(PROVISION_OPERATION)
+							.build());
+				});
+			}
+			return insertIfAbsent(serviceInstance).flatMap((inserted) -> {
+				if (!inserted) {
+					return existingInstanceResponse(instanceId, false);
+				}
+				return this.storeService.createBookStore(instanceId)
+					.onErrorResume((ex) -> this.instanceRepository.deleteById(instanceId).then(Mono.error(ex)))
+					.thenReturn(CreateServiceInstanceResponse.builder().build());
+			});
+		});
 	}
 
 	@Override
@@ -76,16 +110,119 @@ public class BookStoreServiceInstanceService implements ServiceInstanceService {
 	@Override
 	public Mono<DeleteServiceInstanceResponse> deleteServiceInstance(DeleteServiceInstanceRequest request) {
 		return Mono.just(request.getServiceInstanceId())
-			.flatMap((instanceId) -> this.instanceRepository.existsById(instanceId).flatMap((exists) -> {
-				if (exists) {
-					return this.storeService.deleteBookStore(instanceId)
-						.then(this.instanceRepository.deleteById(instanceId))
+			.flatMap((instanceId) -> this.instanceRepository.findById(instanceId)
+				.switchIfEmpty(Mono.error(new ServiceInstanceDoesNotExistException(instanceId)))
+				.flatMap((serviceInstance) -> {
+					if (serviceInstance.isOperationInProgress()) {
+						return Mono.error(operationInProgress(serviceInstance));
+					}
+					if (request.isAsyncAccepted()) {
+						return this.instanceRepository
+							.save(serviceInstance.withOperation(DEPROVISION_OPERATION, OperationState.IN_PROGRESS,
+									null))
+							.then(runInBackground(serviceInstance, DEPROVISION_OPERATION,
+									deleteStoreAndInstance(serviceInstance),
+									this.instanceRepository.save(serviceInstance).then()))
+							.thenReturn(DeleteServiceInstanceResponse.builder()
+								.async(true)
+								.operation(DEPROVISION_OPERATION)
+								.build());
+					}
+					return deleteStoreAndInstance(serviceInstance)
 						.thenReturn(DeleteServiceInstanceResponse.builder().build());
-				}
-				else {
-					return Mono.error(new ServiceInstanceDoesNotExistException(instanceId));
-				}
-			}));
+				}));
+	}
+
+	@Override
+	public Mono<GetLastServiceOperationResponse> getLastOperation(GetLastServiceOperationRequest request) {
+		return Mono.just(request.getServiceInstanceId())
+			.flatMap((instanceId) -> this.instanceRepository.findById(instanceId)
+				.map((serviceInstance) -> GetLastServiceOperationResponse.builder()
+					.operationState((serviceInstance.getOperationState() != null) ? serviceInstance.getOperationState()
+							: OperationState.SUCCEEDED)
+					.description(serviceInstance.getOperationDescription())
+					.build())
+				.switchIfEmpty(Mono.defer(() -> {
+					if (PROVISION_OPERATION.equals(request.getOperation())) {
+						return Mono.error(new ServiceInstanceDoesNotExistException(instanceId));
+					}
+					return Mono.just(GetLastServiceOperationResponse.builder()
+						.operationState(OperationState.SUCCEEDED)
+						.deleteOperation(true)
+						.build());
+				})));
+	}
+
+	/**
+	 * Insert the service instance, so that concurrent identical requests are resolved by
+	 * the database in a single round trip.
+	 * @return {@code true} if the instance was inserted, {@code false} if it already
+	 * existed
+	 */
+	private Mono<Boolean> insertIfAbsent(ServiceInstance serviceInstance) {
+		return this.instanceRepository.insert(serviceInstance)
+			.thenReturn(true)
+			.onErrorResume(DuplicateKeyException.class, (ex) -> Mono.just(false));
+	}
+
+	/**
+	 * Respond to a create request for an instance that already exists. A matching
+	 * asynchronous request for a provision in progress is told to keep polling, any other
+	 * request conflicting with an operation in progress is rejected. An instance whose
+	 * last operation failed is reported as an error until it is deprovisioned.
+	 */
+	private Mono<CreateServiceInstanceResponse> existingInstanceResponse(String instanceId, boolean asyncAccepted) {
+		return this.instanceRepository.findById(instanceId).handle((existing, sink) -> {
+			if (existing.getOperationState() == OperationState.FAILED) {
+				sink.error(new ServiceBrokerException("The last " + existing.getOperation()
+						+ " operation of service instance " + instanceId + " failed: "
+						+ existing.getOperationDescription()));
+			}
+			else if (!existing.isOperationInProgress()) {
+				sink.next(CreateServiceInstanceResponse.builder().instanceExisted(true).build());
+			}
+			else if (asyncAccepted && PROVISION_OPERATION.equals(existing.getOperation())) {
+				sink.next(CreateServiceInstanceResponse.builder()
+					.async(true)
+					.operation(existing.getOperation())
+					.build());
+			}
+			else {
+				sink.error(operationInProgress(existing));
+			}
+		});
+	}
+
+	private ServiceBrokerConcurrencyException operationInProgress(ServiceInstance serviceInstance) {
+		return new ServiceBrokerConcurrencyException("A " + serviceInstance.getOperation()
+				+ " operation is in progress for service instance " + serviceInstance.getInstanceId());
+	}
+
+	/**
+	 * Delete the book store and any remaining bindings concurrently, then the service
+	 * instance. The instance is only deleted once both succeeded, so that a failed
+	 * delete leaves it in place for the platform to retry rather than orphaning its
+	 * book store or bindings.
+	 */
+	private Mono<Void> deleteStoreAndInstance(ServiceInstance serviceInstance) {
+		String instanceId = serviceInstance.getInstanceId();
+		return Mono
+			.whenDelayError(this.storeService.deleteBookStore(instanceId),
+					this.bindingService.deleteServiceInstanceBindings(instanceId))
+			.then(Mono.defer(() -> this.instanceRepository.deleteById(instanceId)));
+	}
+
+	/**
+	 * Queue the work for an operation already recorded as in progress. The work records
+	 * the outcome when it fails. If the work cannot be queued, the rollback restores the
+	 * previous state before the error is returned.
+	 */
+	private Mono<Void> runInBackground(ServiceInstance serviceInstance, String operation, Mono<Void> work,
+			Mono<Void> rollback) {
+		Mono<Void> recordedWork = work.onErrorResume((ex) -> this.instanceRepository
+			.save(serviceInstance.withOperation(operation, OperationState.FAILED, ex.getMessage()))
+			.then());
+		return this.operationExecutor.submit(recordedWork).onErrorResume((ex) -> rollback.then(Mono.error(ex)));
 	}
 
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.servicebroker.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cloud.sample.bookstore.servicebroker.model.ServiceBinding;
+import org.springframework.cloud.sample.bookstore.servicebroker.model.ServiceInstance;
+import org.springframework.cloud.sample.bookstore.servicebroker.repository.ServiceBindingRepository;
+import org.springframework.cloud.sample.bookstore.servicebroker.repository.ServiceInstanceRepository;
+import org.springframework.cloud.sample.bookstore.web.model.User;
+import org.springframework.cloud.sample.bookstore.web.repository.UserRepository;
+import org.springframework.cloud.sample.bookstore.web.security.BookStoreTokenService;
+import org.springframework.cloud.sample.bookstore.web.security.SecurityAuthorities;
+import org.springframework.cloud.sample.bookstore.web.service.UserService;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * Periodically purges bindings and users left behind by service instances that no longer
+ * exist. Bindings and users are streamed in batches, each batch is checked against the
+ * service instances with a single query and its orphans are removed with a single bulk
+ * delete.
+ */
+@Component
+public class OrphanedBindingReconciler implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(OrphanedBindingReconciler.class);
+
+	private static final String URI_KEY = "uri";
+
+	private static final String TOKEN_KEY = "token";
+
+	private final ServiceInstanceRepository instanceRepository;
+
+	private final ServiceBindingRepository bindingRepository;
+
+	private final UserRepository userRepository;
+
+	private final UserService userService;
+
+	private final BookStoreTokenService tokenService;
+
+	private final int batchSize;
+
+	private final Duration interval;
+
+	private volatile Disposable subscription;
+
+	public OrphanedBindingReconciler(ServiceInstanceRepository instanceRepository,
+			ServiceBindingRepository bindingRepository, UserRepository userRepository, UserService userService,
+			BookStoreTokenService tokenService, @Value("${bookstore.reconciliation.batch-size:500}") int batchSize,
+			@Value("${bookstore.reconciliation.interval:1h}") Duration interval) {
+		this.instanceRepository = instanceRepository;
+		this.bindingRepository = bindingRepository;
+		this.userRepository = userRepository;
+		this.userService = userService;
+		this.tokenService = tokenService;
+		this.batchSize = batchSize;
+		this.interval = interval;
+	}
+
+	@Override
+	public void onApplicationEvent(ApplicationReadyEvent event) {
+		this.subscription = Flux.interval(Duration.ZERO, this.interval)
+			.onBackpressureDrop()
+			.concatMap((tick) -> reconcile().onErrorResume((ex) -> {
+				logger.warn("Failed to purge orphaned bindings", ex);
+				return Mono.empty();
+			}))
+			.subscribe();
+	}
+
+	/**
+	 * Purge the bindings and users of service instances that no longer exist.
+	 * @return the number of bindings and users purged
+	 */
+	public Mono<Long> reconcile() {
+		return purgeOrphanedBindings().zipWith(purgeOrphanedUsers(), Long::sum);
+	}
+
+	private Mono<Long> purgeOrphanedBindings() {
+		return this.bindingRepository.findAll()
+			.buffer(this.batchSize)
+			.concatMap(this::purgeOrphanedBindings)
+			.reduce(0L, Long::sum);
+	}
+
+	private Mono<Long> purgeOrphanedBindings(List<ServiceBinding> bindings) {
+		return existingInstanceIds(bindings.stream().map(this::serviceInstanceIdOf)).flatMap((existing) -> {
+			List<ServiceBinding> orphans = bindings.stream()
+				.filter((binding) -> {
+					String instanceId = serviceInstanceIdOf(binding);
+					return instanceId != null && !existing.contains(instanceId);
+				})
+				.toList();
+			if (orphans.isEmpty()) {
+				return Mono.just(0L);
+			}
+			List<String> tokenIds = orphans.stream()
+				.filter(this::hasToken)
+				.map(ServiceBinding::getBindingId)
+				.toList();
+			List<String> bindingIds = orphans.stream().map(ServiceBinding::getBindingId).toList();
+			return Mono
+				.when(this.bindingRepository.deleteAllById(bindingIds),
+						tokenIds.isEmpty() ? Mono.empty() : this.tokenService.revokeTokens(tokenIds))
+				.thenReturn((long) orphans.size());
+		});
+	}
+
+	private Mono<Long> purgeOrphanedUsers() {
+		return this.userRepository.findAll()
+			.buffer(this.batchSize)
+			.concatMap(this::purgeOrphanedUsers)
+			.reduce(0L, Long::sum);
+	}
+
+	private Mono<Long> purgeOrphanedUsers(List<User> users) {
+		return existingInstanceIds(users.stream().flatMap((user) -> bookStoreIdsOf(user).stream()))
+			.flatMap((existing) -> {
+				List<String> orphans = users.stream()
+					.filter((user) -> {
+						List<String> bookStoreIds = bookStoreIdsOf(user);
+						return !bookStoreIds.isEmpty() && bookStoreIds.stream().noneMatch(existing::contains);
+					})
+					.map(User::getUsername)
+					.toList();
+				if (orphans.isEmpty()) {
+					return Mono.just(0L);
+				}
+				return this.userService.deleteUsers(orphans);
+			});
+	}
+
+	private Mono<Set<String>> existingInstanceIds(Stream<String> instanceIds) {
+		Set<String> ids = instanceIds.filter(Objects::nonNull).collect(Collectors.toSet());
+		if (ids.isEmpty()) {
+			return Mono.just(Set.of());
+		}
+		return this.instanceRepository.findAllById(ids).map(ServiceInstance::getInstanceId).collect(Collectors.toSet());
+	}
+
+	/**
+	 * Bindings created before the service instance ID was recorded are resolved from the
+	 * book store URI in their credentials.
+	 */
+	private String serviceInstanceIdOf(ServiceBinding binding) {
+		if (binding.getServiceInstanceId() != null) {
+			return binding.getServiceInstanceId();
+		}
+		if (binding.getCredentials() == null || binding.getCredentials().get(URI_KEY) == null) {
+			return null;
+		}
+		List<String> pathSegments = UriComponentsBuilder
+			.fromUriString(binding.getCredentials().get(URI_KEY).toString())
+			.build()
+			.getPathSegments();
+		return pathSegments.isEmpty() ? null : pathSegments.get(pathSegments.size() - 1);
+	}
+
+	private boolean hasToken(ServiceBinding binding) {
+		return binding.getCredentials() != null && binding.getCredentials().containsKey(TOKEN_KEY);
+	}
+
+	private List<String> bookStoreIdsOf(User user) {
+		if (user.getAuthorities() == null) {
+			return List.of();
+		}
+		return user.getAuthorities()
+			.stream()
+			.filter((authority) -> authority.startsWith(SecurityAuthorities.BOOK_STORE_ID_PREFIX))
+			.map((authority) -> authority.substring(SecurityAuthorities.BOOK_STORE_ID_PREFIX.length()))
+			.toList();
+	}
+
+	@Override
+	public void destroy() {
+		Disposable subscription = this.subscription;
+		if (subscription != null) {
+			subscription.dispose();
+		}
+	}
+
+}
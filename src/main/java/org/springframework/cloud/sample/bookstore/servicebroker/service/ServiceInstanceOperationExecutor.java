@@ -0,0 +1,127 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.servicebroker.service;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cloud.sample.bookstore.servicebroker.repository.ServiceInstanceRepository;
+import org.springframework.cloud.servicebroker.exception.ServiceBrokerException;
+import org.springframework.cloud.servicebroker.model.instance.OperationState;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs asynchronous service instance operations in the background, with a bounded number
+ * of operations in flight and a bounded queue of pending operations.
+ * <p>
+ * Operations are lost when the instance running them stops. Operations that are still in
+ * progress once the operation timeout has passed are therefore marked as failed, on
+ * startup and periodically, so that the platform stops polling them.
+ */
+@Component
+public class ServiceInstanceOperationExecutor implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(ServiceInstanceOperationExecutor.class);
+
+	private final ServiceInstanceRepository instanceRepository;
+
+	private final Duration operationTimeout;
+
+	private final Sinks.Many<Mono<Void>> operations;
+
+	private final Disposable subscription;
+
+	private volatile Disposable staleOperationSubscription;
+
+	public ServiceInstanceOperationExecutor(ServiceInstanceRepository instanceRepository,
+			@Value("${bookstore.provisioning.concurrency:16}") int concurrency,
+			@Value("${bookstore.provisioning.queue-capacity:1024}") int queueCapacity,
+			@Value("${bookstore.provisioning.operation-timeout:1h}") Duration operationTimeout) {
+		this.instanceRepository = instanceRepository;
+		this.operationTimeout = operationTimeout;
+		this.operations = Sinks.many().unicast().onBackpressureBuffer(Queues.<Mono<Void>>get(queueCapacity).get());
+		this.subscription = this.operations.asFlux()
+			.flatMap((operation) -> operation.onErrorResume((ex) -> Mono.empty()), concurrency)
+			.subscribe();
+	}
+
+	@Override
+	public void onApplicationEvent(ApplicationReadyEvent event) {
+		this.staleOperationSubscription = Flux.interval(Duration.ZERO, this.operationTimeout)
+			.onBackpressureDrop()
+			.concatMap((tick) -> failStaleOperations().onErrorResume((ex) -> {
+				logger.warn("Failed to mark stale service instance operations as failed", ex);
+				return Mono.empty();
+			}))
+			.subscribe();
+	}
+
+	/**
+	 * Queue an operation to run in the background. The operation is expected to record
+	 * its own outcome, errors it signals are dropped.
+	 * @param operation the operation
+	 * @return a {@link Mono} that completes once the operation is queued, or errors if the
+	 * queue is full
+	 */
+	public Mono<Void> submit(Mono<Void> operation) {
+		return Mono.fromRunnable(() -> {
+			Sinks.EmitResult result;
+			synchronized (this.operations) {
+				result = this.operations.tryEmitNext(operation);
+			}
+			if (result.isFailure()) {
+				throw new ServiceBrokerException("Too many service instance operations in progress, try again later");
+			}
+		});
+	}
+
+	/**
+	 * Mark the operations that have been in progress for longer than the operation timeout
+	 * as failed.
+	 * @return the number of operations marked as failed
+	 */
+	public Mono<Long> failStaleOperations() {
+		return this.instanceRepository
+			.findByOperationStateAndOperationUpdatedAtBefore(OperationState.IN_PROGRESS,
+					Instant.now().minus(this.operationTimeout))
+			.concatMap((instance) -> this.instanceRepository.save(instance.withOperation(instance.getOperation(),
+					OperationState.FAILED, "The " + instance.getOperation() + " operation did not complete in time")))
+			.count();
+	}
+
+	@Override
+	public void destroy() {
+		this.subscription.dispose();
+		Disposable staleOperationSubscription = this.staleOperationSubscription;
+		if (staleOperationSubscription != null) {
+			staleOperationSubscription.dispose();
+		}
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.config;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.sample.bookstore.web.repository.BookRepository;
+import org.springframework.cloud.sample.bookstore.web.repository.BookStoreRepository;
+import org.springframework.cloud.sample.bookstore.web.service.BookStorage;
+import org.springframework.cloud.sample.bookstore.web.service.CollectionBookStorage;
+import org.springframework.cloud.sample.bookstore.web.service.EmbeddedBookStorage;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class BookStorageConfiguration {
+
+	/**
+	 * Property selecting how books are stored, either {@code embedded} in the book store
+	 * document (the default) or in a separate {@code collection}.
+	 */
+	public static final String BOOK_STORAGE_PROPERTY = "bookstore.book-storage";
+
+	@Bean
+	@ConditionalOnMissingBean(BookStorage.class)
+	@ConditionalOnProperty(name = BOOK_STORAGE_PROPERTY, havingValue = "embedded", matchIfMissing = true)
+	public BookStorage embeddedBookStorage(BookStoreRepository bookStoreRepository) {
+		return new EmbeddedBookStorage(bookStoreRepository);
+	}
+
+	@Configuration
+	@ConditionalOnProperty(name = BOOK_STORAGE_PROPERTY, havingValue = "collection")
+	static class CollectionBookStorageConfiguration implements SmartInitializingSingleton {
+
+		private final BookRepository bookRepository;
+
+		CollectionBookStorageConfiguration(BookRepository bookRepository) {
+			this.bookRepository = bookRepository;
+		}
+
+		@Bean
+		public BookStorage collectionBookStorage(BookStoreRepository bookStoreRepository) {
+			return new CollectionBookStorage(bookStoreRepository, this.bookRepository);
+		}
+
+		/**
+		 * Create the book indexes before the server starts, so that no request is served
+		 * without them and a failure to create them stops the application.
+		 */
+		@Override
+		public void afterSingletonsInstantiated() {
+			this.bookRepository.ensureIndexes().block();
+		}
+
+	}
+
+}
@@ -16,18 +16,24 @@
 
 package org.springframework.cloud.sample.bookstore.web.config;
 
-import org.springframework.cloud.sample.bookstore.web.security.BookStoreIdEvaluator;
+import java.time.Duration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.sample.bookstore.web.resource.BookStoreResourceCache;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.security.config.annotation.method.configuration.EnableReactiveMethodSecurity;
+import org.springframework.util.unit.DataSize;
 
 @Configuration
-@EnableReactiveMethodSecurity
-public class MethodSecurityConfiguration {
+public class BookStoreResourceCacheConfiguration {
 
 	@Bean
-	public BookStoreIdEvaluator bookStoreIdEvaluator() {
-		return new BookStoreIdEvaluator();
+	public BookStoreResourceCache bookStoreResourceCache(ObjectMapper objectMapper,
+			@Value("${bookstore.resource-cache.maximum-size:64MB}") DataSize maximumSize,
+			@Value("${bookstore.resource-cache.time-to-live:1m}") Duration timeToLive) {
+		return new BookStoreResourceCache(objectMapper, maximumSize.toBytes(), timeToLive);
 	}
 
 }
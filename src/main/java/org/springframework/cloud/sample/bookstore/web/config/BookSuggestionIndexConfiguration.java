@@ -0,0 +1,39 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.config;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.sample.bookstore.web.repository.BookStoreRepository;
+import org.springframework.cloud.sample.bookstore.web.service.BookStorage;
+import org.springframework.cloud.sample.bookstore.web.service.BookSuggestionIndex;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+@Configuration
+public class BookSuggestionIndexConfiguration {
+
+	@Bean
+	public BookSuggestionIndex bookSuggestionIndex(BookStoreRepository bookStoreRepository, BookStorage bookStorage,
+			@Value("${bookstore.suggestions.maximum-size:32MB}") DataSize maximumSize,
+			@Value("${bookstore.suggestions.time-to-live:10m}") Duration timeToLive) {
+		return new BookSuggestionIndex(bookStoreRepository, bookStorage, maximumSize.toBytes(), timeToLive);
+	}
+
+}
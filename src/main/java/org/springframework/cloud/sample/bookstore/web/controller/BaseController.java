@@ -21,9 +21,13 @@ import java.util.Map;
 
 import reactor.core.publisher.Mono;
 
+import org.springframework.cloud.sample.bookstore.web.service.BookStoreModifiedException;
+import org.springframework.http.ETag;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.server.ServerWebExchange;
 
 public class BaseController {
 
@@ -33,4 +37,55 @@ public class BaseController {
 			.flatMap((responseBody) -> Mono.just(new ResponseEntity<>(responseBody, HttpStatus.BAD_REQUEST)));
 	}
 
+	@ExceptionHandler(BookStoreModifiedException.class)
+	public Mono<ResponseEntity<Map<String, String>>> bookStoreModified(BookStoreModifiedException e) {
+		return Mono.just(Collections.singletonMap("errorMessage", e.getMessage()))
+			.flatMap((responseBody) -> Mono.just(new ResponseEntity<>(responseBody, HttpStatus.PRECONDITION_FAILED)));
+	}
+
+	/**
+	 * Return the strong entity tag of a book store version.
+	 */
+	protected static String eTag(long version) {
+		return "\"" + version + "\"";
+	}
+
+	/**
+	 * Answer a request carrying {@code If-None-Match} with {@code 304 Not Modified} if the
+	 * book store version still matches, looking up only the version.
+	 * @param exchange the current exchange
+	 * @param version the current version of the book store, only subscribed to if needed
+	 * @return the {@code 304 Not Modified} response, or empty if the full response has to
+	 * be sent
+	 */
+	protected static <T> Mono<ResponseEntity<T>> notModified(ServerWebExchange exchange, Mono<Long> version) {
+		if (!exchange.getRequest().getHeaders().containsKey(HttpHeaders.IF_NONE_MATCH)) {
+			return Mono.empty();
+		}
+		return version
+			.map(BaseController::eTag)
+			.filter(exchange::checkNotModified)
+			.map((eTag) -> ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).<T>build());
+	}
+
+	/**
+	 * Return the book store version required by an {@code If-Match} header, or
+	 * {@code null} if there is no header or it matches any version. A header without a
+	 * strong book store entity tag requires a version that never exists.
+	 */
+	protected static Long expectedVersion(String ifMatch) {
+		if (ifMatch == null) {
+			return null;
+		}
+		for (ETag eTag : ETag.parse(ifMatch)) {
+			if (eTag.isWildcard()) {
+				return null;
+			}
+			if (!eTag.weak() && eTag.tag().matches("\\d{1,18}")) {
+				return Long.parseLong(eTag.tag());
+			}
+		}
+		return -1L;
+	}
+
 }
@@ -16,53 +16,115 @@
 
 package org.springframework.cloud.sample.bookstore.web.controller;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.cloud.sample.bookstore.web.model.BookSearch;
+import org.springframework.cloud.sample.bookstore.web.model.BookSuggestions;
 import org.springframework.cloud.sample.bookstore.web.resource.BookResource;
 import org.springframework.cloud.sample.bookstore.web.resource.BookResourceAssembler;
+import org.springframework.cloud.sample.bookstore.web.resource.BookStoreResource;
+import org.springframework.cloud.sample.bookstore.web.resource.BookStoreResourceAssembler;
 import org.springframework.cloud.sample.bookstore.web.service.BookStoreService;
+import org.springframework.cloud.sample.bookstore.web.service.BookSuggestionIndex;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
 
 @RestController
 @RequestMapping("/bookstores/{bookStoreId}/books")
 public class BookController extends BaseController {
 
+	private static final String DEFAULT_PAGE_SIZE = "100";
+
+	private static final String DEFAULT_SUGGESTIONS = "10";
+
 	private final BookStoreService bookStoreService;
 
-	public BookController(BookStoreService bookStoreService) {
+	private final BookSuggestionIndex suggestionIndex;
+
+	public BookController(BookStoreService bookStoreService, BookSuggestionIndex suggestionIndex) {
 		this.bookStoreService = bookStoreService;
+		this.suggestionIndex = suggestionIndex;
 	}
 
 	@PutMapping
-	@PreAuthorize("hasRole('ROLE_FULL_ACCESS') and @bookStoreIdEvaluator.canAccessBookstore(authentication, #bookStoreId)")
-	public Mono<ResponseEntity<BookResource>> addBook(@PathVariable String bookStoreId, @RequestBody Book book) {
-		return this.bookStoreService.putBookInStore(bookStoreId, book)
+	public Mono<ResponseEntity<BookResource>> addBook(@PathVariable String bookStoreId, @RequestBody Book book,
+			@RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+		return this.bookStoreService.putBookInStore(bookStoreId, book, expectedVersion(ifMatch))
 			.flatMap((savedBook) -> createResponse(bookStoreId, savedBook, HttpStatus.CREATED));
 	}
 
+	@GetMapping
+	public Mono<ResponseEntity<BookStoreResource>> searchBooks(@PathVariable String bookStoreId,
+			@RequestParam(required = false) String author, @RequestParam(required = false) String title,
+			@RequestParam(required = false) String isbn, @RequestParam(defaultValue = DEFAULT_PAGE_SIZE) int limit,
+			@RequestParam(required = false) String after) {
+		BookSearch search = new BookSearch(author, title, isbn);
+		return this.bookStoreService.searchBooksInStore(bookStoreId, search, after, limit)
+			.collectList()
+			.flatMap((books) -> new BookStoreResourceAssembler().toModel(bookStoreId, search, books, limit, after))
+			.map(ResponseEntity::ok);
+	}
+
+	@GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public Flux<BookResource> streamBookSearch(@PathVariable String bookStoreId,
+			@RequestParam(required = false) String author, @RequestParam(required = false) String title,
+			@RequestParam(required = false) String isbn) {
+		return new BookResourceAssembler().toModels(
+				this.bookStoreService.streamBookSearch(bookStoreId, new BookSearch(author, title, isbn)), bookStoreId);
+	}
+
+	@GetMapping("/suggest")
+	public Mono<ResponseEntity<BookSuggestions>> suggestBooks(@PathVariable String bookStoreId,
+			@RequestParam("q") String prefix, @RequestParam(defaultValue = DEFAULT_SUGGESTIONS) int limit) {
+		return this.suggestionIndex.suggest(bookStoreId, prefix, limit).map(ResponseEntity::ok);
+	}
+
+	@PostMapping(consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+	public Mono<ResponseEntity<Map<String, List<String>>>> importBooks(@PathVariable String bookStoreId,
+			@RequestBody Flux<Book> books) {
+		return this.bookStoreService.putBooksInStore(bookStoreId, books)
+			.map(Book::getId)
+			.collectList()
+			.flatMap((ids) -> Mono
+				.just(new ResponseEntity<>(Collections.singletonMap("ids", ids), HttpStatus.CREATED)));
+	}
+
 	@GetMapping("/{bookId}")
-	@PreAuthorize("hasAnyRole('ROLE_FULL_ACCESS','ROLE_READ_ONLY') and @bookStoreIdEvaluator.canAccessBookstore"
-			+ "(authentication, #bookStoreId)")
-	public Mono<ResponseEntity<BookResource>> getBook(@PathVariable String bookStoreId, @PathVariable String bookId) {
-		return this.bookStoreService.getBookFromStore(bookStoreId, bookId)
-			.flatMap((book) -> createResponse(bookStoreId, book, HttpStatus.OK));
+	public Mono<ResponseEntity<BookResource>> getBook(@PathVariable String bookStoreId, @PathVariable String bookId,
+			ServerWebExchange exchange) {
+		return this.bookStoreService.getBookWithVersion(bookStoreId, bookId).flatMap((store) -> {
+			Book book = store.getBooks().get(0);
+			long version = store.getVersion();
+			return BaseController.<BookResource>notModified(exchange, Mono.just(version))
+				.switchIfEmpty(Mono.defer(() -> new BookResourceAssembler().toModel(book, bookStoreId)
+					.map((bookResource) -> ResponseEntity.ok().eTag(eTag(version)).body(bookResource))));
+		});
 	}
 
 	@DeleteMapping("/{bookId}")
-	@PreAuthorize("hasRole('ROLE_FULL_ACCESS') and @bookStoreIdEvaluator.canAccessBookstore(authentication, #bookStoreId)")
 	public Mono<ResponseEntity<BookResource>> deleteBook(@PathVariable String bookStoreId,
-			@PathVariable String bookId) {
-		return this.bookStoreService.removeBookFromStore(bookStoreId, bookId)
+			@PathVariable String bookId,
+			@RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+		return this.bookStoreService.removeBookFromStore(bookStoreId, bookId, expectedVersion(ifMatch))
 			.flatMap((book) -> createResponse(bookStoreId, book, HttpStatus.OK));
 	}
 
@@ -18,20 +18,28 @@ package org.springframework.cloud.sample.bookstore.web.controller;
 
 import java.util.Map;
 
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import org.springframework.cloud.sample.bookstore.web.model.BookStore;
+import org.springframework.cloud.sample.bookstore.web.resource.BookResource;
+import org.springframework.cloud.sample.bookstore.web.resource.BookResourceAssembler;
 import org.springframework.cloud.sample.bookstore.web.resource.BookStoreResource;
 import org.springframework.cloud.sample.bookstore.web.resource.BookStoreResourceAssembler;
+import org.springframework.cloud.sample.bookstore.web.resource.BookStoreResourceCache;
+import org.springframework.cloud.sample.bookstore.web.resource.CachedBookStoreResource;
 import org.springframework.cloud.sample.bookstore.web.service.BookStoreService;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
 
 @RestController
 @RequestMapping("/bookstores")
@@ -39,15 +47,52 @@ public class BookStoreController extends BaseController {
 
 	private final BookStoreService bookStoreService;
 
-	public BookStoreController(BookStoreService bookStoreService) {
+	private final BookStoreResourceCache resourceCache;
+
+	public BookStoreController(BookStoreService bookStoreService, BookStoreResourceCache resourceCache) {
 		this.bookStoreService = bookStoreService;
+		this.resourceCache = resourceCache;
+	}
+
+	/**
+	 * Serve the cached JSON representation of a book store. Only plain JSON is cached;
+	 * other media types are negotiated by {@link #getBooksAs}.
+	 */
+	@GetMapping(value = "/{bookStoreId}", produces = MediaType.APPLICATION_JSON_VALUE)
+	public Mono<ResponseEntity<byte[]>> getBooks(@PathVariable String bookStoreId, ServerWebExchange exchange) {
+		String baseUri = baseUri(exchange.getRequest());
+		return this.resourceCache.getIfPresent(bookStoreId, baseUri)
+			.map((resource) -> createResponse(resource, exchange))
+			.switchIfEmpty(Mono.defer(() -> BaseController.<byte[]>notModified(exchange,
+					this.bookStoreService.getBookStoreVersion(bookStoreId))))
+			.switchIfEmpty(Mono.defer(() -> this.resourceCache
+				.get(bookStoreId, baseUri, this.bookStoreService.getBookStore(bookStoreId))
+				.map((resource) -> createResponse(resource, exchange))));
 	}
 
 	@GetMapping("/{bookStoreId}")
-	@PreAuthorize("hasAnyRole('ROLE_FULL_ACCESS','ROLE_READ_ONLY') and @bookStoreIdEvaluator.canAccessBookstore"
-			+ "(authentication, #bookStoreId)")
-	public Mono<ResponseEntity<BookStoreResource>> getBooks(@PathVariable String bookStoreId) {
-		return this.bookStoreService.getBookStore(bookStoreId).flatMap(this::createResponse);
+	public Mono<ResponseEntity<BookStoreResource>> getBooksAs(@PathVariable String bookStoreId,
+			ServerWebExchange exchange) {
+		return BaseController.<BookStoreResource>notModified(exchange,
+				this.bookStoreService.getBookStoreVersion(bookStoreId))
+			.switchIfEmpty(Mono.defer(() -> this.bookStoreService.getBookStore(bookStoreId)
+				.flatMap((bookStore) -> new BookStoreResourceAssembler().toModel(bookStore)
+					.map((resource) -> ResponseEntity.ok().eTag(eTag(bookStore.getVersion())).body(resource)))));
+	}
+
+	@GetMapping(value = "/{bookStoreId}", params = "limit")
+	public Mono<ResponseEntity<BookStoreResource>> getBooksPage(@PathVariable String bookStoreId,
+			@RequestParam int limit, @RequestParam(required = false) String after) {
+		return this.bookStoreService.getBooksFromStore(bookStoreId, after, limit)
+			.collectList()
+			.flatMap((books) -> new BookStoreResourceAssembler().toModel(bookStoreId, books, limit, after))
+			.flatMap((bookStoreResource) -> Mono.just(new ResponseEntity<>(bookStoreResource, HttpStatus.OK)));
+	}
+
+	@GetMapping(value = "/{bookStoreId}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public Flux<BookResource> streamBooks(@PathVariable String bookStoreId) {
+		return new BookResourceAssembler().toModels(this.bookStoreService.streamBooksFromStore(bookStoreId),
+				bookStoreId);
 	}
 
 	@ExceptionHandler(IllegalArgumentException.class)
@@ -55,9 +100,20 @@ public class BookStoreController extends BaseController {
 		return super.badBookStoreId(e);
 	}
 
-	private Mono<ResponseEntity<BookStoreResource>> createResponse(BookStore bookStore) {
-		return new BookStoreResourceAssembler().toModel(bookStore)
-			.flatMap((bookStoreResource) -> Mono.just(new ResponseEntity<>(bookStoreResource, HttpStatus.OK)));
+	private ResponseEntity<byte[]> createResponse(CachedBookStoreResource resource, ServerWebExchange exchange) {
+		String eTag = eTag(resource.getVersion());
+		if (exchange.checkNotModified(eTag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+		}
+		return ResponseEntity.ok().eTag(eTag).contentType(MediaType.APPLICATION_JSON).body(resource.getBody());
+	}
+
+	private static String baseUri(ServerHttpRequest request) {
+		return UriComponentsBuilder.fromUri(request.getURI())
+			.replacePath(request.getPath().contextPath().value())
+			.replaceQuery(null)
+			.build()
+			.toUriString();
 	}
 
 }
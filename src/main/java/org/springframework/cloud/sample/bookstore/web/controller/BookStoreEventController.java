@@ -0,0 +1,107 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.controller;
+
+import java.time.Duration;
+import java.util.Collections;
+
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.sample.bookstore.web.resource.BookResourceAssembler;
+import org.springframework.cloud.sample.bookstore.web.service.BookStoreChangedEvent;
+import org.springframework.cloud.sample.bookstore.web.service.BookStoreEventBroker;
+import org.springframework.cloud.sample.bookstore.web.service.BookStoreService;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Streams the books added to and removed from a book store as server-sent events, so
+ * clients can mirror a store without polling it. The ID of each book event is the
+ * version of the book store after the change, the version its entity tag quotes, so a
+ * client skips the changes its copy already holds. A {@code resync} event tells a
+ * client that fell too far behind to read the book store again; the stream ends after it
+ * and after a {@code book-store-deleted} event.
+ */
+@RestController
+@RequestMapping("/bookstores/{bookStoreId}/events")
+public class BookStoreEventController extends BaseController {
+
+	private static final String BOOK_ADDED = "book-added";
+
+	private static final String BOOK_REMOVED = "book-removed";
+
+	private static final String BOOK_STORE_DELETED = "book-store-deleted";
+
+	private static final String RESYNC = "resync";
+
+	private final BookStoreService bookStoreService;
+
+	private final BookStoreEventBroker eventBroker;
+
+	private final Duration heartbeatInterval;
+
+	public BookStoreEventController(BookStoreService bookStoreService, BookStoreEventBroker eventBroker,
+			@Value("${bookstore.events.heartbeat-interval:30s}") Duration heartbeatInterval) {
+		this.bookStoreService = bookStoreService;
+		this.eventBroker = eventBroker;
+		this.heartbeatInterval = heartbeatInterval;
+	}
+
+	@GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public Flux<ServerSentEvent<Object>> streamEvents(@PathVariable String bookStoreId) {
+		Flux<ServerSentEvent<Object>> events = this.bookStoreService.getBookStoreVersion(bookStoreId)
+			.thenMany(this.eventBroker.subscribe(bookStoreId))
+			.concatMap((event) -> toServerSentEvents(bookStoreId, event))
+			.onErrorResume(Exceptions::isOverflow, (ex) -> Flux.just(storeEvent(RESYNC, bookStoreId)));
+		// comments keep idle connections from being closed by proxies
+		return events.publish((shared) -> Flux.merge(shared, Flux.interval(this.heartbeatInterval)
+			.map((tick) -> ServerSentEvent.builder().comment("heartbeat").build())
+			.takeUntilOther(shared.then())));
+	}
+
+	private Flux<ServerSentEvent<Object>> toServerSentEvents(String bookStoreId, BookStoreChangedEvent event) {
+		return switch (event.getChangeType()) {
+			case BOOKS_ADDED -> bookEvents(BOOK_ADDED, bookStoreId, event);
+			case BOOKS_REMOVED -> bookEvents(BOOK_REMOVED, bookStoreId, event);
+			case BOOK_STORE_DELETED -> Flux.just(storeEvent(BOOK_STORE_DELETED, bookStoreId));
+		};
+	}
+
+	private Flux<ServerSentEvent<Object>> bookEvents(String eventType, String bookStoreId,
+			BookStoreChangedEvent event) {
+		return new BookResourceAssembler().toModels(Flux.fromIterable(event.getBooks()), bookStoreId)
+			.map((bookResource) -> ServerSentEvent.builder()
+				.id(String.valueOf(event.getVersion()))
+				.event(eventType)
+				.data(bookResource)
+				.build());
+	}
+
+	private static ServerSentEvent<Object> storeEvent(String eventType, String bookStoreId) {
+		return ServerSentEvent.builder()
+			.event(eventType)
+			.data(Collections.singletonMap("bookStoreId", bookStoreId))
+			.build();
+	}
+
+}
@@ -25,6 +25,8 @@ public class Book {
 	@Id
 	private String id;
 
+	private String bookStoreId;
+
 	private String isbn;
 
 	private String title;
@@ -34,6 +36,7 @@ public class Book {
 	@SuppressWarnings("unused")
 	private Book() {
 		this.id = null;
+		this.bookStoreId = null;
 		this.isbn = null;
 		this.title = null;
 		this.author = null;
@@ -41,13 +44,15 @@ public class Book {
 
 	public Book(String isbn, String title, String author) {
 		this.id = null;
+		this.bookStoreId = null;
 		this.isbn = isbn;
 		this.title = title;
 		this.author = author;
 	}
 
-	public Book(String id, Book book) {
+	public Book(String id, String bookStoreId, Book book) {
 		this.id = id;
+		this.bookStoreId = bookStoreId;
 		this.isbn = book.getIsbn();
 		this.title = book.getTitle();
 		this.author = book.getAuthor();
@@ -57,6 +62,10 @@ public class Book {
 		return this.id;
 	}
 
+	public String getBookStoreId() {
+		return this.bookStoreId;
+	}
+
 	public String getIsbn() {
 		return this.isbn;
 	}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.model;
+
+import java.util.regex.Pattern;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Criteria for searching the books of a book store. The author and ISBN must match
+ * exactly, the title must contain the given phrase as whole words, ignoring case, so
+ * {@code "spring boot"} matches "Learning Spring Boot" but {@code "boo"} does not. This
+ * is the phrase match of the text index that serves title searches in collection book
+ * storage, which in addition never matches a phrase made only of stop words such as
+ * {@code "the"}. Criteria left {@code null} or blank match every book.
+ */
+public class BookSearch {
+
+	private final String author;
+
+	private final String title;
+
+	private final String isbn;
+
+	private final Pattern titlePattern;
+
+	public BookSearch(String author, String title, String isbn) {
+		this.author = criterion(author);
+		this.title = criterion(title);
+		this.isbn = criterion(isbn);
+		this.titlePattern = (this.title != null)
+				? Pattern.compile("(?<!\\w)" + Pattern.quote(this.title) + "(?!\\w)", Pattern.CASE_INSENSITIVE) : null;
+	}
+
+	public String getAuthor() {
+		return this.author;
+	}
+
+	public String getTitle() {
+		return this.title;
+	}
+
+	public String getIsbn() {
+		return this.isbn;
+	}
+
+	/**
+	 * Return the pattern matching titles that contain the title phrase as whole words.
+	 * @return the title pattern, or {@code null} if titles are not searched
+	 */
+	public Pattern getTitlePattern() {
+		return this.titlePattern;
+	}
+
+	public boolean matches(Book book) {
+		return (this.author == null || this.author.equals(book.getAuthor()))
+				&& (this.isbn == null || this.isbn.equals(book.getIsbn()))
+				&& (this.titlePattern == null
+						|| (book.getTitle() != null && this.titlePattern.matcher(book.getTitle()).find()));
+	}
+
+	private static String criterion(String value) {
+		return StringUtils.hasText(value) ? value : null;
+	}
+
+}
@@ -31,6 +31,10 @@ public class BookStore {
 
 	private List<Book> books = new ArrayList<>();
 
+	private boolean deleted;
+
+	private long version;
+
 	@SuppressWarnings("unused")
 	private BookStore() {
 		this.id = null;
@@ -40,10 +44,34 @@ public class BookStore {
 		this.id = id;
 	}
 
+	public BookStore(String id, List<Book> books, boolean deleted) {
+		this(id, books, deleted, 0);
+	}
+
+	public BookStore(String id, List<Book> books, boolean deleted, long version) {
+		this.id = id;
+		this.books = new ArrayList<>(books);
+		this.deleted = deleted;
+		this.version = version;
+	}
+
 	public String getId() {
 		return this.id;
 	}
 
+	public boolean isDeleted() {
+		return this.deleted;
+	}
+
+	/**
+	 * Return the version of the book store, incremented whenever a book is added or
+	 * removed.
+	 * @return the version
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+
 	public List<Book> getBooks() {
 		return this.books;
 	}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.model;
+
+import java.time.Instant;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Document
+public class RevokedToken {
+
+	@Id
+	private String tokenId;
+
+	private Instant expiresAt;
+
+	@SuppressWarnings("unused")
+	private RevokedToken() {
+		this.tokenId = null;
+		this.expiresAt = null;
+	}
+
+	public RevokedToken(String tokenId, Instant expiresAt) {
+		this.tokenId = tokenId;
+		this.expiresAt = expiresAt;
+	}
+
+	public String getTokenId() {
+		return this.tokenId;
+	}
+
+	/**
+	 * Return when every token with this ID has expired, so that the revocation no longer
+	 * needs to be kept.
+	 * @return the expiry time, or {@code null} for revocations recorded before tokens
+	 * expired
+	 */
+	public Instant getExpiresAt() {
+		return this.expiresAt;
+	}
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.repository;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+
+public interface BookRepository extends ReactiveCrudRepository<Book, String>, BookRepositoryCustom {
+
+	Flux<Book> findByBookStoreId(String bookStoreId);
+
+	Flux<Book> findByBookStoreIdOrderByIdAsc(String bookStoreId, Limit limit);
+
+	Flux<Book> findByBookStoreIdAndIdGreaterThanOrderByIdAsc(String bookStoreId, String id, Limit limit);
+
+	Mono<Book> findByIdAndBookStoreId(String id, String bookStoreId);
+
+	Mono<Boolean> existsByIdAndBookStoreId(String id, String bookStoreId);
+
+	Mono<Book> deleteByIdAndBookStoreId(String id, String bookStoreId);
+
+	Mono<Long> deleteByBookStoreId(String bookStoreId);
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.repository;
+
+import java.util.List;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.cloud.sample.bookstore.web.model.BookSearch;
+
+public interface BookRepositoryCustom {
+
+	Flux<Book> insertBooks(List<Book> books);
+
+	Mono<Long> deleteBooks(String bookStoreId, int limit);
+
+	/**
+	 * Find the books of a store matching a search, in book ID order.
+	 * @param bookStoreId the book store ID
+	 * @param search the search criteria
+	 * @param afterBookId the ID of the last book of the previous page, or {@code null}
+	 * @param limit the maximum number of books to return, or {@code 0} for no limit
+	 * @return the matching books
+	 */
+	Flux<Book> searchBooks(String bookStoreId, BookSearch search, String afterBookId, int limit);
+
+	/**
+	 * Create the indexes that paging and searching the books of a store rely on.
+	 * @return completes once the indexes exist
+	 */
+	Mono<Void> ensureIndexes();
+
+}
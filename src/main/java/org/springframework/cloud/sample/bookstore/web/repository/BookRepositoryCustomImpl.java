@@ -0,0 +1,117 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.repository;
+
+import java.util.List;
+
+import com.mongodb.client.result.DeleteResult;
+import org.bson.Document;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.cloud.sample.bookstore.web.model.BookSearch;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.index.CompoundIndexDefinition;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.ReactiveIndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+
+/**
+ * Inserts books with pre-assigned IDs as a single bulk write, where {@code saveAll}
+ * would upsert them one by one, and deletes the books of a store in bounded chunks.
+ * Searches are served by compound indexes led by the book store ID, titles through a text
+ * index that is also scoped to the book store.
+ */
+class BookRepositoryCustomImpl implements BookRepositoryCustom {
+
+	private static final String BOOK_STORE_ID = "bookStoreId";
+
+	private final ReactiveMongoOperations mongoOperations;
+
+	BookRepositoryCustomImpl(ReactiveMongoOperations mongoOperations) {
+		this.mongoOperations = mongoOperations;
+	}
+
+	@Override
+	public Flux<Book> insertBooks(List<Book> books) {
+		return this.mongoOperations.insertAll(books);
+	}
+
+	@Override
+	public Mono<Long> deleteBooks(String bookStoreId, int limit) {
+		Query query = Query.query(Criteria.where(BOOK_STORE_ID).is(bookStoreId)).limit(limit);
+		query.fields().include("_id");
+		return this.mongoOperations.find(query, Book.class).map(Book::getId).collectList().flatMap((bookIds) -> {
+			if (bookIds.isEmpty()) {
+				return Mono.just(0L);
+			}
+			return this.mongoOperations.remove(Query.query(Criteria.where("_id").in(bookIds)), Book.class)
+				.map(DeleteResult::getDeletedCount);
+		});
+	}
+
+	@Override
+	public Flux<Book> searchBooks(String bookStoreId, BookSearch search, String afterBookId, int limit) {
+		Criteria criteria = Criteria.where(BOOK_STORE_ID).is(bookStoreId);
+		if (search.getAuthor() != null) {
+			criteria.and("author").is(search.getAuthor());
+		}
+		if (search.getIsbn() != null) {
+			criteria.and("isbn").is(search.getIsbn());
+		}
+		if (afterBookId != null) {
+			criteria.and("_id").gt(afterBookId);
+		}
+		if (search.getTitle() != null) {
+			// the text index finds the candidates, the pattern keeps whole-word phrase matches
+			criteria.and("title").regex(search.getTitlePattern());
+		}
+		Query query = (search.getTitle() != null)
+				? TextQuery.queryText(TextCriteria.forDefaultLanguage().matchingPhrase(search.getTitle()))
+					.addCriteria(criteria)
+				: Query.query(criteria);
+		return this.mongoOperations.find(query.with(Sort.by(Sort.Direction.ASC, "_id")).limit(limit), Book.class);
+	}
+
+	@Override
+	public Mono<Void> ensureIndexes() {
+		ReactiveIndexOperations indexOps = this.mongoOperations.indexOps(Book.class);
+		Index titleIndex = new CompoundIndexDefinition(new Document(BOOK_STORE_ID, 1).append("title", "text"));
+		return Flux
+			.concat(indexOps.ensureIndex(bookStoreIndex()), indexOps.ensureIndex(bookStoreIndex("author")),
+					indexOps.ensureIndex(bookStoreIndex("isbn")), indexOps.ensureIndex(titleIndex))
+			.then();
+	}
+
+	/**
+	 * Return an index on the book store ID and the given fields, ending with the book ID
+	 * so that matching books are paged in book ID order straight from the index.
+	 */
+	private static Index bookStoreIndex(String... fields) {
+		Index index = new Index().on(BOOK_STORE_ID, Sort.Direction.ASC);
+		for (String field : fields) {
+			index.on(field, Sort.Direction.ASC);
+		}
+		return index.on("_id", Sort.Direction.ASC);
+	}
+
+}
@@ -16,9 +16,26 @@
 
 package org.springframework.cloud.sample.bookstore.web.repository;
 
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
 import org.springframework.cloud.sample.bookstore.web.model.BookStore;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 
-public interface BookStoreRepository extends ReactiveCrudRepository<BookStore, String> {
+public interface BookStoreRepository extends ReactiveCrudRepository<BookStore, String>, BookStoreRepositoryCustom {
+
+	@Query(value = "{ '_id': ?0, 'books._id': ?1, 'deleted': { '$ne': true } }",
+			fields = "{ 'books': { '$elemMatch': { '_id': ?1 } }, 'version': 1 }")
+	Mono<BookStore> findByIdWithBook(String storeId, String bookId);
+
+	@Query(value = "{ '_id': ?0, 'deleted': { '$ne': true } }", exists = true)
+	Mono<Boolean> existsActiveById(String storeId);
+
+	@Query(value = "{ '_id': ?0, 'deleted': { '$ne': true } }", fields = "{ 'version': 1 }")
+	Mono<BookStore> findVersionById(String storeId);
+
+	@Query(value = "{ 'deleted': true }", fields = "{ '_id': 1 }")
+	Flux<BookStore> findDeleted();
 
 }
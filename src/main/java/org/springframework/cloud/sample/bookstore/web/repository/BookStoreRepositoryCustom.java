@@ -0,0 +1,123 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.repository;
+
+import java.time.Instant;
+import java.util.List;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.cloud.sample.bookstore.web.model.BookSearch;
+import org.springframework.cloud.sample.bookstore.web.model.BookStore;
+
+/**
+ * Book writes return the book store holding only the books written, together with the
+ * version the update gave the book store.
+ */
+public interface BookStoreRepositoryCustom {
+
+	Mono<BookStore> pushBook(String storeId, Book book);
+
+	/**
+	 * Add a book only if the book store still has the expected version, checking the
+	 * version and writing the book in a single update.
+	 * @param storeId the book store ID
+	 * @param book the book to add
+	 * @param expectedVersion the version the book store must have
+	 * @return the book store holding only the added book, or empty if the book store was
+	 * not found with the expected version
+	 */
+	Mono<BookStore> pushBook(String storeId, Book book, long expectedVersion);
+
+	Mono<BookStore> pushBooks(String storeId, List<Book> books);
+
+	Mono<BookStore> pullBook(String storeId, String bookId);
+
+	/**
+	 * Remove a book only if the book store still has the expected version, checking the
+	 * version and removing the book in a single update. The version is left unchanged if
+	 * the book does not exist.
+	 * @param storeId the book store ID
+	 * @param bookId the ID of the book to remove
+	 * @param expectedVersion the version the book store must have
+	 * @return the book store holding only the removed book, or empty if the book store
+	 * was not found with the expected version or does not hold the book
+	 */
+	Mono<BookStore> pullBook(String storeId, String bookId, long expectedVersion);
+
+	/**
+	 * Find a page of the books of a store, in book ID order. The embedded books are
+	 * unwound and sorted for every page, so each page takes time proportional to the size
+	 * of the store; the sort may spill to disk rather than fail on very large stores.
+	 * @param storeId the book store ID
+	 * @param afterBookId the ID of the last book of the previous page, or {@code null}
+	 * @param limit the maximum number of books to return
+	 * @return the books
+	 */
+	Flux<Book> findBooks(String storeId, String afterBookId, int limit);
+
+	/**
+	 * Stream all the books of a store, in the order they were added. The server reads the
+	 * whole book store document to unwind its books.
+	 * @param storeId the book store ID
+	 * @return the books
+	 */
+	Flux<Book> streamBooks(String storeId);
+
+	/**
+	 * Find the books of a store matching a search, in book ID order.
+	 * @param storeId the book store ID
+	 * @param search the search criteria
+	 * @param afterBookId the ID of the last book of the previous page, or {@code null}
+	 * @param limit the maximum number of books to return, or {@code 0} for no limit
+	 * @return the matching books
+	 */
+	Flux<Book> searchBooks(String storeId, BookSearch search, String afterBookId, int limit);
+
+	Mono<Boolean> markDeleted(String storeId);
+
+	/**
+	 * Claim a book store marked as deleted for purging, so that of several purgers only
+	 * one purges it. A purger renews its claim by claiming the book store again, and a
+	 * claim of another purger is only taken over once it is stale.
+	 * @param storeId the book store ID
+	 * @param purgerId the ID of the claiming purger
+	 * @param claimedAt the time of the claim
+	 * @param staleBefore the time before which claims of other purgers are stale
+	 * @return whether the book store was claimed
+	 */
+	Mono<Boolean> claimForPurge(String storeId, String purgerId, Instant claimedAt, Instant staleBefore);
+
+	/**
+	 * Increment the version of a book store that is not marked as deleted.
+	 * @param storeId the book store ID
+	 * @return the incremented version, or empty if the book store was not found
+	 */
+	Mono<Long> incrementVersion(String storeId);
+
+	/**
+	 * Increment the version of a book store only if it still has the expected version, so
+	 * that of several writers holding the same version only one succeeds.
+	 * @param storeId the book store ID
+	 * @param expectedVersion the version the book store must have
+	 * @return whether the book store was found with the expected version
+	 */
+	Mono<Boolean> incrementVersion(String storeId, long expectedVersion);
+
+}
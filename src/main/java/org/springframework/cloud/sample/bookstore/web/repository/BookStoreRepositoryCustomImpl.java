@@ -0,0 +1,208 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.repository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.Document;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.cloud.sample.bookstore.web.model.BookSearch;
+import org.springframework.cloud.sample.bookstore.web.model.BookStore;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+/**
+ * Adds and removes embedded books with single atomic {@code $push} and {@code $pull}
+ * updates rather than reading and re-saving the whole book store document, and reads
+ * them through an {@code $unwind} aggregation so they can be paged and streamed. The
+ * version of the book store is incremented by the same update that adds or removes books,
+ * and conditional updates match the expected version in that update's filter.
+ * Book stores marked as deleted are never matched.
+ */
+class BookStoreRepositoryCustomImpl implements BookStoreRepositoryCustom {
+
+	private static final String BOOKS = "books";
+
+	private static final String BOOK_ID = BOOKS + "._id";
+
+	private static final String DELETED = "deleted";
+
+	private static final String VERSION = "version";
+
+	private static final String PURGING_BY = "purgingBy";
+
+	private static final String PURGE_CLAIMED_AT = "purgeClaimedAt";
+
+	private final ReactiveMongoOperations mongoOperations;
+
+	BookStoreRepositoryCustomImpl(ReactiveMongoOperations mongoOperations) {
+		this.mongoOperations = mongoOperations;
+	}
+
+	@Override
+	public Mono<BookStore> pushBook(String storeId, Book book) {
+		return pushBooks(Query.query(activeStore(storeId)), List.of(book));
+	}
+
+	@Override
+	public Mono<BookStore> pushBook(String storeId, Book book, long expectedVersion) {
+		return pushBooks(Query.query(activeStore(storeId, expectedVersion)), List.of(book));
+	}
+
+	@Override
+	public Mono<BookStore> pushBooks(String storeId, List<Book> books) {
+		return pushBooks(Query.query(activeStore(storeId)), books);
+	}
+
+	@Override
+	public Mono<BookStore> pullBook(String storeId, String bookId) {
+		return pullBook(Query.query(activeStore(storeId).and(BOOK_ID).is(bookId)), bookId);
+	}
+
+	@Override
+	public Mono<BookStore> pullBook(String storeId, String bookId, long expectedVersion) {
+		Criteria criteria = new Criteria().andOperator(activeStore(storeId, expectedVersion),
+				Criteria.where(BOOK_ID).is(bookId));
+		return pullBook(Query.query(criteria), bookId);
+	}
+
+	@Override
+	public Flux<Book> findBooks(String storeId, String afterBookId, int limit) {
+		List<AggregationOperation> operations = new ArrayList<>();
+		operations.add(Aggregation.match(activeStore(storeId)));
+		operations.add(Aggregation.unwind(BOOKS));
+		if (afterBookId != null) {
+			operations.add(Aggregation.match(Criteria.where(BOOK_ID).gt(afterBookId)));
+		}
+		operations.add(Aggregation.sort(Sort.Direction.ASC, BOOK_ID));
+		operations.add(Aggregation.limit(limit));
+		operations.add(Aggregation.replaceRoot(BOOKS));
+		Aggregation aggregation = Aggregation.newAggregation(operations)
+			.withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+		return this.mongoOperations.aggregate(aggregation, BookStore.class, Book.class);
+	}
+
+	@Override
+	public Flux<Book> streamBooks(String storeId) {
+		return this.mongoOperations.aggregate(Aggregation.newAggregation(
+				Aggregation.match(activeStore(storeId)), Aggregation.unwind(BOOKS),
+				Aggregation.replaceRoot(BOOKS)), BookStore.class, Book.class);
+	}
+
+	@Override
+	public Flux<Book> searchBooks(String storeId, BookSearch search, String afterBookId, int limit) {
+		Criteria criteria = new Criteria();
+		if (search.getAuthor() != null) {
+			criteria.and(BOOKS + ".author").is(search.getAuthor());
+		}
+		if (search.getIsbn() != null) {
+			criteria.and(BOOKS + ".isbn").is(search.getIsbn());
+		}
+		if (search.getTitle() != null) {
+			criteria.and(BOOKS + ".title").regex(search.getTitlePattern());
+		}
+		if (afterBookId != null) {
+			criteria.and(BOOK_ID).gt(afterBookId);
+		}
+		List<AggregationOperation> operations = new ArrayList<>();
+		operations.add(Aggregation.match(activeStore(storeId)));
+		operations.add(Aggregation.unwind(BOOKS));
+		operations.add(Aggregation.match(criteria));
+		operations.add(Aggregation.sort(Sort.Direction.ASC, BOOK_ID));
+		if (limit > 0) {
+			operations.add(Aggregation.limit(limit));
+		}
+		operations.add(Aggregation.replaceRoot(BOOKS));
+		return this.mongoOperations.aggregate(Aggregation.newAggregation(operations), BookStore.class, Book.class);
+	}
+
+	@Override
+	public Mono<Boolean> markDeleted(String storeId) {
+		Query query = Query.query(Criteria.where("_id").is(storeId));
+		Update update = new Update().set(DELETED, true);
+		return this.mongoOperations.updateFirst(query, update, BookStore.class)
+			.map((result) -> result.getMatchedCount() > 0);
+	}
+
+	@Override
+	public Mono<Boolean> claimForPurge(String storeId, String purgerId, Instant claimedAt, Instant staleBefore) {
+		Criteria claimable = new Criteria().orOperator(Criteria.where(PURGE_CLAIMED_AT).is(null),
+				Criteria.where(PURGING_BY).is(purgerId), Criteria.where(PURGE_CLAIMED_AT).lt(staleBefore));
+		Query query = Query.query(Criteria.where("_id").is(storeId).and(DELETED).is(true).andOperator(claimable));
+		Update update = new Update().set(PURGING_BY, purgerId).set(PURGE_CLAIMED_AT, claimedAt);
+		return this.mongoOperations.updateFirst(query, update, BookStore.class)
+			.map((result) -> result.getMatchedCount() > 0);
+	}
+
+	@Override
+	public Mono<Long> incrementVersion(String storeId) {
+		Query query = Query.query(activeStore(storeId));
+		query.fields().include(VERSION);
+		return this.mongoOperations
+			.findAndModify(query, new Update().inc(VERSION, 1), FindAndModifyOptions.options().returnNew(true),
+					BookStore.class)
+			.map(BookStore::getVersion);
+	}
+
+	@Override
+	public Mono<Boolean> incrementVersion(String storeId, long expectedVersion) {
+		Query query = Query.query(activeStore(storeId, expectedVersion));
+		return this.mongoOperations.updateFirst(query, new Update().inc(VERSION, 1), BookStore.class)
+			.map((result) -> result.getMatchedCount() > 0);
+	}
+
+	private Mono<BookStore> pushBooks(Query query, List<Book> books) {
+		query.fields().include(VERSION);
+		Update update = new Update().push(BOOKS).each(books.toArray()).inc(VERSION, 1);
+		return this.mongoOperations
+			.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), BookStore.class)
+			.map((store) -> new BookStore(store.getId(), books, false, store.getVersion()));
+	}
+
+	private Mono<BookStore> pullBook(Query query, String bookId) {
+		query.fields().include(VERSION).elemMatch(BOOKS, Criteria.where("_id").is(bookId));
+		Update update = new Update().pull(BOOKS, new Document("_id", bookId)).inc(VERSION, 1);
+		// the book store is returned as it was before the update, still holding the book
+		return this.mongoOperations.findAndModify(query, update, BookStore.class)
+			.flatMap((store) -> Mono.justOrEmpty(store.getBookById(bookId))
+				.map((book) -> new BookStore(store.getId(), List.of(book), false, store.getVersion() + 1)));
+	}
+
+	private static Criteria activeStore(String storeId) {
+		return Criteria.where("_id").is(storeId).and(DELETED).ne(true);
+	}
+
+	private static Criteria activeStore(String storeId, long expectedVersion) {
+		// book stores created before versioning have no version field until their first update
+		Criteria version = (expectedVersion != 0) ? Criteria.where(VERSION).is(expectedVersion)
+				: Criteria.where(VERSION).in(0L, null);
+		return new Criteria().andOperator(activeStore(storeId), version);
+	}
+
+}
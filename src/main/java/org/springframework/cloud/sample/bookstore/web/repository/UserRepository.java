@@ -16,6 +16,9 @@
 
 package org.springframework.cloud.sample.bookstore.web.repository;
 
+import java.util.Collection;
+
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import org.springframework.cloud.sample.bookstore.web.model.User;
@@ -25,4 +28,8 @@ public interface UserRepository extends ReactiveCrudRepository<User, String> {
 
 	Mono<User> findByUsername(String username);
 
+	Flux<User> findByAuthorities(String authority);
+
+	Mono<Long> deleteByUsernameIn(Collection<String> usernames);
+
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.resource;
+
+import java.nio.charset.StandardCharsets;
+
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.sample.bookstore.web.controller.BookController;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.server.reactive.WebFluxLinkBuilder;
+import org.springframework.web.util.UriUtils;
+
+/**
+ * The self link of the books in one book store, resolved once per request. The link to
+ * {@link BookController#getBook} is built a single time with a placeholder book id, and
+ * the link of each book is expanded from it by substituting the encoded book id, encoded
+ * the same way {@link WebFluxLinkBuilder} encodes path variables.
+ */
+final class BookLinkTemplate {
+
+	private static final String BOOK_ID_PLACEHOLDER = "bookIdPlaceholder";
+
+	private final String prefix;
+
+	private final String suffix;
+
+	private BookLinkTemplate(String href) {
+		int index = href.lastIndexOf(BOOK_ID_PLACEHOLDER);
+		this.prefix = href.substring(0, index);
+		this.suffix = href.substring(index + BOOK_ID_PLACEHOLDER.length());
+	}
+
+	static Mono<BookLinkTemplate> forBookStore(String bookStoreId) {
+		return WebFluxLinkBuilder
+			.linkTo(WebFluxLinkBuilder.methodOn(BookController.class).getBook(bookStoreId, BOOK_ID_PLACEHOLDER, null))
+			.withSelfRel()
+			.toMono()
+			.map((link) -> new BookLinkTemplate(link.getHref()));
+	}
+
+	Link selfLink(String bookId) {
+		return Link.of(this.prefix + UriUtils.encodePath(bookId, StandardCharsets.UTF_8) + this.suffix);
+	}
+
+}
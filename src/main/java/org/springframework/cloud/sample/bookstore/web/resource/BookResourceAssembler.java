@@ -16,31 +16,43 @@
 
 package org.springframework.cloud.sample.bookstore.web.resource;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import org.springframework.cloud.sample.bookstore.web.controller.BookController;
 import org.springframework.cloud.sample.bookstore.web.model.Book;
-import org.springframework.hateoas.server.reactive.WebFluxLinkBuilder;
 
+/**
+ * Assembles book resources. The self link template of the book store is resolved once
+ * per call, rather than once per book, so that large book stores are not slowed down by
+ * building a controller proxy and recording a method invocation for every book.
+ */
 public class BookResourceAssembler {
 
 	public Mono<BookResource> toModel(Book book, String bookStoreId) {
-		return Mono.just(new BookResource(book))
-			.flatMap((bookResource) -> WebFluxLinkBuilder
-				.linkTo(WebFluxLinkBuilder.methodOn(BookController.class).getBook(bookStoreId, book.getId()))
-				.withSelfRel()
-				.toMono()
-				.flatMap((link) -> Mono.just(bookResource.add(link)))
-				.thenReturn(bookResource));
+		return BookLinkTemplate.forBookStore(bookStoreId).map((linkTemplate) -> toModel(book, linkTemplate));
 	}
 
 	public Mono<List<BookResource>> toCollectionModel(Collection<Book> books, String bookStoreId) {
-		return Flux.fromIterable(books).flatMap((book) -> toModel(book, bookStoreId)).collect(Collectors.toList());
+		return BookLinkTemplate.forBookStore(bookStoreId).map((linkTemplate) -> {
+			List<BookResource> bookResources = new ArrayList<>(books.size());
+			for (Book book : books) {
+				bookResources.add(toModel(book, linkTemplate));
+			}
+			return bookResources;
+		});
+	}
+
+	public Flux<BookResource> toModels(Flux<Book> books, String bookStoreId) {
+		return BookLinkTemplate.forBookStore(bookStoreId)
+			.flatMapMany((linkTemplate) -> books.map((book) -> toModel(book, linkTemplate)));
+	}
+
+	private BookResource toModel(Book book, BookLinkTemplate linkTemplate) {
+		return new BookResource(book).add(linkTemplate.selfLink(book.getId()));
 	}
 
 }
@@ -16,23 +16,83 @@
 
 package org.springframework.cloud.sample.bookstore.web.resource;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Function;
+
 import reactor.core.publisher.Mono;
 
 import org.springframework.cloud.sample.bookstore.web.controller.BookStoreController;
+import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.cloud.sample.bookstore.web.model.BookSearch;
 import org.springframework.cloud.sample.bookstore.web.model.BookStore;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.hateoas.Link;
 import org.springframework.hateoas.server.reactive.WebFluxLinkBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
 
 public class BookStoreResourceAssembler {
 
 	public Mono<BookStoreResource> toModel(BookStore bookStore) {
 		return new BookResourceAssembler().toCollectionModel(bookStore.getBooks(), bookStore.getId())
 			.flatMap((bookResources) -> Mono.just(new BookStoreResource(bookResources))
-				.flatMap((bookStoreResource) -> WebFluxLinkBuilder
-					.linkTo(WebFluxLinkBuilder.methodOn(BookStoreController.class).getBooks(bookStore.getId()))
-					.withSelfRel()
-					.toMono()
+				.flatMap((bookStoreResource) -> bookStoreLink(bookStore.getId())
 					.flatMap((link) -> Mono.just(bookStoreResource.add(link)))
 					.thenReturn(bookStoreResource)));
 	}
 
+	public Mono<BookStoreResource> toModel(String bookStoreId, List<Book> books, int limit, String afterBookId) {
+		return toPage(bookStoreId, books, limit, afterBookId,
+				(bookStoreLink) -> UriComponentsBuilder.fromUriString(bookStoreLink.getHref()));
+	}
+
+	/**
+	 * Return a page of search results, linking to the next page of the same search.
+	 */
+	public Mono<BookStoreResource> toModel(String bookStoreId, BookSearch search, List<Book> books, int limit,
+			String afterBookId) {
+		return toPage(bookStoreId, books, limit, afterBookId, (bookStoreLink) -> {
+			UriComponentsBuilder builder = UriComponentsBuilder.fromUriString(bookStoreLink.getHref()).path("/books");
+			addQueryParam(builder, "author", search.getAuthor());
+			addQueryParam(builder, "title", search.getTitle());
+			addQueryParam(builder, "isbn", search.getIsbn());
+			return builder;
+		});
+	}
+
+	private Mono<BookStoreResource> toPage(String bookStoreId, List<Book> books, int limit, String afterBookId,
+			Function<Link, UriComponentsBuilder> pageUri) {
+		return new BookResourceAssembler().toCollectionModel(books, bookStoreId)
+			.flatMap((bookResources) -> bookStoreLink(bookStoreId).map((bookStoreLink) -> {
+				BookStoreResource bookStoreResource = new BookStoreResource(bookResources);
+				bookStoreResource.add(Link.of(pageHref(pageUri.apply(bookStoreLink), limit, afterBookId)));
+				if (books.size() == limit) {
+					String lastBookId = books.get(books.size() - 1).getId();
+					bookStoreResource.add(Link.of(pageHref(pageUri.apply(bookStoreLink), limit, lastBookId),
+							IanaLinkRelations.NEXT));
+				}
+				return bookStoreResource;
+			}));
+	}
+
+	private Mono<Link> bookStoreLink(String bookStoreId) {
+		return WebFluxLinkBuilder
+			.linkTo(WebFluxLinkBuilder.methodOn(BookStoreController.class).getBooks(bookStoreId, null))
+			.withSelfRel()
+			.toMono();
+	}
+
+	private String pageHref(UriComponentsBuilder builder, int limit, String afterBookId) {
+		builder.queryParam("limit", limit);
+		addQueryParam(builder, "after", afterBookId);
+		return builder.build().toUriString();
+	}
+
+	private void addQueryParam(UriComponentsBuilder builder, String name, String value) {
+		if (value != null) {
+			builder.queryParam(name, UriUtils.encodeQueryParam(value, StandardCharsets.UTF_8));
+		}
+	}
+
 }
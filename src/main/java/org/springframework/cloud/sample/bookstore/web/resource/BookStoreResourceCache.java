@@ -0,0 +1,124 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.resource;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.sample.bookstore.web.model.BookStore;
+import org.springframework.cloud.sample.bookstore.web.service.BookStoreChangedEvent;
+import org.springframework.context.ApplicationListener;
+
+/**
+ * Read-through cache of serialized book store representations, so that repeated reads
+ * of a book store skip both the database and JSON serialization. Entries are bounded by
+ * their total size in bytes and a time-to-live, and are evicted when a
+ * {@link BookStoreChangedEvent} is received. Evicting a book store while it is being
+ * loaded discards the load, so a representation read before a change is never cached
+ * after it.
+ * <p>
+ * The links in a representation are absolute, so an entry is only served to requests
+ * with the base URI it was built for; other requests are answered without the cache.
+ * Hit ratio and load latency are published as {@code cache.*} metrics tagged with
+ * {@code cache=bookStoreResources}.
+ */
+public class BookStoreResourceCache implements ApplicationListener<BookStoreChangedEvent>, MeterBinder {
+
+	private static final String CACHE_NAME = "bookStoreResources";
+
+	private final ObjectMapper objectMapper;
+
+	private final AsyncCache<String, CachedBookStoreResource> cache;
+
+	public BookStoreResourceCache(ObjectMapper objectMapper, long maximumBytes, Duration timeToLive) {
+		this.objectMapper = objectMapper;
+		this.cache = Caffeine.newBuilder()
+			.maximumWeight(maximumBytes)
+			.weigher((String storeId, CachedBookStoreResource resource) -> resource.getBody().length)
+			.expireAfterWrite(timeToLive)
+			.recordStats()
+			.buildAsync();
+	}
+
+	/**
+	 * Return the cached representation of a book store, loading, assembling and
+	 * serializing the book store if it is not cached.
+	 * @param storeId the book store ID
+	 * @param baseUri the base URI of the current request
+	 * @param bookStore loads the book store
+	 * @return the serialized representation
+	 */
+	public Mono<CachedBookStoreResource> get(String storeId, String baseUri, Mono<BookStore> bookStore) {
+		return Mono.deferContextual((context) -> Mono.fromFuture(() -> this.cache.get(storeId,
+				(key, executor) -> serialize(bookStore, baseUri).contextWrite(context).toFuture()), true))
+			.flatMap((resource) -> resource.getBaseUri().equals(baseUri) ? Mono.just(resource)
+					: serialize(bookStore, baseUri));
+	}
+
+	/**
+	 * Return the cached representation of a book store without loading it.
+	 * @param storeId the book store ID
+	 * @param baseUri the base URI of the current request
+	 * @return the serialized representation, or empty if it is not cached or not yet
+	 * loaded
+	 */
+	public Mono<CachedBookStoreResource> getIfPresent(String storeId, String baseUri) {
+		CompletableFuture<CachedBookStoreResource> resource = this.cache.getIfPresent(storeId);
+		if (resource == null || !resource.isDone() || resource.isCompletedExceptionally()) {
+			return Mono.empty();
+		}
+		return Mono.justOrEmpty(resource.getNow(null)).filter((cached) -> cached.getBaseUri().equals(baseUri));
+	}
+
+	public void evict(String storeId) {
+		this.cache.synchronous().invalidate(storeId);
+	}
+
+	public void evictAll() {
+		this.cache.synchronous().invalidateAll();
+	}
+
+	@Override
+	public void onApplicationEvent(BookStoreChangedEvent event) {
+		evict(event.getBookStoreId());
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CaffeineCacheMetrics.monitor(registry, this.cache, CACHE_NAME);
+	}
+
+	private Mono<CachedBookStoreResource> serialize(Mono<BookStore> bookStore, String baseUri) {
+		return bookStore.flatMap((store) -> new BookStoreResourceAssembler().toModel(store)
+			.flatMap((resource) -> Mono.fromCallable(() -> new CachedBookStoreResource(store.getVersion(), baseUri,
+					toJson(resource)))));
+	}
+
+	private byte[] toJson(BookStoreResource resource) throws JsonProcessingException {
+		return this.objectMapper.writeValueAsBytes(resource);
+	}
+
+}
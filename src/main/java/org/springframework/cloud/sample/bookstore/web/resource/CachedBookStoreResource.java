@@ -0,0 +1,61 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.resource;
+
+/**
+ * The JSON representation of a book store, serialized once and kept by
+ * {@link BookStoreResourceCache}.
+ */
+public final class CachedBookStoreResource {
+
+	private final long version;
+
+	private final String baseUri;
+
+	private final byte[] body;
+
+	CachedBookStoreResource(long version, String baseUri, byte[] body) {
+		this.version = version;
+		this.baseUri = baseUri;
+		this.body = body;
+	}
+
+	/**
+	 * Return the version of the book store the representation was built from.
+	 * @return the book store version
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Return the base URI of the links in the representation.
+	 * @return the base URI
+	 */
+	public String getBaseUri() {
+		return this.baseUri;
+	}
+
+	/**
+	 * Return the serialized representation. The array is shared and must not be modified.
+	 * @return the JSON bytes
+	 */
+	public byte[] getBody() {
+		return this.body;
+	}
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.security;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * The book stores a user may read and write, resolved once from the user's authorities.
+ * A user without any {@link SecurityAuthorities#BOOK_STORE_ID_PREFIX book store}
+ * authorities is not restricted to particular book stores.
+ */
+public final class BookStoreAccess {
+
+	private final boolean fullAccess;
+
+	private final boolean readOnly;
+
+	private final Set<String> bookStoreIds;
+
+	private BookStoreAccess(boolean fullAccess, boolean readOnly, Set<String> bookStoreIds) {
+		this.fullAccess = fullAccess;
+		this.readOnly = readOnly;
+		this.bookStoreIds = Set.copyOf(bookStoreIds);
+	}
+
+	public static BookStoreAccess of(Collection<? extends GrantedAuthority> authorities) {
+		boolean fullAccess = false;
+		boolean readOnly = false;
+		Set<String> bookStoreIds = new HashSet<>();
+		for (GrantedAuthority grantedAuthority : authorities) {
+			String authority = grantedAuthority.getAuthority();
+			if (SecurityAuthorities.FULL_ACCESS.equals(authority)) {
+				fullAccess = true;
+			}
+			else if (SecurityAuthorities.READ_ONLY.equals(authority)) {
+				readOnly = true;
+			}
+			else if (authority != null && authority.startsWith(SecurityAuthorities.BOOK_STORE_ID_PREFIX)) {
+				bookStoreIds.add(authority.substring(SecurityAuthorities.BOOK_STORE_ID_PREFIX.length()));
+			}
+		}
+		return new BookStoreAccess(fullAccess, readOnly, bookStoreIds);
+	}
+
+	public Set<String> getBookStoreIds() {
+		return this.bookStoreIds;
+	}
+
+	public boolean canRead(String bookStoreId) {
+		return (this.fullAccess || this.readOnly) && isAllowed(bookStoreId);
+	}
+
+	public boolean canWrite(String bookStoreId) {
+		return this.fullAccess && isAllowed(bookStoreId);
+	}
+
+	private boolean isAllowed(String bookStoreId) {
+		return this.bookStoreIds.isEmpty() || (bookStoreId != null && this.bookStoreIds.contains(bookStoreId));
+	}
+
+}
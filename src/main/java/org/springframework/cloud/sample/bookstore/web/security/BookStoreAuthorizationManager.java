@@ -0,0 +1,71 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.security;
+
+import reactor.core.publisher.Mono;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.ReactiveAuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.server.authorization.AuthorizationContext;
+
+/**
+ * {@link ReactiveAuthorizationManager} for book store requests. Safe methods, including
+ * the {@code OPTIONS} of CORS preflight requests, require read access and all others
+ * require write access to the book store named by the {@value #BOOK_STORE_ID_VARIABLE}
+ * path variable.
+ */
+public class BookStoreAuthorizationManager implements ReactiveAuthorizationManager<AuthorizationContext> {
+
+	/**
+	 * Name of the path variable that holds the book store ID.
+	 */
+	public static final String BOOK_STORE_ID_VARIABLE = "bookStoreId";
+
+	private static final AuthorizationDecision GRANTED = new AuthorizationDecision(true);
+
+	private static final AuthorizationDecision DENIED = new AuthorizationDecision(false);
+
+	@Override
+	public Mono<AuthorizationDecision> check(Mono<Authentication> authentication, AuthorizationContext context) {
+		String bookStoreId = (String) context.getVariables().get(BOOK_STORE_ID_VARIABLE);
+		boolean write = isWrite(context.getExchange().getRequest().getMethod());
+		return authentication.filter(Authentication::isAuthenticated)
+			.map((auth) -> isAllowed(bookStoreAccess(auth), bookStoreId, write) ? GRANTED : DENIED)
+			.defaultIfEmpty(DENIED);
+	}
+
+	private static boolean isWrite(HttpMethod method) {
+		return !(HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method) || HttpMethod.OPTIONS.equals(method));
+	}
+
+	private static boolean isAllowed(BookStoreAccess access, String bookStoreId, boolean write) {
+		return write ? access.canWrite(bookStoreId) : access.canRead(bookStoreId);
+	}
+
+	private static BookStoreAccess bookStoreAccess(Authentication authentication) {
+		if (authentication instanceof BookStoreTokenAuthentication tokenAuthentication) {
+			return tokenAuthentication.getBookStoreAccess();
+		}
+		if (authentication.getPrincipal() instanceof BookStoreUserDetails userDetails) {
+			return userDetails.getBookStoreAccess();
+		}
+		return BookStoreAccess.of(authentication.getAuthorities());
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.security;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * {@link org.springframework.security.core.Authentication} for a bearer token issued by
+ * {@link BookStoreTokenService}. The principal is the token ID.
+ */
+public class BookStoreTokenAuthentication extends AbstractAuthenticationToken {
+
+	private static final long serialVersionUID = -2207424325616409374L;
+
+	private final String token;
+
+	private final String tokenId;
+
+	private final transient BookStoreAccess bookStoreAccess;
+
+	private BookStoreTokenAuthentication(String token) {
+		super(Collections.emptyList());
+		this.token = token;
+		this.tokenId = null;
+		this.bookStoreAccess = null;
+	}
+
+	BookStoreTokenAuthentication(String token, String tokenId, Collection<? extends GrantedAuthority> authorities) {
+		super(authorities);
+		this.token = token;
+		this.tokenId = tokenId;
+		this.bookStoreAccess = BookStoreAccess.of(authorities);
+		setAuthenticated(true);
+	}
+
+	public static BookStoreTokenAuthentication unauthenticated(String token) {
+		return new BookStoreTokenAuthentication(token);
+	}
+
+	@Override
+	public Object getCredentials() {
+		return this.token;
+	}
+
+	@Override
+	public Object getPrincipal() {
+		return this.tokenId;
+	}
+
+	public BookStoreAccess getBookStoreAccess() {
+		return this.bookStoreAccess;
+	}
+
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.security;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.sample.bookstore.web.model.RevokedToken;
+import org.springframework.cloud.sample.bookstore.web.repository.RevokedTokenRepository;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+/**
+ * Issues and verifies stateless bearer tokens for book store access. A token is the
+ * Base64URL-encoded JSON claims, a {@code .} separator, and the Base64URL-encoded
+ * HMAC-SHA256 signature of the encoded claims.
+ * <p>
+ * Tokens expire once their time-to-live has passed. Revoked token IDs are persisted, and
+ * kept in memory so that verification never queries the database. The persisted
+ * revocations are reloaded periodically, so a token revoked by another instance is
+ * rejected here at the latest one reload interval later, or as soon as the change stream
+ * reports it when change streams are enabled. A revocation is only kept until every
+ * token it applies to has expired, and expired revocations are pruned periodically.
+ */
+@Service
+public class BookStoreTokenService implements SmartInitializingSingleton, DisposableBean {
+
+	private static final Log LOG = LogFactory.getLog(BookStoreTokenService.class);
+
+	private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+	private static final int KEY_LENGTH = 32;
+
+	private static final char SEPARATOR = '.';
+
+	private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+	private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+	private final RevokedTokenRepository revokedTokenRepository;
+
+	private final ObjectMapper objectMapper;
+
+	private final SecretKeySpec key;
+
+	private final Duration timeToLive;
+
+	private final Duration pruneInterval;
+
+	private final Duration reloadInterval;
+
+	private final Map<String, Instant> revokedTokens = new ConcurrentHashMap<>();
+
+	private volatile Disposable pruneSubscription;
+
+	private volatile Disposable reloadSubscription;
+
+	public BookStoreTokenService(RevokedTokenRepository revokedTokenRepository, ObjectMapper objectMapper,
+			@Value("${bookstore.token.secret:}") String secret,
+			@Value("${bookstore.token.time-to-live:30d}") Duration timeToLive,
+			@Value("${bookstore.token.prune-interval:1h}") Duration pruneInterval,
+			@Value("${bookstore.token.reload-interval:1m}") Duration reloadInterval) {
+		this.revokedTokenRepository = revokedTokenRepository;
+		this.objectMapper = objectMapper;
+		this.key = new SecretKeySpec(keyBytes(secret), HMAC_ALGORITHM);
+		this.timeToLive = timeToLive;
+		this.pruneInterval = pruneInterval;
+		this.reloadInterval = reloadInterval;
+	}
+
+	/**
+	 * Load the revoked token IDs before the server accepts requests, failing startup if
+	 * they cannot be loaded rather than accepting revoked tokens.
+	 */
+	@Override
+	public void afterSingletonsInstantiated() {
+		loadRevokedTokens().block();
+		this.pruneSubscription = Flux.interval(this.pruneInterval, this.pruneInterval)
+			.onBackpressureDrop()
+			.concatMap((tick) -> pruneRevokedTokens().onErrorResume((ex) -> {
+				LOG.warn("Failed to prune expired token revocations", ex);
+				return Mono.empty();
+			}))
+			.subscribe();
+		this.reloadSubscription = Flux.interval(this.reloadInterval, this.reloadInterval)
+			.onBackpressureDrop()
+			.concatMap((tick) -> loadRevokedTokens().onErrorResume((ex) -> {
+				LOG.warn("Failed to reload token revocations", ex);
+				return Mono.empty();
+			}))
+			.subscribe();
+	}
+
+	@Override
+	public void destroy() {
+		Disposable pruneSubscription = this.pruneSubscription;
+		if (pruneSubscription != null) {
+			pruneSubscription.dispose();
+		}
+		Disposable reloadSubscription = this.reloadSubscription;
+		if (reloadSubscription != null) {
+			reloadSubscription.dispose();
+		}
+	}
+
+	/**
+	 * Add the persisted revoked token IDs to those kept in memory, picking up tokens
+	 * revoked by other instances.
+	 * @return completes once the revoked token IDs are loaded
+	 */
+	public Mono<Void> loadRevokedTokens() {
+		return this.revokedTokenRepository.findAll().doOnNext(this::markRevoked).then();
+	}
+
+	/**
+	 * Reject a token revoked by another instance from now on, without persisting the
+	 * revocation again.
+	 * @param revokedToken the persisted revocation
+	 */
+	public void markRevoked(RevokedToken revokedToken) {
+		// revocations recorded before tokens expired are kept for good
+		this.revokedTokens.put(revokedToken.getTokenId(),
+				(revokedToken.getExpiresAt() != null) ? revokedToken.getExpiresAt() : Instant.MAX);
+	}
+
+	/**
+	 * Remove the revocations of tokens that have expired, from memory and from the
+	 * database.
+	 * @return the number of persisted revocations removed
+	 */
+	public Mono<Long> pruneRevokedTokens() {
+		return Mono.defer(() -> {
+			Instant now = Instant.now();
+			this.revokedTokens.values().removeIf((expiresAt) -> expiresAt.isBefore(now));
+			return this.revokedTokenRepository.deleteByExpiresAtBefore(now);
+		});
+	}
+
+	public Mono<String> issueToken(String tokenId, String bookStoreId, String... authorities) {
+		return Mono.fromCallable(() -> {
+			long issuedAt = System.currentTimeMillis();
+			TokenClaims claims = new TokenClaims(tokenId, bookStoreId, List.of(authorities), issuedAt,
+					issuedAt + this.timeToLive.toMillis());
+			String encodedClaims = ENCODER.encodeToString(this.objectMapper.writeValueAsBytes(claims));
+			return encodedClaims + SEPARATOR + ENCODER.encodeToString(sign(encodedClaims));
+		});
+	}
+
+	public Mono<Authentication> authenticate(String token) {
+		return Mono.fromCallable(() -> verify(token));
+	}
+
+	public Mono<Void> revokeToken(String tokenId) {
+		return Mono.defer(() -> this.revokedTokenRepository.save(revocation(tokenId)))
+			.doOnNext(this::markRevoked)
+			.then();
+	}
+
+	public Mono<Void> revokeTokens(Collection<String> tokenIds) {
+		return Flux.defer(() -> this.revokedTokenRepository.saveAll(tokenIds.stream().map(this::revocation).toList()))
+			.doOnNext(this::markRevoked)
+			.then();
+	}
+
+	/**
+	 * Tokens are issued before their ID is revoked, so every token a revocation applies
+	 * to has expired once the time-to-live has passed from now.
+	 */
+	private RevokedToken revocation(String tokenId) {
+		return new RevokedToken(tokenId, Instant.now().plus(this.timeToLive));
+	}
+
+	private Authentication verify(String token) {
+		int separator = token.indexOf(SEPARATOR);
+		if (separator < 0) {
+			throw new BadCredentialsException("Malformed token");
+		}
+		String encodedClaims = token.substring(0, separator);
+		TokenClaims claims;
+		try {
+			byte[] signature = DECODER.decode(token.substring(separator + 1));
+			if (!MessageDigest.isEqual(signature, sign(encodedClaims))) {
+				throw new BadCredentialsException("Invalid token signature");
+			}
+			claims = this.objectMapper.readValue(DECODER.decode(encodedClaims), TokenClaims.class);
+		}
+		catch (IllegalArgumentException | IOException ex) {
+			throw new BadCredentialsException("Malformed token", ex);
+		}
+		if (System.currentTimeMillis() >= expiresAt(claims)) {
+			throw new BadCredentialsException("Token has expired");
+		}
+		if (this.revokedTokens.containsKey(claims.id())) {
+			throw new BadCredentialsException("Token has been revoked");
+		}
+		return new BookStoreTokenAuthentication(token, claims.id(),
+				AuthorityUtils.createAuthorityList(claims.authorities()));
+	}
+
+	/**
+	 * Tokens issued before expiry was recorded expire when the time-to-live has passed
+	 * from their issue.
+	 */
+	private long expiresAt(TokenClaims claims) {
+		return (claims.expiresAt() != 0) ? claims.expiresAt() : claims.issuedAt() + this.timeToLive.toMillis();
+	}
+
+	private byte[] sign(String encodedClaims) {
+		try {
+			Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+			mac.init(this.key);
+			return mac.doFinal(encodedClaims.getBytes(StandardCharsets.US_ASCII));
+		}
+		catch (GeneralSecurityException ex) {
+			throw new IllegalStateException("Unable to sign token", ex);
+		}
+	}
+
+	private static byte[] keyBytes(String secret) {
+		if (StringUtils.hasText(secret)) {
+			return secret.getBytes(StandardCharsets.UTF_8);
+		}
+		LOG.warn("No bookstore.token.secret configured, using a random key. "
+				+ "Tokens will not be accepted after a restart or by other instances.");
+		byte[] keyBytes = new byte[KEY_LENGTH];
+		new SecureRandom().nextBytes(keyBytes);
+		return keyBytes;
+	}
+
+	record TokenClaims(String id, String bookStoreId, List<String> authorities, long issuedAt, long expiresAt) {
+
+	}
+
+}
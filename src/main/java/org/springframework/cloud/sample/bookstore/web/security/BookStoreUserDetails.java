@@ -16,21 +16,24 @@
 
 package org.springframework.cloud.sample.bookstore.web.security;
 
-import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
 
-public class BookStoreIdEvaluator {
+/**
+ * {@link UserDetails} that carry the user's {@link BookStoreAccess}, resolved when the
+ * user is loaded so that it is not recomputed for every request.
+ */
+public interface BookStoreUserDetails extends UserDetails {
+
+	BookStoreAccess getBookStoreAccess();
 
-	public boolean canAccessBookstore(Authentication authentication, String bookStoreId) {
-		return authentication.getAuthorities()
-			.stream()
-			.filter((authority) -> authority.getAuthority().startsWith(SecurityAuthorities.BOOK_STORE_ID_PREFIX))
-			.map((authority) -> {
-				String serviceInstanceId = authority.getAuthority()
-					.substring(SecurityAuthorities.BOOK_STORE_ID_PREFIX.length());
-				return serviceInstanceId.equals(bookStoreId);
-			})
-			.findFirst()
-			.orElse(true);
+	/**
+	 * Return the ID of the user document the details were loaded from, identifying the
+	 * user when a change only carries the document ID.
+	 * @return the user ID, or {@code null} if the details were not loaded from a user
+	 * document
+	 */
+	default String getUserId() {
+		return null;
 	}
 
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.sample.bookstore.web.service.UserDeletedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+/**
+ * {@link ReactiveAuthenticationManager} that remembers successful username and password
+ * verifications for a limited time, so that repeated requests with the same credentials
+ * do not each pay for a full password hash comparison.
+ * <p>
+ * Entries are keyed by an HMAC of the username and password under a key generated at
+ * startup, so the cache never holds plaintext passwords. All entries for a user are
+ * evicted when a {@link UserDeletedEvent} is received.
+ */
+public class CachingReactiveAuthenticationManager
+		implements ReactiveAuthenticationManager, ApplicationListener<UserDeletedEvent> {
+
+	private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+	private static final int KEY_LENGTH = 32;
+
+	private final ReactiveAuthenticationManager delegate;
+
+	private final Cache<String, Authentication> cache;
+
+	private final SecretKeySpec key;
+
+	public CachingReactiveAuthenticationManager(ReactiveAuthenticationManager delegate, long maximumSize,
+			Duration timeToLive) {
+		this.delegate = delegate;
+		this.cache = Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(timeToLive).build();
+		byte[] keyBytes = new byte[KEY_LENGTH];
+		new SecureRandom().nextBytes(keyBytes);
+		this.key = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+	}
+
+	@Override
+	public Mono<Authentication> authenticate(Authentication authentication) {
+		if (!(authentication instanceof UsernamePasswordAuthenticationToken)
+				|| authentication.getCredentials() == null) {
+			return this.delegate.authenticate(authentication);
+		}
+		String cacheKey = cacheKey(authentication.getName(), authentication.getCredentials().toString());
+		return Mono.justOrEmpty(this.cache.getIfPresent(cacheKey))
+			.switchIfEmpty(Mono.defer(() -> this.delegate.authenticate(authentication)
+				.doOnNext((result) -> {
+					if (result.isAuthenticated()) {
+						this.cache.put(cacheKey, result);
+					}
+				})));
+	}
+
+	@Override
+	public void onApplicationEvent(UserDeletedEvent event) {
+		evict(event.getUsername());
+	}
+
+	public void evict(String username) {
+		this.cache.asMap().values().removeIf((authentication) -> username.equals(authentication.getName()));
+	}
+
+	/**
+	 * Evict the verified credentials of the user loaded from the user document with the
+	 * given ID.
+	 * @param userId the ID of the user document
+	 */
+	public void evictUserId(String userId) {
+		this.cache.asMap()
+			.values()
+			.removeIf((authentication) -> authentication.getPrincipal() instanceof BookStoreUserDetails userDetails
+					&& userId.equals(userDetails.getUserId()));
+	}
+
+	public void evictAll() {
+		this.cache.invalidateAll();
+	}
+
+	private String cacheKey(String username, String password) {
+		try {
+			Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+			mac.init(this.key);
+			mac.update(username.getBytes(StandardCharsets.UTF_8));
+			mac.update((byte) 0);
+			return Base64.getEncoder().encodeToString(mac.doFinal(password.getBytes(StandardCharsets.UTF_8)));
+		}
+		catch (GeneralSecurityException ex) {
+			throw new IllegalStateException("Unable to compute credential cache key", ex);
+		}
+	}
+
+}
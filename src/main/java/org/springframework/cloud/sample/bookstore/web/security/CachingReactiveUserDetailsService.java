@@ -0,0 +1,98 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.security;
+
+import java.time.Duration;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.sample.bookstore.web.service.UserDeletedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.UserDetails;
+
+/**
+ * {@link ReactiveUserDetailsService} that keeps the {@link UserDetails} loaded by a
+ * delegate in a bounded cache with a time-to-live, so that authenticated requests do not
+ * each query the user repository. Concurrent lookups for the same user share a single
+ * load, and failed lookups are not cached. A user is evicted when a
+ * {@link UserDeletedEvent} is received.
+ * <p>
+ * Hit ratio and load latency are published as {@code cache.*} metrics tagged with
+ * {@code cache=userDetails}.
+ */
+public class CachingReactiveUserDetailsService
+		implements ReactiveUserDetailsService, ApplicationListener<UserDeletedEvent>, MeterBinder {
+
+	private static final String CACHE_NAME = "userDetails";
+
+	private final ReactiveUserDetailsService delegate;
+
+	private final AsyncCache<String, UserDetails> cache;
+
+	public CachingReactiveUserDetailsService(ReactiveUserDetailsService delegate, long maximumSize,
+			Duration timeToLive) {
+		this.delegate = delegate;
+		this.cache = Caffeine.newBuilder()
+			.maximumSize(maximumSize)
+			.expireAfterWrite(timeToLive)
+			.recordStats()
+			.buildAsync();
+	}
+
+	@Override
+	public Mono<UserDetails> findByUsername(String username) {
+		return Mono.fromFuture(
+				() -> this.cache.get(username, (key, executor) -> this.delegate.findByUsername(key).toFuture()), true);
+	}
+
+	@Override
+	public void onApplicationEvent(UserDeletedEvent event) {
+		evict(event.getUsername());
+	}
+
+	public void evict(String username) {
+		this.cache.synchronous().invalidate(username);
+	}
+
+	/**
+	 * Evict the user loaded from the user document with the given ID.
+	 * @param userId the ID of the user document
+	 */
+	public void evictUserId(String userId) {
+		this.cache.synchronous()
+			.asMap()
+			.values()
+			.removeIf((userDetails) -> userDetails instanceof BookStoreUserDetails bookStoreUserDetails
+					&& userId.equals(bookStoreUserDetails.getUserId()));
+	}
+
+	public void evictAll() {
+		this.cache.synchronous().invalidateAll();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CaffeineCacheMetrics.monitor(registry, this.cache, CACHE_NAME);
+	}
+
+}
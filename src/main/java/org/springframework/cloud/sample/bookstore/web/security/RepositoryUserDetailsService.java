@@ -17,7 +17,7 @@
 package org.springframework.cloud.sample.bookstore.web.security;
 
 import java.util.Collection;
-import java.util.stream.Collectors;
+import java.util.List;
 
 import reactor.core.publisher.Mono;
 
@@ -28,9 +28,7 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.stereotype.Service;
 
-@Service
 public class RepositoryUserDetailsService implements ReactiveUserDetailsService {
 
 	private final UserRepository userRepository;
@@ -46,32 +44,54 @@ public class RepositoryUserDetailsService implements ReactiveUserDetailsService
 			.flatMap((user) -> Mono.just(new CustomUserDetails(user)));
 	}
 
-	private static class CustomUserDetails implements UserDetails {
+	private static class CustomUserDetails implements BookStoreUserDetails {
 
 		private static final long serialVersionUID = 8772606763988236474L;
 
-		private final transient User delegate;
+		private final String userId;
+
+		private final String username;
+
+		private final String password;
+
+		private final transient List<GrantedAuthority> authorities;
+
+		private final transient BookStoreAccess bookStoreAccess;
 
 		CustomUserDetails(User user) {
-			this.delegate = user;
+			this.userId = user.getId();
+			this.username = user.getUsername();
+			this.password = user.getPassword();
+			this.authorities = user.getAuthorities()
+				.stream()
+				.<GrantedAuthority>map(SimpleGrantedAuthority::new)
+				.toList();
+			this.bookStoreAccess = BookStoreAccess.of(this.authorities);
+		}
+
+		@Override
+		public String getUserId() {
+			return this.userId;
 		}
 
 		@Override
 		public String getUsername() {
-			return this.delegate.getUsername();
+			return this.username;
 		}
 
 		@Override
 		public String getPassword() {
-			return this.delegate.getPassword();
+			return this.password;
 		}
 
 		@Override
 		public Collection<? extends GrantedAuthority> getAuthorities() {
-			return this.delegate.getAuthorities()
-				.stream()
-				.map(SimpleGrantedAuthority::new)
-				.collect(Collectors.toList());
+			return this.authorities;
+		}
+
+		@Override
+		public BookStoreAccess getBookStoreAccess() {
+			return this.bookStoreAccess;
 		}
 
 		@Override
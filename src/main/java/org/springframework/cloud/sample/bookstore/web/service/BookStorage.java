@@ -0,0 +1,98 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.service;
+
+import java.util.List;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.cloud.sample.bookstore.web.model.BookSearch;
+import org.springframework.cloud.sample.bookstore.web.model.BookStore;
+
+/**
+ * Persistence strategy for the books held by a {@link BookStore}. Book writes return
+ * the book store holding only the books written, together with the version the write
+ * gave the book store.
+ */
+public interface BookStorage {
+
+	Mono<BookStore> addBook(String storeId, Book book);
+
+	/**
+	 * Add a book only if the book store has the expected version.
+	 * @param storeId the book store ID
+	 * @param book the book to add
+	 * @param expectedVersion the version the book store must have
+	 * @return the book store holding only the added book, or empty if the book store was
+	 * not found with the expected version
+	 */
+	Mono<BookStore> addBook(String storeId, Book book, long expectedVersion);
+
+	Mono<BookStore> addBooks(String storeId, List<Book> books);
+
+	/**
+	 * Find a book together with the version of its book store.
+	 * @param storeId the book store ID
+	 * @param bookId the book ID
+	 * @return the book store holding only the requested book, or empty if the book store
+	 * or the book does not exist
+	 */
+	Mono<BookStore> getBook(String storeId, String bookId);
+
+	Mono<BookStore> removeBook(String storeId, String bookId);
+
+	/**
+	 * Remove a book only if the book store has the expected version, leaving the version
+	 * unchanged if the book does not exist.
+	 * @param storeId the book store ID
+	 * @param bookId the ID of the book to remove
+	 * @param expectedVersion the version the book store must have
+	 * @return the book store holding only the removed book, or empty if the book store
+	 * was not found with the expected version or does not hold the book
+	 */
+	Mono<BookStore> removeBook(String storeId, String bookId, long expectedVersion);
+
+	Mono<BookStore> loadBooks(BookStore bookStore);
+
+	Flux<Book> findBooks(String storeId, String afterBookId, int limit);
+
+	Flux<Book> streamBooks(String storeId);
+
+	/**
+	 * Find the books of a store matching a search, in book ID order.
+	 * @param storeId the book store ID
+	 * @param search the search criteria
+	 * @param afterBookId the ID of the last book of the previous page, or {@code null}
+	 * @param limit the maximum number of books to return, or {@code 0} for no limit
+	 * @return the matching books
+	 */
+	Flux<Book> searchBooks(String storeId, BookSearch search, String afterBookId, int limit);
+
+	Mono<Void> deleteBooks(String storeId);
+
+	/**
+	 * Delete up to {@code limit} books from the store.
+	 * @param storeId the book store ID
+	 * @param limit the maximum number of books to delete
+	 * @return the number of books deleted, fewer than {@code limit} once the store holds
+	 * no more books
+	 */
+	Mono<Long> deleteBooks(String storeId, int limit);
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.service;
+
+import java.util.List;
+
+import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published by {@link BookStoreService} once books have been added to or removed from a
+ * book store, or the book store has been deleted, so that anything holding on to a copy
+ * of the book store can drop it. Each change carries the version the book store has
+ * after it, so that a reader can tell which changes a copy already holds.
+ */
+public class BookStoreChangedEvent extends ApplicationEvent {
+
+	private static final long serialVersionUID = 8121495832469035618L;
+
+	private final ChangeType changeType;
+
+	private final transient List<Book> books;
+
+	private final Long version;
+
+	public BookStoreChangedEvent(String bookStoreId, ChangeType changeType, List<Book> books, Long version) {
+		super(bookStoreId);
+		this.changeType = changeType;
+		this.books = books;
+		this.version = version;
+	}
+
+	public String getBookStoreId() {
+		return (String) getSource();
+	}
+
+	public ChangeType getChangeType() {
+		return this.changeType;
+	}
+
+	/**
+	 * Return the books added or removed.
+	 * @return the books, empty when the book store has been deleted
+	 */
+	public List<Book> getBooks() {
+		return this.books;
+	}
+
+	/**
+	 * Return the version of the book store after the change.
+	 * @return the version, or {@code null} when the book store has been deleted
+	 */
+	public Long getVersion() {
+		return this.version;
+	}
+
+	public enum ChangeType {
+
+		BOOKS_ADDED,
+
+		BOOKS_REMOVED,
+
+		BOOK_STORE_DELETED
+
+	}
+
+}
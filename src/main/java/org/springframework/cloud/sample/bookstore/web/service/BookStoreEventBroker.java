@@ -0,0 +1,177 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.service;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.sample.bookstore.web.service.BookStoreChangedEvent.ChangeType;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fans out the changes made to each book store to the clients following it. Every
+ * subscriber has its own bounded buffer, so a slow subscriber neither holds up the write
+ * path nor the other subscribers; a subscriber whose buffer overflows is failed with an
+ * overflow error and has to read the book store again. Changes published concurrently
+ * are handed to the publisher already emitting rather than waited on, so publishing
+ * never blocks the thread making the change.
+ * <p>
+ * With change streams enabled, the changes of every instance, this one's included, are
+ * relayed through {@link #publish} from a change stream rather than taken from the local
+ * application events, so that all instances deliver them in the same order.
+ */
+@Component
+public class BookStoreEventBroker implements ApplicationListener<BookStoreChangedEvent> {
+
+	private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+
+	private final int bufferSize;
+
+	private final boolean relayed;
+
+	public BookStoreEventBroker(@Value("${bookstore.events.buffer-size:256}") int bufferSize,
+			@Value("${bookstore.change-streams.enabled:false}") boolean relayed) {
+		this.bufferSize = bufferSize;
+		this.relayed = relayed;
+	}
+
+	/**
+	 * Follow the changes made to a book store from now on. The returned flux completes
+	 * once the book store is deleted.
+	 * @param storeId the book store ID
+	 * @return the changes made to the book store
+	 */
+	public Flux<BookStoreChangedEvent> subscribe(String storeId) {
+		return Flux.defer(() -> {
+			SerializedSink sink = this.channels.compute(storeId, (id, channel) -> retain(channel)).sink();
+			return sink.asFlux()
+				.onBackpressureBuffer(this.bufferSize)
+				.takeUntil((event) -> event.getChangeType() == ChangeType.BOOK_STORE_DELETED)
+				.doFinally((signal) -> this.channels.computeIfPresent(storeId,
+						(id, channel) -> (channel.sink() == sink) ? release(channel) : channel));
+		});
+	}
+
+	@Override
+	public void onApplicationEvent(BookStoreChangedEvent event) {
+		if (!this.relayed) {
+			publish(event);
+		}
+	}
+
+	/**
+	 * Deliver a change to the subscribers of its book store.
+	 * @param event the change
+	 */
+	public void publish(BookStoreChangedEvent event) {
+		Channel channel = this.channels.get(event.getBookStoreId());
+		if (channel != null) {
+			channel.sink().next(event);
+		}
+	}
+
+	/**
+	 * Fail every subscriber with an overflow error, so that they read their book stores
+	 * again after changes may have been missed.
+	 */
+	public void resyncAll() {
+		for (String storeId : this.channels.keySet()) {
+			Channel channel = this.channels.remove(storeId);
+			if (channel != null) {
+				channel.sink().error(Exceptions.failWithOverflow("Book store changes may have been missed"));
+			}
+		}
+	}
+
+	private static Channel retain(Channel channel) {
+		if (channel == null) {
+			return new Channel(new SerializedSink(), 1);
+		}
+		return new Channel(channel.sink(), channel.subscribers() + 1);
+	}
+
+	private static Channel release(Channel channel) {
+		return (channel.subscribers() > 1) ? new Channel(channel.sink(), channel.subscribers() - 1) : null;
+	}
+
+	/**
+	 * The sink of a book store and the number of subscribers to it, replaced as a whole so
+	 * that the sink is dropped exactly when its last subscriber leaves.
+	 */
+	private record Channel(SerializedSink sink, int subscribers) {
+
+	}
+
+	/**
+	 * Sink that accepts signals from concurrent publishers without contention: a
+	 * publisher that finds another one emitting queues its signal for that publisher to
+	 * emit, instead of retrying until the sink is free.
+	 */
+	private static final class SerializedSink {
+
+		private final Sinks.Many<BookStoreChangedEvent> sink = Sinks.unsafe().many().multicast().directBestEffort();
+
+		private final Queue<Object> signals = new ConcurrentLinkedQueue<>();
+
+		private final AtomicInteger pending = new AtomicInteger();
+
+		Flux<BookStoreChangedEvent> asFlux() {
+			return this.sink.asFlux();
+		}
+
+		void next(BookStoreChangedEvent event) {
+			this.signals.offer(event);
+			drain();
+		}
+
+		void error(Throwable error) {
+			this.signals.offer(error);
+			drain();
+		}
+
+		private void drain() {
+			if (this.pending.getAndIncrement() != 0) {
+				return;
+			}
+			int missed = 1;
+			do {
+				Object signal;
+				while ((signal = this.signals.poll()) != null) {
+					if (signal instanceof Throwable error) {
+						this.sink.tryEmitError(error);
+					}
+					else {
+						this.sink.tryEmitNext((BookStoreChangedEvent) signal);
+					}
+				}
+				missed = this.pending.addAndGet(-missed);
+			}
+			while (missed != 0);
+		}
+
+	}
+
+}
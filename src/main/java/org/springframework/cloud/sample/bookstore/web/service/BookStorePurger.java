@@ -0,0 +1,142 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cloud.sample.bookstore.web.model.BookStore;
+import org.springframework.cloud.sample.bookstore.web.repository.BookStoreRepository;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reclaims the storage of book stores marked as deleted. Stores are purged one at a time
+ * with a pause between each batch of books, so that deleting a large store does not
+ * starve other book stores of database I/O. Every replica runs a purger, so each store
+ * is claimed before it is purged and the claim is renewed between batches; a replica
+ * only takes over a store once the claim of the replica purging it has timed out.
+ */
+@Component
+public class BookStorePurger implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(BookStorePurger.class);
+
+	private final BookStoreRepository repository;
+
+	private final BookStorage bookStorage;
+
+	private final int batchSize;
+
+	private final Duration batchDelay;
+
+	private final Duration interval;
+
+	private final Duration claimTimeout;
+
+	private final String purgerId = UUID.randomUUID().toString();
+
+	private volatile Disposable subscription;
+
+	public BookStorePurger(BookStoreRepository repository, BookStorage bookStorage,
+			@Value("${bookstore.soft-delete.purge-batch-size:1000}") int batchSize,
+			@Value("${bookstore.soft-delete.purge-batch-delay:100ms}") Duration batchDelay,
+			@Value("${bookstore.soft-delete.purge-interval:1m}") Duration interval,
+			@Value("${bookstore.soft-delete.purge-claim-timeout:5m}") Duration claimTimeout) {
+		this.repository = repository;
+		this.bookStorage = bookStorage;
+		this.batchSize = batchSize;
+		this.batchDelay = batchDelay;
+		this.interval = interval;
+		this.claimTimeout = claimTimeout;
+	}
+
+	@Override
+	public void onApplicationEvent(ApplicationReadyEvent event) {
+		this.subscription = Flux.interval(Duration.ZERO, this.interval)
+			.onBackpressureDrop()
+			.concatMap((tick) -> purgeDeletedBookStores().onErrorResume((ex) -> {
+				logger.warn("Failed to purge deleted book stores", ex);
+				return Mono.empty();
+			}))
+			.subscribe();
+	}
+
+	/**
+	 * Mark a book store as deleted, leaving its books to be purged in the background.
+	 * @param storeId the book store ID
+	 * @return completes once the book store is marked
+	 */
+	public Mono<Void> markDeleted(String storeId) {
+		return this.repository.markDeleted(storeId).then();
+	}
+
+	/**
+	 * Purge all book stores marked as deleted, one store at a time.
+	 * @return completes once every marked book store is purged
+	 */
+	public Mono<Void> purgeDeletedBookStores() {
+		return this.repository.findDeleted()
+			.map(BookStore::getId)
+			.collectList()
+			.flatMapMany(Flux::fromIterable)
+			.concatMap(this::purge)
+			.then();
+	}
+
+	private Mono<Void> purge(String storeId) {
+		return claim(storeId).filter(Boolean::booleanValue).flatMap((claimed) -> purgeClaimed(storeId));
+	}
+
+	private Mono<Void> purgeClaimed(String storeId) {
+		return this.bookStorage.deleteBooks(storeId, this.batchSize).flatMap((deleted) -> {
+			if (deleted < this.batchSize) {
+				return this.repository.deleteById(storeId);
+			}
+			return Mono.delay(this.batchDelay)
+				.then(claim(storeId))
+				.filter(Boolean::booleanValue)
+				.flatMap((claimed) -> purgeClaimed(storeId));
+		});
+	}
+
+	private Mono<Boolean> claim(String storeId) {
+		return Mono.defer(() -> {
+			Instant now = Instant.now();
+			return this.repository.claimForPurge(storeId, this.purgerId, now, now.minus(this.claimTimeout));
+		});
+	}
+
+	@Override
+	public void destroy() {
+		Disposable subscription = this.subscription;
+		if (subscription != null) {
+			subscription.dispose();
+		}
+	}
+
+}
@@ -16,23 +16,48 @@
 
 package org.springframework.cloud.sample.bookstore.web.service;
 
+import java.util.List;
 import java.util.UUID;
 
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.cloud.sample.bookstore.web.model.BookSearch;
 import org.springframework.cloud.sample.bookstore.web.model.BookStore;
 import org.springframework.cloud.sample.bookstore.web.repository.BookStoreRepository;
+import org.springframework.cloud.sample.bookstore.web.service.BookStoreChangedEvent.ChangeType;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 @Service
 public class BookStoreService {
 
+	private static final int MAX_PAGE_SIZE = 1000;
+
 	private final BookStoreRepository repository;
 
-	public BookStoreService(BookStoreRepository bookStoreRepository) {
+	private final BookStorage bookStorage;
+
+	private final BookStorePurger purger;
+
+	private final ApplicationEventPublisher eventPublisher;
+
+	private final int importBatchSize;
+
+	private final boolean softDelete;
+
+	public BookStoreService(BookStoreRepository bookStoreRepository, BookStorage bookStorage, BookStorePurger purger,
+			ApplicationEventPublisher eventPublisher, @Value("${bookstore.import-batch-size:500}") int importBatchSize,
+			@Value("${bookstore.soft-delete.enabled:false}") boolean softDelete) {
 		this.repository = bookStoreRepository;
+		this.bookStorage = bookStorage;
+		this.purger = purger;
+		this.eventPublisher = eventPublisher;
+		this.importBatchSize = importBatchSize;
+		this.softDelete = softDelete;
 	}
 
 	public Mono<BookStore> createBookStore(String storeId) {
@@ -45,30 +70,187 @@ public class BookStoreService {
 
 	public Mono<BookStore> getBookStore(String storeId) {
 		return this.repository.findById(storeId)
+			.filter((bookStore) -> !bookStore.isDeleted())
+			.switchIfEmpty(Mono.error(new IllegalArgumentException("Invalid book store ID " + storeId + ".")))
+			.flatMap(this.bookStorage::loadBooks);
+	}
+
+	/**
+	 * Return the version of a book store without loading its books.
+	 * @param storeId the book store ID
+	 * @return the version of the book store
+	 */
+	public Mono<Long> getBookStoreVersion(String storeId) {
+		return this.repository.findVersionById(storeId)
+			.map(BookStore::getVersion)
 			.switchIfEmpty(Mono.error(new IllegalArgumentException("Invalid book store ID " + storeId + ".")));
 	}
 
+	public Flux<Book> getBooksFromStore(String storeId, String afterBookId, int limit) {
+		return verifyPageSize(limit).then(verifyBookStore(storeId))
+			.thenMany(this.bookStorage.findBooks(storeId, afterBookId, limit));
+	}
+
+	public Flux<Book> streamBooksFromStore(String storeId) {
+		return verifyBookStore(storeId).thenMany(this.bookStorage.streamBooks(storeId));
+	}
+
+	/**
+	 * Return a page of the books in a book store matching a search, in book ID order.
+	 * @param storeId the book store ID
+	 * @param search the search criteria
+	 * @param afterBookId the ID of the last book of the previous page, or {@code null}
+	 * @param limit the maximum number of books to return
+	 * @return the matching books
+	 */
+	public Flux<Book> searchBooksInStore(String storeId, BookSearch search, String afterBookId, int limit) {
+		return verifyPageSize(limit).then(verifyBookStore(storeId))
+			.thenMany(this.bookStorage.searchBooks(storeId, search, afterBookId, limit));
+	}
+
+	/**
+	 * Stream all the books in a book store matching a search, in book ID order.
+	 * @param storeId the book store ID
+	 * @param search the search criteria
+	 * @return the matching books
+	 */
+	public Flux<Book> streamBookSearch(String storeId, BookSearch search) {
+		return verifyBookStore(storeId).thenMany(this.bookStorage.searchBooks(storeId, search, null, 0));
+	}
+
+	/**
+	 * Delete a book store. With soft delete enabled, the store is only marked as deleted
+	 * and rejected from then on, and its books are purged in the background.
+	 * @param id the book store ID
+	 * @return completes once the store is deleted or marked as deleted
+	 */
 	public Mono<Void> deleteBookStore(String id) {
-		return this.repository.deleteById(id);
+		Mono<Void> delete = this.softDelete ? this.purger.markDeleted(id)
+				: this.bookStorage.deleteBooks(id).then(this.repository.deleteById(id));
+		return delete.then(Mono.fromRunnable(() -> this.eventPublisher
+			.publishEvent(new BookStoreChangedEvent(id, ChangeType.BOOK_STORE_DELETED, List.of(), null))));
 	}
 
 	public Mono<Book> putBookInStore(String storeId, Book book) {
-		return generateRandomId().flatMap((bookId) -> Mono.just(new Book(bookId, book)))
-			.flatMap((bookWithId) -> getBookStore(storeId).flatMap((store) -> {
-				store.addBook(bookWithId);
-				return Mono.just(store);
-			}).flatMap((store) -> this.repository.save(store)).thenReturn(bookWithId));
+		return generateRandomId().flatMap((bookId) -> Mono.just(new Book(bookId, storeId, book)))
+			.flatMap((bookWithId) -> this.bookStorage.addBook(storeId, bookWithId))
+			.switchIfEmpty(Mono.error(new IllegalArgumentException("Invalid book store ID " + storeId + ".")))
+			.doOnNext((added) -> publishChanged(added, ChangeType.BOOKS_ADDED))
+			.map(BookStoreService::singleBook);
+	}
+
+	/**
+	 * Add a book to a book store, provided the store still has the expected version.
+	 * @param storeId the book store ID
+	 * @param book the book to add
+	 * @param expectedVersion the version the book store must have, or {@code null} to add
+	 * the book unconditionally
+	 * @return the added book, or a {@link BookStoreModifiedException} if the book store
+	 * has a different version
+	 */
+	public Mono<Book> putBookInStore(String storeId, Book book, Long expectedVersion) {
+		if (expectedVersion == null) {
+			return putBookInStore(storeId, book);
+		}
+		return generateRandomId().flatMap((bookId) -> Mono.just(new Book(bookId, storeId, book)))
+			.flatMap((bookWithId) -> this.bookStorage.addBook(storeId, bookWithId, expectedVersion))
+			.switchIfEmpty(conditionalWriteFailed(storeId, null, expectedVersion))
+			.doOnNext((added) -> publishChanged(added, ChangeType.BOOKS_ADDED))
+			.map(BookStoreService::singleBook);
 	}
 
-	public Mono<Book> getBookFromStore(String storeId, String bookId) {
-		return getBookStore(storeId).flatMap((store) -> Mono.justOrEmpty(store.getBookById(bookId)))
+	public Flux<Book> putBooksInStore(String storeId, Flux<Book> books) {
+		return verifyBookStore(storeId).thenMany(books.buffer(this.importBatchSize)
+			.concatMap((batch) -> assignIds(storeId, batch))
+			.concatMap((batch) -> addBooks(storeId, batch))
+			.doOnNext((added) -> publishChanged(added, ChangeType.BOOKS_ADDED))
+			.flatMapIterable(BookStore::getBooks));
+	}
+
+	/**
+	 * Return a book together with the version of its book store, read with a single query
+	 * where the book storage allows.
+	 * @param storeId the book store ID
+	 * @param bookId the book ID
+	 * @return the book store holding only the requested book
+	 */
+	public Mono<BookStore> getBookWithVersion(String storeId, String bookId) {
+		return this.bookStorage.getBook(storeId, bookId)
 			.switchIfEmpty(Mono.error(new IllegalArgumentException("Invalid book ID " + storeId + ":" + bookId + ".")));
 	}
 
 	public Mono<Book> removeBookFromStore(String storeId, String bookId) {
-		return getBookStore(storeId).flatMap((store) -> Mono.justOrEmpty(store.remove(bookId))
+		return verifyBookStore(storeId).then(this.bookStorage.removeBook(storeId, bookId))
 			.switchIfEmpty(Mono.error(new IllegalArgumentException("Invalid book ID " + storeId + ":" + bookId + ".")))
-			.flatMap((book) -> this.repository.save(store).thenReturn(book)));
+			.doOnNext((removed) -> publishChanged(removed, ChangeType.BOOKS_REMOVED))
+			.map(BookStoreService::singleBook);
+	}
+
+	/**
+	 * Remove a book from a book store, provided the store still has the expected version.
+	 * @param storeId the book store ID
+	 * @param bookId the ID of the book to remove
+	 * @param expectedVersion the version the book store must have, or {@code null} to
+	 * remove the book unconditionally
+	 * @return the removed book, or a {@link BookStoreModifiedException} if the book store
+	 * has a different version
+	 */
+	public Mono<Book> removeBookFromStore(String storeId, String bookId, Long expectedVersion) {
+		if (expectedVersion == null) {
+			return removeBookFromStore(storeId, bookId);
+		}
+		return this.bookStorage.removeBook(storeId, bookId, expectedVersion)
+			.switchIfEmpty(conditionalWriteFailed(storeId, bookId, expectedVersion))
+			.doOnNext((removed) -> publishChanged(removed, ChangeType.BOOKS_REMOVED))
+			.map(BookStoreService::singleBook);
+	}
+
+	/**
+	 * Report why a conditional write matched nothing: the book store does not exist, it
+	 * no longer has the expected version, or it does not hold the book.
+	 */
+	private <T> Mono<T> conditionalWriteFailed(String storeId, String bookId, long expectedVersion) {
+		return getBookStoreVersion(storeId).flatMap((version) -> {
+			if (version != expectedVersion || bookId == null) {
+				return Mono.error(new BookStoreModifiedException(storeId, expectedVersion));
+			}
+			return Mono.error(new IllegalArgumentException("Invalid book ID " + storeId + ":" + bookId + "."));
+		});
+	}
+
+	private Mono<Void> verifyPageSize(int limit) {
+		if (limit < 1 || limit > MAX_PAGE_SIZE) {
+			return Mono.error(new IllegalArgumentException(
+					"Invalid page size " + limit + ", must be between 1 and " + MAX_PAGE_SIZE + "."));
+		}
+		return Mono.empty();
+	}
+
+	private Mono<Void> verifyBookStore(String storeId) {
+		return this.repository.existsActiveById(storeId)
+			.filter(Boolean::booleanValue)
+			.switchIfEmpty(Mono.error(new IllegalArgumentException("Invalid book store ID " + storeId + ".")))
+			.then();
+	}
+
+	private Mono<List<Book>> assignIds(String storeId, List<Book> books) {
+		return Mono.fromCallable(() -> books.stream()
+			.map((book) -> new Book(UUID.randomUUID().toString(), storeId, book))
+			.toList()).subscribeOn(Schedulers.boundedElastic());
+	}
+
+	private Mono<BookStore> addBooks(String storeId, List<Book> books) {
+		return this.bookStorage.addBooks(storeId, books)
+			.switchIfEmpty(Mono.error(new IllegalArgumentException("Invalid book store ID " + storeId + ".")));
+	}
+
+	private void publishChanged(BookStore written, ChangeType changeType) {
+		this.eventPublisher.publishEvent(
+				new BookStoreChangedEvent(written.getId(), changeType, written.getBooks(), written.getVersion()));
+	}
+
+	private static Book singleBook(BookStore written) {
+		return written.getBooks().get(0);
 	}
 
 	private Mono<String> generateRandomId() {
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.cloud.sample.bookstore.web.model.BookSuggestions;
+import org.springframework.cloud.sample.bookstore.web.repository.BookStoreRepository;
+import org.springframework.cloud.sample.bookstore.web.service.BookStoreChangedEvent.ChangeType;
+import org.springframework.context.ApplicationListener;
+import org.springframework.util.StringUtils;
+
+/**
+ * Suggests the titles and authors of a book store's books from a prefix typed by a user.
+ * The prefix trees of a book store are built from its books on first use and kept in
+ * memory, bounded by their approximate total size in bytes and a time-to-live; the
+ * stores used least are evicted first. Books added or removed through
+ * {@link BookStoreService} are applied to the trees as {@link BookStoreChangedEvent}s are
+ * received, and a change arriving while the trees are being built discards them, so they
+ * are built again with the change on their next use.
+ * <p>
+ * Hit ratio and build latency are published as {@code cache.*} metrics tagged with
+ * {@code cache=bookSuggestions}.
+ */
+public class BookSuggestionIndex implements ApplicationListener<BookStoreChangedEvent>, MeterBinder {
+
+	private static final String CACHE_NAME = "bookSuggestions";
+
+	private static final int MAX_SUGGESTIONS = 100;
+
+	private final BookStoreRepository repository;
+
+	private final BookStorage bookStorage;
+
+	private final AsyncCache<String, BookStoreIndex> cache;
+
+	public BookSuggestionIndex(BookStoreRepository repository, BookStorage bookStorage, long maximumBytes,
+			Duration timeToLive) {
+		this.repository = repository;
+		this.bookStorage = bookStorage;
+		this.cache = Caffeine.newBuilder()
+			.maximumWeight(maximumBytes)
+			.weigher((String storeId, BookStoreIndex index) -> (int) Math.min(index.estimatedSize(),
+					Integer.MAX_VALUE))
+			.expireAfterWrite(timeToLive)
+			.recordStats()
+			.buildAsync();
+	}
+
+	/**
+	 * Return the titles and authors of a book store containing a word that starts with
+	 * the given prefix, ignoring case.
+	 * @param storeId the book store ID
+	 * @param prefix the prefix typed by the user
+	 * @param limit the maximum number of titles and of authors to return
+	 * @return the suggested titles and authors, ordered by their text from the matching
+	 * word on
+	 */
+	public Mono<BookSuggestions> suggest(String storeId, String prefix, int limit) {
+		if (limit < 1 || limit > MAX_SUGGESTIONS) {
+			return Mono.error(new IllegalArgumentException(
+					"Invalid suggestion limit " + limit + ", must be between 1 and " + MAX_SUGGESTIONS + "."));
+		}
+		if (!StringUtils.hasText(prefix)) {
+			return Mono.just(new BookSuggestions(List.of(), List.of()));
+		}
+		return Mono
+			.fromFuture(() -> this.cache.get(storeId, (key, executor) -> buildIndex(key).toFuture()), true)
+			.map((index) -> index.suggest(prefix, limit));
+	}
+
+	public void evict(String storeId) {
+		this.cache.synchronous().invalidate(storeId);
+	}
+
+	public void evictAll() {
+		this.cache.synchronous().invalidateAll();
+	}
+
+	@Override
+	public void onApplicationEvent(BookStoreChangedEvent event) {
+		if (event.getChangeType() == ChangeType.BOOK_STORE_DELETED) {
+			evict(event.getBookStoreId());
+			return;
+		}
+		this.cache.asMap().computeIfPresent(event.getBookStoreId(), (storeId, future) -> {
+			if (!future.isDone() || future.isCompletedExceptionally()) {
+				return null;
+			}
+			BookStoreIndex index = future.join();
+			for (Book book : event.getBooks()) {
+				if (event.getChangeType() == ChangeType.BOOKS_ADDED) {
+					index.add(book);
+				}
+				else {
+					index.remove(book);
+				}
+			}
+			// a new future has the index weighed again
+			return CompletableFuture.completedFuture(index);
+		});
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CaffeineCacheMetrics.monitor(registry, this.cache, CACHE_NAME);
+	}
+
+	private Mono<BookStoreIndex> buildIndex(String storeId) {
+		return this.repository.existsActiveById(storeId)
+			.filter(Boolean::booleanValue)
+			.switchIfEmpty(Mono.error(new IllegalArgumentException("Invalid book store ID " + storeId + ".")))
+			.thenMany(this.bookStorage.streamBooks(storeId))
+			.collect(BookStoreIndex::new, BookStoreIndex::add);
+	}
+
+	/**
+	 * The prefix trees of the titles and authors of one book store.
+	 */
+	private static final class BookStoreIndex {
+
+		private final PrefixTree titles = new PrefixTree();
+
+		private final PrefixTree authors = new PrefixTree();
+
+		void add(Book book) {
+			this.titles.add(book.getTitle());
+			this.authors.add(book.getAuthor());
+		}
+
+		void remove(Book book) {
+			this.titles.remove(book.getTitle());
+			this.authors.remove(book.getAuthor());
+		}
+
+		BookSuggestions suggest(String prefix, int limit) {
+			return new BookSuggestions(this.titles.suggest(prefix, limit), this.authors.suggest(prefix, limit));
+		}
+
+		long estimatedSize() {
+			return this.titles.estimatedSize() + this.authors.estimatedSize();
+		}
+
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.service;
+
+import java.util.List;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.cloud.sample.bookstore.web.model.BookSearch;
+import org.springframework.cloud.sample.bookstore.web.model.BookStore;
+import org.springframework.cloud.sample.bookstore.web.repository.BookRepository;
+import org.springframework.cloud.sample.bookstore.web.repository.BookStoreRepository;
+import org.springframework.data.domain.Limit;
+
+/**
+ * {@link BookStorage} that keeps books in their own collection, indexed by book store
+ * ID, so that single-book operations do not depend on the size of the store. The version
+ * of the book store is incremented after books are written, so that a reader never
+ * pairs a new version with books read before the write.
+ * <p>
+ * A conditional write first claims the expected version by incrementing it in a single
+ * update of the book store, so that of several writers expecting the same version only
+ * one goes ahead, and then writes the book and increments the version again.
+ */
+public class CollectionBookStorage implements BookStorage {
+
+	private final BookStoreRepository bookStoreRepository;
+
+	private final BookRepository bookRepository;
+
+	public CollectionBookStorage(BookStoreRepository bookStoreRepository, BookRepository bookRepository) {
+		this.bookStoreRepository = bookStoreRepository;
+		this.bookRepository = bookRepository;
+	}
+
+	@Override
+	public Mono<BookStore> addBook(String storeId, Book book) {
+		return this.bookStoreRepository.existsActiveById(storeId)
+			.filter(Boolean::booleanValue)
+			.flatMap((exists) -> this.bookRepository.save(book))
+			.flatMap((saved) -> written(storeId, List.of(saved)));
+	}
+
+	@Override
+	public Mono<BookStore> addBook(String storeId, Book book, long expectedVersion) {
+		return claimVersion(storeId, expectedVersion).flatMap((claimed) -> addBook(storeId, book));
+	}
+
+	@Override
+	public Mono<BookStore> addBooks(String storeId, List<Book> books) {
+		return this.bookStoreRepository.existsActiveById(storeId)
+			.filter(Boolean::booleanValue)
+			.flatMap((exists) -> this.bookRepository.insertBooks(books).collectList())
+			.flatMap((saved) -> written(storeId, saved));
+	}
+
+	@Override
+	public Mono<BookStore> getBook(String storeId, String bookId) {
+		// the version is read first, so it is never newer than the book
+		return this.bookStoreRepository.findVersionById(storeId)
+			.flatMap((store) -> this.bookRepository.findByIdAndBookStoreId(bookId, storeId)
+				.map((book) -> new BookStore(storeId, List.of(book), false, store.getVersion())));
+	}
+
+	@Override
+	public Mono<BookStore> removeBook(String storeId, String bookId) {
+		return this.bookRepository.deleteByIdAndBookStoreId(bookId, storeId)
+			.flatMap((removed) -> written(storeId, List.of(removed)));
+	}
+
+	@Override
+	public Mono<BookStore> removeBook(String storeId, String bookId, long expectedVersion) {
+		return this.bookRepository.existsByIdAndBookStoreId(bookId, storeId)
+			.filter(Boolean::booleanValue)
+			.flatMap((exists) -> claimVersion(storeId, expectedVersion))
+			.flatMap((claimed) -> removeBook(storeId, bookId));
+	}
+
+	@Override
+	public Mono<BookStore> loadBooks(BookStore bookStore) {
+		return this.bookRepository.findByBookStoreId(bookStore.getId())
+			.doOnNext(bookStore::addBook)
+			.then(Mono.just(bookStore));
+	}
+
+	@Override
+	public Flux<Book> findBooks(String storeId, String afterBookId, int limit) {
+		if (afterBookId == null) {
+			return this.bookRepository.findByBookStoreIdOrderByIdAsc(storeId, Limit.of(limit));
+		}
+		return this.bookRepository.findByBookStoreIdAndIdGreaterThanOrderByIdAsc(storeId, afterBookId,
+				Limit.of(limit));
+	}
+
+	@Override
+	public Flux<Book> streamBooks(String storeId) {
+		return this.bookRepository.findByBookStoreId(storeId);
+	}
+
+	@Override
+	public Flux<Book> searchBooks(String storeId, BookSearch search, String afterBookId, int limit) {
+		return this.bookRepository.searchBooks(storeId, search, afterBookId, limit);
+	}
+
+	@Override
+	public Mono<Void> deleteBooks(String storeId) {
+		return this.bookRepository.deleteByBookStoreId(storeId).then();
+	}
+
+	@Override
+	public Mono<Long> deleteBooks(String storeId, int limit) {
+		return this.bookRepository.deleteBooks(storeId, limit);
+	}
+
+	private Mono<BookStore> written(String storeId, List<Book> books) {
+		return this.bookStoreRepository.incrementVersion(storeId)
+			.map((version) -> new BookStore(storeId, books, false, version));
+	}
+
+	private Mono<Boolean> claimVersion(String storeId, long expectedVersion) {
+		return this.bookStoreRepository.incrementVersion(storeId, expectedVersion).filter(Boolean::booleanValue);
+	}
+
+}
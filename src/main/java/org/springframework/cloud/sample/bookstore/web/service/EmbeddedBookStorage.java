@@ -0,0 +1,105 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.service;
+
+import java.util.List;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.cloud.sample.bookstore.web.model.BookSearch;
+import org.springframework.cloud.sample.bookstore.web.model.BookStore;
+import org.springframework.cloud.sample.bookstore.web.repository.BookStoreRepository;
+
+/**
+ * {@link BookStorage} that keeps books embedded in the {@link BookStore} document.
+ * <p>
+ * Embedded books cannot be indexed per store, so a search unwinds the books of the store
+ * and filters them, and every page of books unwinds and sorts them, each taking time
+ * proportional to the size of the store. Large stores that are searched or paged through
+ * should use collection book storage, where searches and pages are served by indexes.
+ */
+public class EmbeddedBookStorage implements BookStorage {
+
+	private final BookStoreRepository repository;
+
+	public EmbeddedBookStorage(BookStoreRepository bookStoreRepository) {
+		this.repository = bookStoreRepository;
+	}
+
+	@Override
+	public Mono<BookStore> addBook(String storeId, Book book) {
+		return this.repository.pushBook(storeId, book);
+	}
+
+	@Override
+	public Mono<BookStore> addBook(String storeId, Book book, long expectedVersion) {
+		return this.repository.pushBook(storeId, book, expectedVersion);
+	}
+
+	@Override
+	public Mono<BookStore> addBooks(String storeId, List<Book> books) {
+		return this.repository.pushBooks(storeId, books);
+	}
+
+	@Override
+	public Mono<BookStore> getBook(String storeId, String bookId) {
+		return this.repository.findByIdWithBook(storeId, bookId);
+	}
+
+	@Override
+	public Mono<BookStore> removeBook(String storeId, String bookId) {
+		return this.repository.pullBook(storeId, bookId);
+	}
+
+	@Override
+	public Mono<BookStore> removeBook(String storeId, String bookId, long expectedVersion) {
+		return this.repository.pullBook(storeId, bookId, expectedVersion);
+	}
+
+	@Override
+	public Mono<BookStore> loadBooks(BookStore bookStore) {
+		return Mono.just(bookStore);
+	}
+
+	@Override
+	public Flux<Book> findBooks(String storeId, String afterBookId, int limit) {
+		return this.repository.findBooks(storeId, afterBookId, limit);
+	}
+
+	@Override
+	public Flux<Book> streamBooks(String storeId) {
+		return this.repository.streamBooks(storeId);
+	}
+
+	@Override
+	public Flux<Book> searchBooks(String storeId, BookSearch search, String afterBookId, int limit) {
+		return this.repository.searchBooks(storeId, search, afterBookId, limit);
+	}
+
+	@Override
+	public Mono<Void> deleteBooks(String storeId) {
+		return Mono.empty();
+	}
+
+	@Override
+	public Mono<Long> deleteBooks(String storeId, int limit) {
+		return Mono.just(0L);
+	}
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.service;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Trie of terms, each reachable from the start of every word it contains, so a prefix of
+ * any word finds the whole term. Keys are matched ignoring case; children are kept in
+ * sorted arrays, so suggestions come out in key order and a node costs little more than
+ * its references. Terms are counted, so a term added for several books is only removed
+ * with the last of them.
+ */
+class PrefixTree {
+
+	private static final char[] NO_KEYS = {};
+
+	private static final Node[] NO_CHILDREN = {};
+
+	/**
+	 * Rough heap cost of a node, its child arrays and one entry in its parent's arrays.
+	 */
+	private static final int NODE_BYTES = 48;
+
+	/**
+	 * Rough heap cost of a term entry, excluding the characters of the term.
+	 */
+	private static final int TERM_BYTES = 64;
+
+	private final Node root = new Node();
+
+	private int nodes = 1;
+
+	private long termBytes;
+
+	synchronized void add(String term) {
+		if (term == null || term.isBlank()) {
+			return;
+		}
+		for (String key : keys(term)) {
+			Node node = this.root;
+			for (int i = 0; i < key.length(); i++) {
+				node = node.getOrAddChild(key.charAt(i));
+			}
+			if (node.terms == null) {
+				node.terms = new TreeMap<>();
+			}
+			if (node.terms.merge(term, 1, Integer::sum) == 1) {
+				this.termBytes += TERM_BYTES + 2L * term.length();
+			}
+		}
+	}
+
+	synchronized void remove(String term) {
+		if (term == null || term.isBlank()) {
+			return;
+		}
+		for (String key : keys(term)) {
+			remove(this.root, key, 0, term);
+		}
+	}
+
+	/**
+	 * Return the terms containing a word starting with the given prefix, ignoring case.
+	 * @param prefix the prefix
+	 * @param limit the maximum number of terms to return
+	 * @return the matching terms, ordered by their text from the matching word on
+	 */
+	synchronized List<String> suggest(String prefix, int limit) {
+		String key = prefix.strip().toLowerCase(Locale.ROOT);
+		Node node = this.root;
+		for (int i = 0; i < key.length() && node != null; i++) {
+			node = node.getChild(key.charAt(i));
+		}
+		if (node == null) {
+			return List.of();
+		}
+		Set<String> terms = new LinkedHashSet<>();
+		collect(node, terms, limit);
+		return List.copyOf(terms);
+	}
+
+	/**
+	 * Return the approximate number of bytes the tree occupies on the heap.
+	 */
+	synchronized long estimatedSize() {
+		return (long) this.nodes * NODE_BYTES + this.termBytes;
+	}
+
+	private boolean remove(Node node, String key, int depth, String term) {
+		if (depth == key.length()) {
+			Integer count = (node.terms != null) ? node.terms.get(term) : null;
+			if (count != null && count > 1) {
+				node.terms.put(term, count - 1);
+			}
+			else if (count != null) {
+				node.terms.remove(term);
+				this.termBytes -= TERM_BYTES + 2L * term.length();
+				if (node.terms.isEmpty()) {
+					node.terms = null;
+				}
+			}
+		}
+		else {
+			Node child = node.getChild(key.charAt(depth));
+			if (child != null && remove(child, key, depth + 1, term)) {
+				node.removeChild(key.charAt(depth));
+				this.nodes--;
+			}
+		}
+		return node != this.root && node.terms == null && node.keys.length == 0;
+	}
+
+	private static void collect(Node node, Set<String> terms, int limit) {
+		if (terms.size() >= limit) {
+			return;
+		}
+		if (node.terms != null) {
+			for (String term : node.terms.keySet()) {
+				terms.add(term);
+				if (terms.size() >= limit) {
+					return;
+				}
+			}
+		}
+		for (Node child : node.children) {
+			collect(child, terms, limit);
+			if (terms.size() >= limit) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Return the lower case keys of a term, one from the start of each word.
+	 */
+	private static Set<String> keys(String term) {
+		String normalized = term.strip().toLowerCase(Locale.ROOT);
+		Set<String> keys = new LinkedHashSet<>();
+		for (int i = 0; i < normalized.length(); i++) {
+			boolean wordStart = Character.isLetterOrDigit(normalized.charAt(i))
+					&& (i == 0 || !Character.isLetterOrDigit(normalized.charAt(i - 1)));
+			if (wordStart) {
+				keys.add(normalized.substring(i));
+			}
+		}
+		return keys;
+	}
+
+	private final class Node {
+
+		private char[] keys = NO_KEYS;
+
+		private Node[] children = NO_CHILDREN;
+
+		private Map<String, Integer> terms;
+
+		Node getChild(char key) {
+			int index = Arrays.binarySearch(this.keys, key);
+			return (index >= 0) ? this.children[index] : null;
+		}
+
+		Node getOrAddChild(char key) {
+			int index = Arrays.binarySearch(this.keys, key);
+			if (index >= 0) {
+				return this.children[index];
+			}
+			int insertion = -index - 1;
+			Node child = new Node();
+			char[] keys = new char[this.keys.length + 1];
+			Node[] children = new Node[this.children.length + 1];
+			System.arraycopy(this.keys, 0, keys, 0, insertion);
+			System.arraycopy(this.children, 0, children, 0, insertion);
+			keys[insertion] = key;
+			children[insertion] = child;
+			System.arraycopy(this.keys, insertion, keys, insertion + 1, this.keys.length - insertion);
+			System.arraycopy(this.children, insertion, children, insertion + 1, this.children.length - insertion);
+			this.keys = keys;
+			this.children = children;
+			PrefixTree.this.nodes++;
+			return child;
+		}
+
+		void removeChild(char key) {
+			int index = Arrays.binarySearch(this.keys, key);
+			if (index < 0) {
+				return;
+			}
+			char[] keys = new char[this.keys.length - 1];
+			Node[] children = new Node[this.children.length - 1];
+			System.arraycopy(this.keys, 0, keys, 0, index);
+			System.arraycopy(this.children, 0, children, 0, index);
+			System.arraycopy(this.keys, index + 1, keys, index, keys.length - index);
+			System.arraycopy(this.children, index + 1, children, index, children.length - index);
+			this.keys = this.keys.length == 1 ? NO_KEYS : keys;
+			this.children = this.children.length == 1 ? NO_CHILDREN : children;
+		}
+
+	}
+
+}
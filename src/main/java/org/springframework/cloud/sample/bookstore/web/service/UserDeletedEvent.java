@@ -0,0 +1,37 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.service;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published by {@link UserService} once a user has been deleted, so that anything
+ * holding on to that user's credentials can drop them.
+ */
+public class UserDeletedEvent extends ApplicationEvent {
+
+	private static final long serialVersionUID = -3350474251925458316L;
+
+	public UserDeletedEvent(String username) {
+		super(username);
+	}
+
+	public String getUsername() {
+		return (String) getSource();
+	}
+
+}
@@ -17,13 +17,18 @@
 package org.springframework.cloud.sample.bookstore.web.service;
 
 import java.security.SecureRandom;
+import java.util.Collection;
 
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.cloud.sample.bookstore.web.model.User;
 import org.springframework.cloud.sample.bookstore.web.repository.UserRepository;
 import org.springframework.cloud.sample.bookstore.web.security.SecurityAuthorities;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
@@ -40,34 +45,111 @@ public class UserService {
 
 	private final PasswordEncoder passwordEncoder;
 
-	public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+	private final Scheduler passwordEncoderScheduler;
+
+	private final ApplicationEventPublisher eventPublisher;
+
+	public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder,
+			@Qualifier("passwordEncoderScheduler") Scheduler passwordEncoderScheduler,
+			ApplicationEventPublisher eventPublisher) {
 		this.userRepository = userRepository;
 		this.passwordEncoder = passwordEncoder;
+		this.passwordEncoderScheduler = passwordEncoderScheduler;
+		this.eventPublisher = eventPublisher;
 	}
 
 	public void initializeUsers() {
 		this.userRepository.count().flatMap((count) -> {
 			if (count == 0) {
-				return this.userRepository.save(adminUser());
+				return adminUser().flatMap(this.userRepository::save);
 			}
 			return Mono.empty();
 		}).subscribe();
 	}
 
 	public Mono<User> createUser(String username, String... authorities) {
-		return generatePassword().flatMap((password) -> Mono.fromCallable(() -> this.passwordEncoder.encode(password))
-			.flatMap((encodedPassword) -> this.userRepository.save(new User(username, encodedPassword, authorities)))
-			.thenReturn(new User(username, password, authorities)));
+		return generateUser(username, authorities).flatMap((user) -> saveUser(user).thenReturn(user));
+	}
+
+	/**
+	 * Generate a user with a random password, without saving it.
+	 * @param username the username
+	 * @param authorities the authorities to grant
+	 * @return the user, with the plain text password
+	 */
+	public Mono<User> generateUser(String username, String... authorities) {
+		return generatePassword().map((password) -> new User(username, password, authorities));
+	}
+
+	/**
+	 * Save a user generated by {@link #generateUser(String, String...)}, storing the
+	 * encoded password.
+	 * @param user the user, with the plain text password
+	 * @return the saved user
+	 */
+	public Mono<User> saveUser(User user) {
+		String[] authorities = user.getAuthorities().toArray(new String[0]);
+		return encode(user.getPassword())
+			.map((encodedPassword) -> new User(user.getUsername(), encodedPassword, authorities))
+			.flatMap(this.userRepository::save);
+	}
+
+	/**
+	 * Delete a user saved by {@link #saveUser(User)} whose credentials were never handed
+	 * out, such as the user of a binding that another request created first.
+	 * @param user the saved user
+	 * @return completes when the user has been deleted
+	 */
+	public Mono<Void> discardUser(User user) {
+		return this.userRepository.deleteById(user.getId());
 	}
 
 	public Mono<Void> deleteUser(String username) {
 		return this.userRepository.findByUsername(username)
-			.flatMap((user) -> this.userRepository.deleteById(user.getId()));
+			.flatMap((user) -> this.userRepository.deleteById(user.getId()))
+			.then(Mono.fromRunnable(() -> publishUserDeleted(username)));
+	}
+
+	/**
+	 * Delete all users granted access to a book store with a single bulk delete. Only the
+	 * users found are deleted, so that every deleted user is reported; a user granted
+	 * access while they are deleted is left to the orphan reconciliation.
+	 * @param bookStoreId the book store ID
+	 * @return the usernames of the deleted users
+	 */
+	public Flux<String> deleteBookStoreUsers(String bookStoreId) {
+		String authority = SecurityAuthorities.BOOK_STORE_ID_PREFIX + bookStoreId;
+		return this.userRepository.findByAuthorities(authority)
+			.map(User::getUsername)
+			.collectList()
+			.filter((usernames) -> !usernames.isEmpty())
+			.flatMapMany((usernames) -> this.userRepository.deleteByUsernameIn(usernames)
+				.thenMany(Flux.fromIterable(usernames)))
+			.doOnNext(this::publishUserDeleted);
+	}
+
+	/**
+	 * Delete users by username with a single bulk delete.
+	 * @param usernames the usernames
+	 * @return the number of deleted users
+	 */
+	public Mono<Long> deleteUsers(Collection<String> usernames) {
+		return this.userRepository.deleteByUsernameIn(usernames)
+			.doOnNext((count) -> usernames.forEach(this::publishUserDeleted));
+	}
+
+	private void publishUserDeleted(String username) {
+		this.eventPublisher.publishEvent(new UserDeletedEvent(username));
+	}
+
+	private Mono<User> adminUser() {
+		return encode("supersecret").map((encodedPassword) -> new User("admin", encodedPassword,
+				SecurityAuthorities.ADMIN, SecurityAuthorities.FULL_ACCESS));
 	}
 
-	private User adminUser() {
-		return new User("admin", this.passwordEncoder.encode("supersecret"), SecurityAuthorities.ADMIN,
-				SecurityAuthorities.FULL_ACCESS);
+	private Mono<String> encode(String password) {
+		return Mono.fromCallable(() -> this.passwordEncoder.encode(password))
+			.subscribeOn(this.passwordEncoderScheduler);
 	}
 
 	private Mono<String> generatePassword() {
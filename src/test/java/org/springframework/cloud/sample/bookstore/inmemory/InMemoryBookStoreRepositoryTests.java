@@ -0,0 +1,78 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.inmemory;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.cloud.sample.bookstore.web.model.BookStore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InMemoryBookStoreRepositoryTests {
+
+	private final InMemoryBookStoreRepository repository = new InMemoryBookStoreRepository();
+
+	@Test
+	public void pushedBooksDoNotChangeStoresAlreadyRead() {
+		Book first = book("book-1");
+		Book second = book("book-2");
+		Book third = book("book-3");
+
+		StepVerifier.create(this.repository.save(new BookStore("store-id"))).expectNextCount(1).verifyComplete();
+		StepVerifier.create(this.repository.pushBook("store-id", first)).expectNextCount(1).verifyComplete();
+		BookStore read = this.repository.findById("store-id").block();
+
+		StepVerifier.create(this.repository.pushBooks("store-id", List.of(second, third)))
+			.assertNext((pushed) -> assertThat(pushed.getVersion()).isEqualTo(2))
+			.verifyComplete();
+
+		assertThat(read.getBooks()).containsExactly(first);
+		assertThat(read.getVersion()).isEqualTo(1);
+		StepVerifier.create(this.repository.streamBooks("store-id"))
+			.expectNext(first, second, third)
+			.verifyComplete();
+	}
+
+	@Test
+	public void pulledBookIsRemovedOnlyFromLaterReads() {
+		Book first = book("book-1");
+		Book second = book("book-2");
+
+		StepVerifier.create(this.repository.save(new BookStore("store-id"))).expectNextCount(1).verifyComplete();
+		StepVerifier.create(this.repository.pushBooks("store-id", List.of(first, second)))
+			.expectNextCount(1)
+			.verifyComplete();
+		BookStore read = this.repository.findById("store-id").block();
+
+		StepVerifier.create(this.repository.pullBook("store-id", "book-1"))
+			.assertNext((pulled) -> assertThat(pulled.getBooks()).containsExactly(first))
+			.verifyComplete();
+		StepVerifier.create(this.repository.pushBook("store-id", first)).expectNextCount(1).verifyComplete();
+
+		assertThat(read.getBooks()).containsExactly(first, second);
+		StepVerifier.create(this.repository.streamBooks("store-id")).expectNext(second, first).verifyComplete();
+	}
+
+	private static Book book(String id) {
+		return new Book(id, "store-id", new Book("isbn-" + id, "Title " + id, "Author"));
+	}
+
+}
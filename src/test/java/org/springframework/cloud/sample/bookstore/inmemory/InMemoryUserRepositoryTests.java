@@ -0,0 +1,77 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.inmemory;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import org.springframework.cloud.sample.bookstore.web.model.User;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InMemoryUserRepositoryTests {
+
+	private final InMemoryUserRepository repository = new InMemoryUserRepository();
+
+	@Test
+	public void saveGeneratesId() {
+		User user = new User("user", "password", "FULL_ACCESS");
+
+		StepVerifier.create(this.repository.save(user)).expectNext(user).verifyComplete();
+
+		assertThat(user.getId()).isNotNull();
+	}
+
+	@Test
+	public void findByUsername() {
+		User user = new User("user", "password", "FULL_ACCESS");
+		User otherUser = new User("other-user", "password", "FULL_ACCESS");
+
+		StepVerifier.create(this.repository.saveAll(List.of(user, otherUser))).expectNextCount(2).verifyComplete();
+
+		StepVerifier.create(this.repository.findByUsername("user")).expectNext(user).verifyComplete();
+		StepVerifier.create(this.repository.findByUsername("unknown-user")).verifyComplete();
+	}
+
+	@Test
+	public void findByUsernameAfterDelete() {
+		User user = new User("user", "password", "FULL_ACCESS");
+
+		StepVerifier.create(this.repository.save(user)).expectNext(user).verifyComplete();
+		StepVerifier.create(this.repository.deleteById(user.getId())).verifyComplete();
+
+		StepVerifier.create(this.repository.findByUsername("user")).verifyComplete();
+	}
+
+	@Test
+	public void deleteByUsernameIn() {
+		User user = new User("user", "password", "FULL_ACCESS", "BOOK_STORE_store-id");
+		User otherUser = new User("other-user", "password", "FULL_ACCESS", "BOOK_STORE_other-store-id");
+
+		StepVerifier.create(this.repository.saveAll(List.of(user, otherUser))).expectNextCount(2).verifyComplete();
+
+		StepVerifier.create(this.repository.deleteByUsernameIn(List.of("user", "unknown-user")))
+			.expectNext(1L)
+			.verifyComplete();
+
+		StepVerifier.create(this.repository.findByUsername("user")).verifyComplete();
+		StepVerifier.create(this.repository.findByUsername("other-user")).expectNext(otherUser).verifyComplete();
+	}
+
+}
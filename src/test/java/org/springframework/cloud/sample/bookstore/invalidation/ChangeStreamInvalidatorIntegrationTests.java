@@ -0,0 +1,190 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.invalidation;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.cloud.sample.bookstore.web.model.RevokedToken;
+import org.springframework.cloud.sample.bookstore.web.model.User;
+import org.springframework.cloud.sample.bookstore.web.repository.BookStoreRepository;
+import org.springframework.cloud.sample.bookstore.web.repository.RevokedTokenRepository;
+import org.springframework.cloud.sample.bookstore.web.repository.UserRepository;
+import org.springframework.cloud.sample.bookstore.web.resource.BookStoreResourceCache;
+import org.springframework.cloud.sample.bookstore.web.security.BookStoreTokenService;
+import org.springframework.cloud.sample.bookstore.web.security.CachingReactiveUserDetailsService;
+import org.springframework.cloud.sample.bookstore.web.security.SecurityAuthorities;
+import org.springframework.cloud.sample.bookstore.web.service.BookStoreChangedEvent.ChangeType;
+import org.springframework.cloud.sample.bookstore.web.service.BookStoreEventBroker;
+import org.springframework.cloud.sample.bookstore.web.service.BookStoreService;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.annotation.DirtiesContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Changes are written to the repositories directly, as another instance would, so only
+ * the change streams of the embedded single-node replica set can evict the cached
+ * entries. The replica set runs on its own port, next to the standalone server of the
+ * other integration tests.
+ */
+@SpringBootTest(properties = { "spring.data.mongodb.uri=mongodb://localhost:27018/broker-db",
+		"de.flapdoodle.mongodb.embedded.storage.repl-set-name=rs0",
+		"bookstore.change-streams.enabled=true", "bookstore.change-streams.node-id=test",
+		"bookstore.change-streams.resume-token-interval=100ms" })
+@DirtiesContext
+public class ChangeStreamInvalidatorIntegrationTests {
+
+	private static final String BASE_URI = "http://localhost";
+
+	private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+	@Autowired
+	private BookStoreService bookStoreService;
+
+	@Autowired
+	private BookStoreRepository bookStoreRepository;
+
+	@Autowired
+	private BookStoreResourceCache resourceCache;
+
+	@Autowired
+	private RevokedTokenRepository revokedTokenRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private CachingReactiveUserDetailsService userDetailsService;
+
+	@Autowired
+	private BookStoreTokenService tokenService;
+
+	@Autowired
+	private BookStoreEventBroker eventBroker;
+
+	@Autowired
+	private ReactiveMongoTemplate mongoTemplate;
+
+	@Test
+	public void bookStoreChangeEvictsCachedResource() {
+		String storeId = this.bookStoreService.createBookStore().block().getId();
+
+		// the stream opens asynchronously, so the change is repeated until it is observed
+		awaitInvalidation(() -> {
+			this.resourceCache.get(storeId, BASE_URI, this.bookStoreService.getBookStore(storeId)).block();
+			this.bookStoreRepository.incrementVersion(storeId).block();
+		}, () -> this.resourceCache.getIfPresent(storeId, BASE_URI).blockOptional().isEmpty());
+
+		await(() -> this.mongoTemplate.exists(Query.query(Criteria.where("_id").is("test:bookStore")), Document.class,
+				ChangeStreamInvalidator.RESUME_TOKEN_COLLECTION)
+			.block());
+	}
+
+	@Test
+	public void persistedRevocationRevokesToken() {
+		String bindingId = UUID.randomUUID().toString();
+		String token = this.tokenService.issueToken(bindingId, "store").block();
+
+		awaitInvalidation(() -> {
+			this.revokedTokenRepository.deleteById(bindingId).block();
+			this.revokedTokenRepository.save(new RevokedToken(bindingId, Instant.now().plus(Duration.ofHours(1))))
+				.block();
+		}, () -> this.tokenService.authenticate(token).onErrorResume((ex) -> Mono.empty()).blockOptional().isEmpty());
+	}
+
+	@Test
+	public void userDeletionEvictsCachedUser() {
+		String username = UUID.randomUUID().toString();
+
+		awaitInvalidation(() -> {
+			User user = new User(username, "password", SecurityAuthorities.FULL_ACCESS);
+			String userId = this.userRepository.save(user).block().getId();
+			this.userDetailsService.findByUsername(username).block();
+			this.userRepository.deleteById(userId).block();
+		}, () -> this.userDetailsService.findByUsername(username)
+			.onErrorResume((ex) -> Mono.empty())
+			.blockOptional()
+			.isEmpty());
+	}
+
+	@Test
+	public void bookStoreChangesAreRelayedThroughEventLog() {
+		String storeId = this.bookStoreService.createBookStore().block().getId();
+
+		// the stream opens asynchronously, so books are added until one is relayed
+		Disposable additions = Flux.interval(Duration.ofMillis(100))
+			.concatMap((tick) -> this.bookStoreService.putBookInStore(storeId, new Book("isbn", "title", "author")))
+			.subscribe();
+		try {
+			StepVerifier.create(this.eventBroker.subscribe(storeId).take(1)).assertNext((event) -> {
+				assertThat(event.getChangeType()).isEqualTo(ChangeType.BOOKS_ADDED);
+				assertThat(event.getVersion()).isPositive();
+				assertThat(event.getBooks()).extracting(Book::getTitle).containsExactly("title");
+			}).expectComplete().verify(TIMEOUT);
+		}
+		finally {
+			additions.dispose();
+		}
+	}
+
+	private static void awaitInvalidation(Runnable change, BooleanSupplier invalidated) {
+		long deadline = System.nanoTime() + TIMEOUT.toNanos();
+		while (System.nanoTime() < deadline) {
+			change.run();
+			if (poll(invalidated, System.nanoTime() + Duration.ofSeconds(1).toNanos())) {
+				return;
+			}
+		}
+		throw new AssertionError("Change was not observed within " + TIMEOUT);
+	}
+
+	private static void await(BooleanSupplier condition) {
+		assertThat(poll(condition, System.nanoTime() + TIMEOUT.toNanos())).isTrue();
+	}
+
+	private static boolean poll(BooleanSupplier condition, long deadline) {
+		while (!condition.getAsBoolean()) {
+			if (System.nanoTime() >= deadline) {
+				return false;
+			}
+			try {
+				Thread.sleep(50);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(ex);
+			}
+		}
+		return true;
+	}
+
+}
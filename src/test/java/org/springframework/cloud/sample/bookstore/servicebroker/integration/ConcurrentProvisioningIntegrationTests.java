@@ -0,0 +1,145 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.servicebroker.integration;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.sample.bookstore.servicebroker.model.ServiceBinding;
+import org.springframework.cloud.sample.bookstore.servicebroker.repository.ServiceBindingRepository;
+import org.springframework.cloud.sample.bookstore.servicebroker.repository.ServiceInstanceRepository;
+import org.springframework.cloud.sample.bookstore.servicebroker.service.BookStoreServiceInstanceBindingService;
+import org.springframework.cloud.sample.bookstore.servicebroker.service.BookStoreServiceInstanceService;
+import org.springframework.cloud.sample.bookstore.web.model.User;
+import org.springframework.cloud.sample.bookstore.web.repository.UserRepository;
+import org.springframework.cloud.sample.bookstore.web.security.SecurityAuthorities;
+import org.springframework.cloud.sample.bookstore.web.service.UserService;
+import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstanceAppBindingResponse;
+import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstanceBindingRequest;
+import org.springframework.cloud.servicebroker.model.instance.CreateServiceInstanceRequest;
+import org.springframework.cloud.servicebroker.model.instance.CreateServiceInstanceResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+public class ConcurrentProvisioningIntegrationTests {
+
+	private static final int REQUESTS = 16;
+
+	@Autowired
+	private BookStoreServiceInstanceService instanceService;
+
+	@Autowired
+	private BookStoreServiceInstanceBindingService bindingService;
+
+	@Autowired
+	private ServiceInstanceRepository instanceRepository;
+
+	@Autowired
+	private ServiceBindingRepository bindingRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private UserService userService;
+
+	@Test
+	public void parallelIdenticalCreateInstanceRequestsCreateOneInstance() {
+		String instanceId = UUID.randomUUID().toString();
+		CreateServiceInstanceRequest request = CreateServiceInstanceRequest.builder()
+			.serviceInstanceId(instanceId)
+			.build();
+
+		List<CreateServiceInstanceResponse> responses = inParallel(
+				() -> this.instanceService.createServiceInstance(request));
+
+		assertThat(responses).hasSize(REQUESTS);
+		assertThat(responses).filteredOn((response) -> !response.isInstanceExisted()).hasSize(1);
+		assertThat(this.instanceRepository.existsById(instanceId).block()).isTrue();
+	}
+
+	@Test
+	public void parallelIdenticalCreateBindingRequestsCreateOneBinding() {
+		String instanceId = UUID.randomUUID().toString();
+		String bindingId = UUID.randomUUID().toString();
+		CreateServiceInstanceBindingRequest request = CreateServiceInstanceBindingRequest.builder()
+			.serviceInstanceId(instanceId)
+			.bindingId(bindingId)
+			.build();
+
+		List<CreateServiceInstanceAppBindingResponse> responses = inParallel(
+				() -> this.bindingService.createServiceInstanceBinding(request)
+					.cast(CreateServiceInstanceAppBindingResponse.class));
+
+		assertThat(responses).hasSize(REQUESTS);
+		assertThat(responses).filteredOn((response) -> !response.isBindingExisted()).hasSize(1);
+		assertThat(responses).extracting(CreateServiceInstanceAppBindingResponse::getCredentials)
+			.allSatisfy((credentials) -> assertThat(credentials).isNotNull()
+				.isEqualTo(responses.get(0).getCredentials()));
+		String username = (String) responses.get(0).getCredentials().get("username");
+		assertThat(this.userRepository.findAll()
+			.filter((user) -> user.getUsername().startsWith(bindingId))
+			.map(User::getUsername)
+			.collectList()
+			.block()).containsExactly(username);
+	}
+
+	@Test
+	public void createBindingAfterRequestFailedBeforeInsertingBinding() {
+		String instanceId = UUID.randomUUID().toString();
+		String bindingId = UUID.randomUUID().toString();
+		User leftBehind = this.userService
+			.createUser(bindingId + "-" + UUID.randomUUID(), SecurityAuthorities.FULL_ACCESS,
+					SecurityAuthorities.BOOK_STORE_ID_PREFIX + instanceId)
+			.block();
+		assertThat(leftBehind).isNotNull();
+		CreateServiceInstanceBindingRequest request = CreateServiceInstanceBindingRequest.builder()
+			.serviceInstanceId(instanceId)
+			.bindingId(bindingId)
+			.build();
+
+		CreateServiceInstanceAppBindingResponse response = this.bindingService.createServiceInstanceBinding(request)
+			.cast(CreateServiceInstanceAppBindingResponse.class)
+			.block();
+
+		assertThat(response).isNotNull();
+		assertThat(response.isBindingExisted()).isFalse();
+		String username = (String) response.getCredentials().get("username");
+		assertThat(username).isNotEqualTo(leftBehind.getUsername());
+		assertThat(this.userRepository.findByUsername(username).block()).isNotNull();
+		assertThat(this.bindingRepository.findById(bindingId).block())
+			.extracting(ServiceBinding::getCredentials)
+			.isEqualTo(response.getCredentials());
+	}
+
+	private static <T> List<T> inParallel(Supplier<Mono<T>> call) {
+		return Flux.range(0, REQUESTS)
+			.flatMap((i) -> Mono.defer(call).subscribeOn(Schedulers.parallel()))
+			.collectList()
+			.block();
+	}
+
+}
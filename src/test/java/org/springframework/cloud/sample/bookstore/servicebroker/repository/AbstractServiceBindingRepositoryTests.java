@@ -0,0 +1,90 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.servicebroker.repository;
+
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import org.springframework.cloud.sample.bookstore.servicebroker.model.ServiceBinding;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests shared by every {@link ServiceBindingRepository} implementation.
+ */
+public abstract class AbstractServiceBindingRepositoryTests {
+
+	private HashMap<String, Object> parameters;
+
+	private HashMap<String, Object> credentials;
+
+	@BeforeEach
+	void setUp() {
+		this.parameters = new HashMap<>();
+		this.parameters.put("key1", "value1");
+		this.parameters.put("key2", "value2");
+
+		this.credentials = new HashMap<>();
+		this.credentials.put("url", "https://example.com");
+		this.credentials.put("username", "user");
+		this.credentials.put("password", "secret");
+	}
+
+	@Test
+	public void save() {
+		ServiceBinding binding = new ServiceBinding("binding-id", this.parameters, this.credentials);
+
+		StepVerifier.create(getRepository().save(binding))
+			.assertNext((savedBinding) -> assertThat(savedBinding).usingRecursiveComparison().isEqualTo(binding))
+			.verifyComplete();
+	}
+
+	@Test
+	public void retrieve() {
+		ServiceBinding binding = new ServiceBinding("binding-id", this.parameters, this.credentials);
+
+		StepVerifier.create(getRepository().save(binding)).expectNext(binding).verifyComplete();
+
+		StepVerifier.create(getRepository().findById("binding-id"))
+			.assertNext((foundBinding) -> assertThat(foundBinding).usingRecursiveComparison().isEqualTo(binding))
+			.verifyComplete();
+	}
+
+	@Test
+	public void deleteByServiceInstanceId() {
+		ServiceBinding binding = new ServiceBinding("binding-id", "instance-id", this.parameters, this.credentials);
+		ServiceBinding otherBinding = new ServiceBinding("other-binding-id", "other-instance-id", this.parameters,
+				this.credentials);
+
+		StepVerifier.create(getRepository().saveAll(List.of(binding, otherBinding)))
+			.expectNextCount(2)
+			.verifyComplete();
+
+		StepVerifier.create(getRepository().deleteByServiceInstanceId("instance-id")).expectNext(1L).verifyComplete();
+
+		StepVerifier.create(getRepository().findAll())
+			.assertNext((remaining) -> assertThat(remaining.getBindingId()).isEqualTo("other-binding-id"))
+			.verifyComplete();
+	}
+
+	protected abstract ServiceBindingRepository getRepository();
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.servicebroker.repository;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import org.springframework.cloud.sample.bookstore.inmemory.InMemoryServiceBindingRepository;
+import org.springframework.cloud.sample.bookstore.servicebroker.model.ServiceBinding;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+
+public class InMemoryServiceBindingRepositoryTests extends AbstractServiceBindingRepositoryTests {
+
+	private final ServiceBindingRepository repository = new InMemoryServiceBindingRepository();
+
+	@Test
+	public void insertRejectsTakenId() {
+		ServiceBinding binding = new ServiceBinding("binding-id", "instance-id", Map.of(), Map.of());
+
+		StepVerifier.create(this.repository.insert(binding)).expectNext(binding).verifyComplete();
+
+		StepVerifier.create(this.repository.insert(new ServiceBinding("binding-id", Map.of(), Map.of())))
+			.expectError(DuplicateKeyException.class)
+			.verify();
+	}
+
+	@Test
+	public void findAllSortsByPropertiesWithMissingValuesFirst() {
+		ServiceBinding first = new ServiceBinding("binding-1", "instance-2", Map.of(), Map.of());
+		ServiceBinding second = new ServiceBinding("binding-2", "instance-1", Map.of(), Map.of());
+		ServiceBinding third = new ServiceBinding("binding-3", "instance-1", Map.of(), Map.of());
+		ServiceBinding unassigned = new ServiceBinding("binding-4", Map.of(), Map.of());
+
+		StepVerifier.create(this.repository.saveAll(List.of(first, second, third, unassigned)))
+			.expectNextCount(4)
+			.verifyComplete();
+
+		Sort sort = Sort.by("serviceInstanceId").and(Sort.by(Sort.Direction.DESC, "bindingId"));
+		StepVerifier.create(this.repository.findAll(sort))
+			.expectNext(unassigned, third, second, first)
+			.verifyComplete();
+	}
+
+	@Override
+	protected ServiceBindingRepository getRepository() {
+		return this.repository;
+	}
+
+}
@@ -16,58 +16,18 @@
 
 package org.springframework.cloud.sample.bookstore.servicebroker.repository;
 
-import java.util.HashMap;
-
-import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.Test;
-import reactor.test.StepVerifier;
-
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
-import org.springframework.cloud.sample.bookstore.servicebroker.model.ServiceBinding;
-
-import static org.assertj.core.api.Assertions.assertThat;
 
 @DataMongoTest
-public class ServiceBindingRepositoryTests {
+public class ServiceBindingRepositoryTests extends AbstractServiceBindingRepositoryTests {
 
 	@Autowired
 	private ServiceBindingRepository repository;
 
-	private HashMap<String, Object> parameters;
-
-	private HashMap<String, Object> credentials;
-
-	@BeforeEach
-	void setUp() {
-		this.parameters = new HashMap<>();
-		this.parameters.put("key1", "value1");
-		this.parameters.put("key2", "value2");
-
-		this.credentials = new HashMap<>();
-		this.credentials.put("url", "https://example.com");
-		this.credentials.put("username", "user");
-		this.credentials.put("password", "secret");
-	}
-
-	@Test
-	public void save() {
-		ServiceBinding binding = new ServiceBinding("binding-id", this.parameters, this.credentials);
-
-		StepVerifier.create(this.repository.save(binding))
-			.assertNext((savedBinding) -> assertThat(savedBinding).usingRecursiveComparison().isEqualTo(binding))
-			.verifyComplete();
-	}
-
-	@Test
-	public void retrieve() {
-		ServiceBinding binding = new ServiceBinding("binding-id", this.parameters, this.credentials);
-
-		StepVerifier.create(this.repository.save(binding)).expectNext(binding).verifyComplete();
-
-		StepVerifier.create(this.repository.findById("binding-id"))
-			.assertNext((foundBinding) -> assertThat(foundBinding).usingRecursiveComparison().isEqualTo(binding))
-			.verifyComplete();
+	@Override
+	protected ServiceBindingRepository getRepository() {
+		return this.repository;
 	}
 
 }
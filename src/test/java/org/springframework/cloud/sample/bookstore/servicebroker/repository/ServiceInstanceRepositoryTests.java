@@ -16,53 +16,18 @@
 
 package org.springframework.cloud.sample.bookstore.servicebroker.repository;
 
-import java.util.HashMap;
-
-import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.Test;
-import reactor.test.StepVerifier;
-
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
-import org.springframework.cloud.sample.bookstore.servicebroker.model.ServiceInstance;
-
-import static org.assertj.core.api.Assertions.assertThat;
 
 @DataMongoTest
-public class ServiceInstanceRepositoryTests {
+public class ServiceInstanceRepositoryTests extends AbstractServiceInstanceRepositoryTests {
 
 	@Autowired
 	private ServiceInstanceRepository repository;
 
-	private HashMap<String, Object> parameters;
-
-	@BeforeEach
-	void setUp() {
-		this.parameters = new HashMap<>();
-		this.parameters.put("key1", "value1");
-		this.parameters.put("key2", "value2");
-	}
-
-	@Test
-	public void save() {
-		ServiceInstance instance = new ServiceInstance("service-instance-id", "service-definition-id", "plan-id",
-				this.parameters);
-
-		StepVerifier.create(this.repository.save(instance))
-			.assertNext((savedInstance) -> assertThat(savedInstance).usingRecursiveComparison().isEqualTo(instance))
-			.verifyComplete();
-	}
-
-	@Test
-	public void retrieve() {
-		ServiceInstance instance = new ServiceInstance("service-instance-id", "service-definition-id", "plan-id",
-				this.parameters);
-
-		StepVerifier.create(this.repository.save(instance)).expectNext(instance).verifyComplete();
-
-		StepVerifier.create(this.repository.findById("service-instance-id"))
-			.assertNext((foundInstance) -> assertThat(foundInstance).usingRecursiveComparison().isEqualTo(instance))
-			.verifyComplete();
+	@Override
+	protected ServiceInstanceRepository getRepository() {
+		return this.repository;
 	}
 
 }
@@ -17,12 +17,14 @@
 package org.springframework.cloud.sample.bookstore.servicebroker.service;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
@@ -30,6 +32,7 @@ import org.springframework.cloud.sample.bookstore.servicebroker.model.ServiceBin
 import org.springframework.cloud.sample.bookstore.servicebroker.repository.ServiceBindingRepository;
 import org.springframework.cloud.sample.bookstore.web.model.ApplicationInformation;
 import org.springframework.cloud.sample.bookstore.web.model.User;
+import org.springframework.cloud.sample.bookstore.web.security.BookStoreTokenService;
 import org.springframework.cloud.sample.bookstore.web.service.UserService;
 import org.springframework.cloud.servicebroker.exception.ServiceInstanceBindingDoesNotExistException;
 import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstanceAppBindingResponse;
@@ -37,11 +40,14 @@ import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstan
 import org.springframework.cloud.servicebroker.model.binding.DeleteServiceInstanceBindingRequest;
 import org.springframework.cloud.servicebroker.model.binding.GetServiceInstanceAppBindingResponse;
 import org.springframework.cloud.servicebroker.model.binding.GetServiceInstanceBindingRequest;
+import org.springframework.dao.DuplicateKeyException;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.ArgumentMatchers.refEq;
+import static org.mockito.ArgumentMatchers.startsWith;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.MockitoAnnotations.openMocks;
@@ -62,6 +68,9 @@ public class BookstoreServiceInstanceBindingServiceTests {
 	@Mock
 	private UserService userService;
 
+	@Mock
+	private BookStoreTokenService tokenService;
+
 	private BookStoreServiceInstanceBindingService service;
 
 	private Map<String, Object> credentials;
@@ -77,25 +86,16 @@ public class BookstoreServiceInstanceBindingServiceTests {
 
 		ApplicationInformation appInfo = new ApplicationInformation(BASE_URL);
 
-		this.service = new BookStoreServiceInstanceBindingService(this.repository, this.userService, appInfo);
+		this.service = new BookStoreServiceInstanceBindingService(this.repository, this.userService,
+				this.tokenService, appInfo);
 	}
 
 	@Test
 	public void createBindingWhenBindingDoesNotExist() {
-		given(this.repository.existsById(SERVICE_BINDING_ID)).willReturn(Mono.just(false));
-
-		given(this.userService.createUser(eq(SERVICE_BINDING_ID), eq(FULL_ACCESS),
-				eq(BOOK_STORE_ID_PREFIX + SERVICE_INSTANCE_ID)))
-			.willReturn(Mono.just(
-					new User(SERVICE_BINDING_ID, "password", FULL_ACCESS, BOOK_STORE_ID_PREFIX + SERVICE_INSTANCE_ID)));
-
-		final Map<String, Object> creds = new HashMap<>();
-		creds.put("uri", BASE_URL + "/bookstores/" + SERVICE_INSTANCE_ID);
-		creds.put("username", SERVICE_BINDING_ID);
-		creds.put("password", "password");
+		User user = givenUserSaved();
 
-		ServiceBinding binding = new ServiceBinding(SERVICE_BINDING_ID, new HashMap<>(), creds);
-		given(this.repository.save(refEq(binding))).willReturn(Mono.just(binding));
+		given(this.repository.insert(any(ServiceBinding.class)))
+			.willAnswer((invocation) -> Mono.just(invocation.getArgument(0)));
 
 		CreateServiceInstanceBindingRequest request = CreateServiceInstanceBindingRequest.builder()
 			.serviceInstanceId(SERVICE_INSTANCE_ID)
@@ -110,28 +110,61 @@ public class BookstoreServiceInstanceBindingServiceTests {
 			assertThat(credentials).hasSize(3).containsOnlyKeys("uri", "username", "password");
 			assertThat(credentials.get("uri").toString()).startsWith(BASE_URL)
 				.endsWith("bookstores/" + SERVICE_INSTANCE_ID);
+			assertThat(credentials).containsEntry("username", user.getUsername());
 
 			ArgumentCaptor<ServiceBinding> repositoryCaptor = ArgumentCaptor.forClass(ServiceBinding.class);
-			verify(this.repository).save(repositoryCaptor.capture());
+			verify(this.repository).insert(repositoryCaptor.capture());
 			ServiceBinding actualBinding = repositoryCaptor.getValue();
 			assertThat(actualBinding.getBindingId()).isEqualTo(SERVICE_BINDING_ID);
+			assertThat(actualBinding.getServiceInstanceId()).isEqualTo(SERVICE_INSTANCE_ID);
 			assertThat(actualBinding.getCredentials()).isEqualTo(credentials);
 		}).verifyComplete();
 
-		verify(this.repository).existsById(SERVICE_BINDING_ID);
 		verifyNoMoreInteractions(this.repository);
 
-		verify(this.userService).createUser(SERVICE_BINDING_ID, FULL_ACCESS,
-				BOOK_STORE_ID_PREFIX + SERVICE_INSTANCE_ID);
-		verify(this.repository).save(refEq(binding));
+		verify(this.userService).generateUser(startsWith(SERVICE_BINDING_ID + "-"), eq(FULL_ACCESS),
+				eq(BOOK_STORE_ID_PREFIX + SERVICE_INSTANCE_ID));
+		verify(this.userService).saveUser(user);
 		verifyNoMoreInteractions(this.userService);
 	}
 
 	@Test
-	public void createBindingWhenBindingExists() {
+	public void createTokenBindingWhenBindingDoesNotExist() {
+		given(this.tokenService.issueToken(SERVICE_BINDING_ID, SERVICE_INSTANCE_ID, FULL_ACCESS,
+				BOOK_STORE_ID_PREFIX + SERVICE_INSTANCE_ID))
+			.willReturn(Mono.just("signed-token"));
+
+		given(this.repository.insert(any(ServiceBinding.class)))
+			.willAnswer((invocation) -> Mono.just(invocation.getArgument(0)));
+
+		Map<String, Object> parameters = new HashMap<>();
+		parameters.put("credential_type", "token");
+
+		CreateServiceInstanceBindingRequest request = CreateServiceInstanceBindingRequest.builder()
+			.serviceInstanceId(SERVICE_INSTANCE_ID)
+			.bindingId(SERVICE_BINDING_ID)
+			.parameters(parameters)
+			.build();
+
+		StepVerifier.create(this.service.createServiceInstanceBinding(request)).consumeNextWith((response) -> {
+			CreateServiceInstanceAppBindingResponse appResponse = (CreateServiceInstanceAppBindingResponse) response;
+			assertThat(appResponse.isBindingExisted()).isFalse();
+			assertThat(appResponse.getCredentials()).containsOnlyKeys("uri", "token")
+				.containsEntry("token", "signed-token");
+		}).verifyComplete();
+
+		verifyNoMoreInteractions(this.userService);
+	}
+
+	@Test
+	public void createBindingWhenBindingExistsDiscardsGeneratedUser() {
 		ServiceBinding binding = new ServiceBinding(SERVICE_BINDING_ID, null, this.credentials);
 
-		given(this.repository.existsById(SERVICE_BINDING_ID)).willReturn(Mono.just(true));
+		User user = givenUserSaved();
+		given(this.userService.discardUser(user)).willReturn(Mono.empty());
+
+		given(this.repository.insert(any(ServiceBinding.class)))
+			.willReturn(Mono.error(new DuplicateKeyException("duplicate binding")));
 
 		given(this.repository.findById(SERVICE_BINDING_ID)).willReturn(Mono.just(binding));
 
@@ -147,9 +180,32 @@ public class BookstoreServiceInstanceBindingServiceTests {
 			assertThat(this.credentials).isEqualTo(appResponse.getCredentials());
 		}).verifyComplete();
 
-		verify(this.repository).existsById(SERVICE_BINDING_ID);
+		verify(this.repository).insert(any(ServiceBinding.class));
 		verify(this.repository).findById(SERVICE_BINDING_ID);
 		verifyNoMoreInteractions(this.repository);
+
+		verify(this.userService).discardUser(user);
+		verify(this.userService, never()).deleteUser(any(String.class));
+	}
+
+	@Test
+	public void createBindingDiscardsGeneratedUserWhenInsertFails() {
+		User user = givenUserSaved();
+		given(this.userService.discardUser(user)).willReturn(Mono.empty());
+
+		given(this.repository.insert(any(ServiceBinding.class)))
+			.willReturn(Mono.error(new IllegalStateException("database unavailable")));
+
+		CreateServiceInstanceBindingRequest request = CreateServiceInstanceBindingRequest.builder()
+			.serviceInstanceId(SERVICE_INSTANCE_ID)
+			.bindingId(SERVICE_BINDING_ID)
+			.build();
+
+		StepVerifier.create(this.service.createServiceInstanceBinding(request))
+			.verifyError(IllegalStateException.class);
+
+		verify(this.userService).discardUser(user);
+		verify(this.repository, never()).findById(SERVICE_BINDING_ID);
 	}
 
 	@Test
@@ -192,11 +248,12 @@ public class BookstoreServiceInstanceBindingServiceTests {
 
 	@Test
 	public void deleteBindingWhenBindingExists() {
-		given(this.repository.existsById(SERVICE_BINDING_ID)).willReturn(Mono.just(true));
+		given(this.repository.findById(SERVICE_BINDING_ID))
+			.willReturn(Mono.just(new ServiceBinding(SERVICE_BINDING_ID, null, this.credentials)));
 
 		given(this.repository.deleteById(SERVICE_BINDING_ID)).willReturn(Mono.empty());
 
-		given(this.userService.deleteUser(SERVICE_BINDING_ID)).willReturn(Mono.empty());
+		given(this.userService.deleteUser("testuser")).willReturn(Mono.empty());
 
 		DeleteServiceInstanceBindingRequest request = DeleteServiceInstanceBindingRequest.builder()
 			.serviceInstanceId(SERVICE_INSTANCE_ID)
@@ -205,17 +262,63 @@ public class BookstoreServiceInstanceBindingServiceTests {
 
 		StepVerifier.create(this.service.deleteServiceInstanceBinding(request)).expectNextCount(1).verifyComplete();
 
-		verify(this.repository).existsById(SERVICE_BINDING_ID);
+		verify(this.repository).findById(SERVICE_BINDING_ID);
 		verify(this.repository).deleteById(SERVICE_BINDING_ID);
 		verifyNoMoreInteractions(this.repository);
 
-		verify(this.userService).deleteUser(SERVICE_BINDING_ID);
+		verify(this.userService).deleteUser("testuser");
 		verifyNoMoreInteractions(this.userService);
+
+		verifyNoMoreInteractions(this.tokenService);
+	}
+
+	@Test
+	public void deleteTokenBindingRevokesToken() {
+		Map<String, Object> tokenCredentials = new HashMap<>();
+		tokenCredentials.put("uri", "https://example.com");
+		tokenCredentials.put("token", "signed-token");
+		given(this.repository.findById(SERVICE_BINDING_ID))
+			.willReturn(Mono.just(new ServiceBinding(SERVICE_BINDING_ID, null, tokenCredentials)));
+
+		given(this.repository.deleteById(SERVICE_BINDING_ID)).willReturn(Mono.empty());
+
+		given(this.tokenService.revokeToken(SERVICE_BINDING_ID)).willReturn(Mono.empty());
+
+		DeleteServiceInstanceBindingRequest request = DeleteServiceInstanceBindingRequest.builder()
+			.serviceInstanceId(SERVICE_INSTANCE_ID)
+			.bindingId(SERVICE_BINDING_ID)
+			.build();
+
+		StepVerifier.create(this.service.deleteServiceInstanceBinding(request)).expectNextCount(1).verifyComplete();
+
+		verify(this.tokenService).revokeToken(SERVICE_BINDING_ID);
+		verifyNoMoreInteractions(this.userService);
+	}
+
+	@Test
+	public void deleteBindingRestoresBindingWhenUserDeleteFails() {
+		ServiceBinding binding = new ServiceBinding(SERVICE_BINDING_ID, null, this.credentials);
+		given(this.repository.findById(SERVICE_BINDING_ID)).willReturn(Mono.just(binding));
+		given(this.repository.deleteById(SERVICE_BINDING_ID)).willReturn(Mono.empty());
+		given(this.repository.save(binding)).willReturn(Mono.just(binding));
+		given(this.userService.deleteUser("testuser"))
+			.willReturn(Mono.error(new IllegalStateException("database unavailable")));
+
+		DeleteServiceInstanceBindingRequest request = DeleteServiceInstanceBindingRequest.builder()
+			.serviceInstanceId(SERVICE_INSTANCE_ID)
+			.bindingId(SERVICE_BINDING_ID)
+			.build();
+
+		StepVerifier.create(this.service.deleteServiceInstanceBinding(request))
+			.verifyError(IllegalStateException.class);
+
+		verify(this.repository).deleteById(SERVICE_BINDING_ID);
+		verify(this.repository).save(binding);
 	}
 
 	@Test
 	public void deleteBindingWhenBindingDoesNotExist() {
-		given(this.repository.existsById(SERVICE_BINDING_ID)).willReturn(Mono.just(false));
+		given(this.repository.findById(SERVICE_BINDING_ID)).willReturn(Mono.empty());
 
 		DeleteServiceInstanceBindingRequest request = DeleteServiceInstanceBindingRequest.builder()
 			.serviceInstanceId(SERVICE_INSTANCE_ID)
@@ -226,8 +329,38 @@ public class BookstoreServiceInstanceBindingServiceTests {
 			.expectErrorMatches((e) -> e instanceof ServiceInstanceBindingDoesNotExistException)
 			.verify();
 
-		verify(this.repository).existsById(SERVICE_BINDING_ID);
+		verify(this.repository).findById(SERVICE_BINDING_ID);
 		verifyNoMoreInteractions(this.repository);
 	}
 
+	@Test
+	public void deleteServiceInstanceBindingsDeletesBindingsUsersAndTokens() {
+		Map<String, Object> tokenCredentials = new HashMap<>();
+		tokenCredentials.put("uri", "https://example.com");
+		tokenCredentials.put("token", "token-value");
+		given(this.repository.findByServiceInstanceId(SERVICE_INSTANCE_ID)).willReturn(Flux.just(
+				new ServiceBinding(SERVICE_BINDING_ID, SERVICE_INSTANCE_ID, new HashMap<>(), this.credentials),
+				new ServiceBinding("token-binding-id", SERVICE_INSTANCE_ID, new HashMap<>(), tokenCredentials)));
+		given(this.repository.deleteByServiceInstanceId(SERVICE_INSTANCE_ID)).willReturn(Mono.just(2L));
+		given(this.userService.deleteBookStoreUsers(SERVICE_INSTANCE_ID)).willReturn(Flux.just(SERVICE_BINDING_ID));
+		given(this.tokenService.revokeTokens(List.of("token-binding-id"))).willReturn(Mono.empty());
+
+		StepVerifier.create(this.service.deleteServiceInstanceBindings(SERVICE_INSTANCE_ID)).verifyComplete();
+
+		verify(this.repository).deleteByServiceInstanceId(SERVICE_INSTANCE_ID);
+		verify(this.repository, never()).deleteById(any(String.class));
+		verify(this.userService).deleteBookStoreUsers(SERVICE_INSTANCE_ID);
+		verify(this.tokenService).revokeTokens(List.of("token-binding-id"));
+	}
+
+	private User givenUserSaved() {
+		User user = new User(SERVICE_BINDING_ID + "-user", "password", FULL_ACCESS,
+				BOOK_STORE_ID_PREFIX + SERVICE_INSTANCE_ID);
+		given(this.userService.generateUser(startsWith(SERVICE_BINDING_ID + "-"), eq(FULL_ACCESS),
+				eq(BOOK_STORE_ID_PREFIX + SERVICE_INSTANCE_ID)))
+			.willReturn(Mono.just(user));
+		given(this.userService.saveUser(user)).willReturn(Mono.just(user));
+		return user;
+	}
+
 }
@@ -16,8 +16,10 @@
 
 package org.springframework.cloud.sample.bookstore.servicebroker.service;
 
+import java.time.Duration;
 import java.util.HashMap;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -29,16 +31,23 @@ import org.springframework.cloud.sample.bookstore.servicebroker.model.ServiceIns
 import org.springframework.cloud.sample.bookstore.servicebroker.repository.ServiceInstanceRepository;
 import org.springframework.cloud.sample.bookstore.web.model.BookStore;
 import org.springframework.cloud.sample.bookstore.web.service.BookStoreService;
+import org.springframework.cloud.servicebroker.exception.ServiceBrokerConcurrencyException;
+import org.springframework.cloud.servicebroker.exception.ServiceBrokerException;
 import org.springframework.cloud.servicebroker.exception.ServiceInstanceDoesNotExistException;
 import org.springframework.cloud.servicebroker.model.Context;
 import org.springframework.cloud.servicebroker.model.PlatformContext;
 import org.springframework.cloud.servicebroker.model.instance.CreateServiceInstanceRequest;
 import org.springframework.cloud.servicebroker.model.instance.DeleteServiceInstanceRequest;
+import org.springframework.cloud.servicebroker.model.instance.GetLastServiceOperationRequest;
 import org.springframework.cloud.servicebroker.model.instance.GetServiceInstanceRequest;
+import org.springframework.cloud.servicebroker.model.instance.OperationState;
+import org.springframework.dao.DuplicateKeyException;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.ArgumentMatchers.refEq;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.MockitoAnnotations.openMocks;
@@ -53,17 +62,33 @@ public class BookstoreServiceInstanceServiceTests {
 	@Mock
 	private ServiceInstanceRepository repository;
 
+	@Mock
+	private BookStoreServiceInstanceBindingService bindingService;
+
+	private ServiceInstanceOperationExecutor operationExecutor;
+
 	private BookStoreServiceInstanceService service;
 
 	@BeforeEach
 	public void setUp() {
 		openMocks(this);
-		this.service = new BookStoreServiceInstanceService(this.store, this.repository);
+		this.operationExecutor = new ServiceInstanceOperationExecutor(this.repository, 1, 16, Duration.ofHours(1));
+		this.service = new BookStoreServiceInstanceService(this.store, this.repository, this.operationExecutor,
+				this.bindingService);
+		given(this.bindingService.deleteServiceInstanceBindings(SERVICE_INSTANCE_ID)).willReturn(Mono.empty());
+	}
+
+	@AfterEach
+	public void tearDown() {
+		this.operationExecutor.destroy();
 	}
 
 	@Test
 	public void createServiceInstanceWhenInstanceExists() {
-		given(this.repository.existsById(SERVICE_INSTANCE_ID)).willReturn(Mono.just(true));
+		given(this.repository.insert(any(ServiceInstance.class)))
+			.willReturn(Mono.error(new DuplicateKeyException("duplicate instance")));
+		given(this.repository.findById(SERVICE_INSTANCE_ID))
+			.willReturn(Mono.just(new ServiceInstance(SERVICE_INSTANCE_ID, null, null, new HashMap<>())));
 
 		CreateServiceInstanceRequest request = CreateServiceInstanceRequest.builder()
 			.serviceInstanceId(SERVICE_INSTANCE_ID)
@@ -76,22 +101,60 @@ public class BookstoreServiceInstanceServiceTests {
 			assertThat(response.getOperation()).isNull();
 		}).verifyComplete();
 
-		verify(this.repository).existsById(SERVICE_INSTANCE_ID);
+		verify(this.repository).insert(any(ServiceInstance.class));
+		verify(this.repository).findById(SERVICE_INSTANCE_ID);
 		verifyNoMoreInteractions(this.repository);
 		verifyNoMoreInteractions(this.store);
 	}
 
+	@Test
+	public void createServiceInstanceWhenProvisionInProgressRequiresAsync() {
+		given(this.repository.insert(any(ServiceInstance.class)))
+			.willReturn(Mono.error(new DuplicateKeyException("duplicate instance")));
+		given(this.repository.findById(SERVICE_INSTANCE_ID))
+			.willReturn(Mono.just(new ServiceInstance(SERVICE_INSTANCE_ID, null, null, new HashMap<>())
+				.withOperation("provision", OperationState.IN_PROGRESS, null)));
+
+		CreateServiceInstanceRequest request = CreateServiceInstanceRequest.builder()
+			.serviceInstanceId(SERVICE_INSTANCE_ID)
+			.build();
+
+		StepVerifier.create(this.service.createServiceInstance(request))
+			.verifyError(ServiceBrokerConcurrencyException.class);
+
+		verifyNoMoreInteractions(this.store);
+	}
+
+	@Test
+	public void createServiceInstanceWhenProvisionFailed() {
+		given(this.repository.insert(any(ServiceInstance.class)))
+			.willReturn(Mono.error(new DuplicateKeyException("duplicate instance")));
+		given(this.repository.findById(SERVICE_INSTANCE_ID))
+			.willReturn(Mono.just(new ServiceInstance(SERVICE_INSTANCE_ID, null, null, new HashMap<>())
+				.withOperation("provision", OperationState.FAILED, "database unavailable")));
+
+		CreateServiceInstanceRequest request = CreateServiceInstanceRequest.builder()
+			.serviceInstanceId(SERVICE_INSTANCE_ID)
+			.asyncAccepted(true)
+			.build();
+
+		StepVerifier.create(this.service.createServiceInstance(request))
+			.expectErrorMatches((e) -> e.getClass() == ServiceBrokerException.class
+					&& e.getMessage().contains("database unavailable"))
+			.verify();
+
+		verifyNoMoreInteractions(this.store);
+	}
+
 	@Test
 	public void createServiceInstanceWhenInstanceDoesNotExist() {
 		Context context = PlatformContext.builder().platform("test-platform").build();
 
-		given(this.repository.existsById(SERVICE_INSTANCE_ID)).willReturn(Mono.just(false));
-
 		given(this.store.createBookStore(SERVICE_INSTANCE_ID))
 			.willReturn(Mono.just(new BookStore(SERVICE_INSTANCE_ID)));
 
-		ServiceInstance serviceInstance = new ServiceInstance(SERVICE_INSTANCE_ID, null, null, new HashMap<>());
-		given(this.repository.save(refEq(serviceInstance))).willReturn(Mono.just(serviceInstance));
+		given(this.repository.insert(any(ServiceInstance.class)))
+			.willAnswer((invocation) -> Mono.just(invocation.getArgument(0)));
 
 		CreateServiceInstanceRequest request = CreateServiceInstanceRequest.builder()
 			.serviceInstanceId(SERVICE_INSTANCE_ID)
@@ -105,9 +168,8 @@ public class BookstoreServiceInstanceServiceTests {
 			assertThat(response.getOperation()).isNull();
 		}).verifyComplete();
 
-		verify(this.repository).existsById(SERVICE_INSTANCE_ID);
 		ArgumentCaptor<ServiceInstance> argumentCaptor = ArgumentCaptor.forClass(ServiceInstance.class);
-		verify(this.repository).save(argumentCaptor.capture());
+		verify(this.repository).insert(argumentCaptor.capture());
 		verifyNoMoreInteractions(this.repository);
 
 		ServiceInstance actual = argumentCaptor.getValue();
@@ -153,7 +215,8 @@ public class BookstoreServiceInstanceServiceTests {
 
 	@Test
 	public void deleteServiceInstanceWhenInstanceExists() {
-		given(this.repository.existsById(SERVICE_INSTANCE_ID)).willReturn(Mono.just(true));
+		given(this.repository.findById(SERVICE_INSTANCE_ID))
+			.willReturn(Mono.just(new ServiceInstance(SERVICE_INSTANCE_ID, null, null, new HashMap<>())));
 
 		given(this.store.deleteBookStore(SERVICE_INSTANCE_ID)).willReturn(Mono.empty());
 
@@ -168,17 +231,55 @@ public class BookstoreServiceInstanceServiceTests {
 			assertThat(response.getOperation()).isNull();
 		}).verifyComplete();
 
-		verify(this.repository).existsById(SERVICE_INSTANCE_ID);
+		verify(this.repository).findById(SERVICE_INSTANCE_ID);
 		verify(this.repository).deleteById(SERVICE_INSTANCE_ID);
 		verifyNoMoreInteractions(this.repository);
 
 		verify(this.store).deleteBookStore(SERVICE_INSTANCE_ID);
 		verifyNoMoreInteractions(this.store);
+
+		verify(this.bindingService).deleteServiceInstanceBindings(SERVICE_INSTANCE_ID);
+	}
+
+	@Test
+	public void deleteServiceInstanceKeepsInstanceWhenBookStoreDeleteFails() {
+		ServiceInstance serviceInstance = new ServiceInstance(SERVICE_INSTANCE_ID, null, null, new HashMap<>());
+		given(this.repository.findById(SERVICE_INSTANCE_ID)).willReturn(Mono.just(serviceInstance));
+		given(this.store.deleteBookStore(SERVICE_INSTANCE_ID))
+			.willReturn(Mono.error(new IllegalStateException("database unavailable")));
+
+		DeleteServiceInstanceRequest request = DeleteServiceInstanceRequest.builder()
+			.serviceInstanceId(SERVICE_INSTANCE_ID)
+			.build();
+
+		StepVerifier.create(this.service.deleteServiceInstance(request)).verifyError(IllegalStateException.class);
+
+		verify(this.bindingService).deleteServiceInstanceBindings(SERVICE_INSTANCE_ID);
+		verify(this.repository, never()).deleteById(SERVICE_INSTANCE_ID);
+	}
+
+	@Test
+	public void deleteServiceInstanceWhenOperationInProgress() {
+		given(this.repository.findById(SERVICE_INSTANCE_ID))
+			.willReturn(Mono.just(new ServiceInstance(SERVICE_INSTANCE_ID, null, null, new HashMap<>())
+				.withOperation("provision", OperationState.IN_PROGRESS, null)));
+
+		DeleteServiceInstanceRequest request = DeleteServiceInstanceRequest.builder()
+			.serviceInstanceId(SERVICE_INSTANCE_ID)
+			.asyncAccepted(true)
+			.build();
+
+		StepVerifier.create(this.service.deleteServiceInstance(request))
+			.verifyError(ServiceBrokerConcurrencyException.class);
+
+		verify(this.repository).findById(SERVICE_INSTANCE_ID);
+		verifyNoMoreInteractions(this.repository);
+		verifyNoMoreInteractions(this.store);
 	}
 
 	@Test
 	public void deleteServiceInstanceWhenInstanceDoesNotExist() {
-		given(this.repository.existsById(SERVICE_INSTANCE_ID)).willReturn(Mono.just(false));
+		given(this.repository.findById(SERVICE_INSTANCE_ID)).willReturn(Mono.empty());
 
 		DeleteServiceInstanceRequest request = DeleteServiceInstanceRequest.builder()
 			.serviceInstanceId(SERVICE_INSTANCE_ID)
@@ -189,4 +290,111 @@ public class BookstoreServiceInstanceServiceTests {
 			.verify();
 	}
 
+	@Test
+	public void createServiceInstanceAsynchronously() {
+		given(this.repository.insert(any(ServiceInstance.class)))
+			.willAnswer((invocation) -> Mono.just(invocation.getArgument(0)));
+		given(this.repository.save(any(ServiceInstance.class)))
+			.willAnswer((invocation) -> Mono.just(invocation.getArgument(0)));
+		given(this.store.createBookStore(SERVICE_INSTANCE_ID))
+			.willReturn(Mono.just(new BookStore(SERVICE_INSTANCE_ID)));
+
+		CreateServiceInstanceRequest request = CreateServiceInstanceRequest.builder()
+			.serviceInstanceId(SERVICE_INSTANCE_ID)
+			.asyncAccepted(true)
+			.build();
+
+		StepVerifier.create(this.service.createServiceInstance(request)).consumeNextWith((response) -> {
+			assertThat(response.isAsync()).isTrue();
+			assertThat(response.getOperation()).isEqualTo("provision");
+		}).verifyComplete();
+
+		ArgumentCaptor<ServiceInstance> inserted = ArgumentCaptor.forClass(ServiceInstance.class);
+		verify(this.repository).insert(inserted.capture());
+		assertThat(inserted.getValue().getOperationState()).isEqualTo(OperationState.IN_PROGRESS);
+		ArgumentCaptor<ServiceInstance> saved = ArgumentCaptor.forClass(ServiceInstance.class);
+		verify(this.repository, timeout(1000)).save(saved.capture());
+		assertThat(saved.getValue().getOperationState()).isEqualTo(OperationState.SUCCEEDED);
+		verify(this.store).createBookStore(SERVICE_INSTANCE_ID);
+	}
+
+	@Test
+	public void createServiceInstanceAsynchronouslyRecordsFailure() {
+		given(this.repository.insert(any(ServiceInstance.class)))
+			.willAnswer((invocation) -> Mono.just(invocation.getArgument(0)));
+		given(this.repository.save(any(ServiceInstance.class)))
+			.willAnswer((invocation) -> Mono.just(invocation.getArgument(0)));
+		given(this.store.createBookStore(SERVICE_INSTANCE_ID))
+			.willReturn(Mono.error(new IllegalStateException("database unavailable")));
+
+		CreateServiceInstanceRequest request = CreateServiceInstanceRequest.builder()
+			.serviceInstanceId(SERVICE_INSTANCE_ID)
+			.asyncAccepted(true)
+			.build();
+
+		StepVerifier.create(this.service.createServiceInstance(request))
+			.consumeNextWith((response) -> assertThat(response.isAsync()).isTrue())
+			.verifyComplete();
+
+		ArgumentCaptor<ServiceInstance> argumentCaptor = ArgumentCaptor.forClass(ServiceInstance.class);
+		verify(this.repository, timeout(1000)).save(argumentCaptor.capture());
+		ServiceInstance failed = argumentCaptor.getValue();
+		assertThat(failed.getOperationState()).isEqualTo(OperationState.FAILED);
+		assertThat(failed.getOperationDescription()).isEqualTo("database unavailable");
+	}
+
+	@Test
+	public void deleteServiceInstanceAsynchronously() {
+		ServiceInstance serviceInstance = new ServiceInstance(SERVICE_INSTANCE_ID, null, null, new HashMap<>());
+		given(this.repository.findById(SERVICE_INSTANCE_ID)).willReturn(Mono.just(serviceInstance));
+		given(this.repository.save(any(ServiceInstance.class)))
+			.willAnswer((invocation) -> Mono.just(invocation.getArgument(0)));
+		given(this.store.deleteBookStore(SERVICE_INSTANCE_ID)).willReturn(Mono.empty());
+		given(this.repository.deleteById(SERVICE_INSTANCE_ID)).willReturn(Mono.empty());
+
+		DeleteServiceInstanceRequest request = DeleteServiceInstanceRequest.builder()
+			.serviceInstanceId(SERVICE_INSTANCE_ID)
+			.asyncAccepted(true)
+			.build();
+
+		StepVerifier.create(this.service.deleteServiceInstance(request)).consumeNextWith((response) -> {
+			assertThat(response.isAsync()).isTrue();
+			assertThat(response.getOperation()).isEqualTo("deprovision");
+		}).verifyComplete();
+
+		verify(this.repository, timeout(1000)).deleteById(SERVICE_INSTANCE_ID);
+		verify(this.store).deleteBookStore(SERVICE_INSTANCE_ID);
+	}
+
+	@Test
+	public void getLastOperationWhenInProgress() {
+		ServiceInstance serviceInstance = new ServiceInstance(SERVICE_INSTANCE_ID, null, null, new HashMap<>())
+			.withOperation("provision", OperationState.IN_PROGRESS, null);
+		given(this.repository.findById(SERVICE_INSTANCE_ID)).willReturn(Mono.just(serviceInstance));
+
+		GetLastServiceOperationRequest request = GetLastServiceOperationRequest.builder()
+			.serviceInstanceId(SERVICE_INSTANCE_ID)
+			.operation("provision")
+			.build();
+
+		StepVerifier.create(this.service.getLastOperation(request))
+			.consumeNextWith((response) -> assertThat(response.getState()).isEqualTo(OperationState.IN_PROGRESS))
+			.verifyComplete();
+	}
+
+	@Test
+	public void getLastOperationWhenDeprovisioned() {
+		given(this.repository.findById(SERVICE_INSTANCE_ID)).willReturn(Mono.empty());
+
+		GetLastServiceOperationRequest request = GetLastServiceOperationRequest.builder()
+			.serviceInstanceId(SERVICE_INSTANCE_ID)
+			.operation("deprovision")
+			.build();
+
+		StepVerifier.create(this.service.getLastOperation(request)).consumeNextWith((response) -> {
+			assertThat(response.getState()).isEqualTo(OperationState.SUCCEEDED);
+			assertThat(response.isDeleteOperation()).isTrue();
+		}).verifyComplete();
+	}
+
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.servicebroker.service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import org.springframework.cloud.sample.bookstore.servicebroker.model.ServiceBinding;
+import org.springframework.cloud.sample.bookstore.servicebroker.model.ServiceInstance;
+import org.springframework.cloud.sample.bookstore.servicebroker.repository.ServiceBindingRepository;
+import org.springframework.cloud.sample.bookstore.servicebroker.repository.ServiceInstanceRepository;
+import org.springframework.cloud.sample.bookstore.web.model.User;
+import org.springframework.cloud.sample.bookstore.web.repository.UserRepository;
+import org.springframework.cloud.sample.bookstore.web.security.BookStoreTokenService;
+import org.springframework.cloud.sample.bookstore.web.service.UserService;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.openMocks;
+import static org.springframework.cloud.sample.bookstore.web.security.SecurityAuthorities.BOOK_STORE_ID_PREFIX;
+import static org.springframework.cloud.sample.bookstore.web.security.SecurityAuthorities.FULL_ACCESS;
+
+public class OrphanedBindingReconcilerTests {
+
+	private static final String LIVE_INSTANCE_ID = "live-instance-id";
+
+	private static final String DELETED_INSTANCE_ID = "deleted-instance-id";
+
+	@Mock
+	private ServiceInstanceRepository instanceRepository;
+
+	@Mock
+	private ServiceBindingRepository bindingRepository;
+
+	@Mock
+	private UserRepository userRepository;
+
+	@Mock
+	private UserService userService;
+
+	@Mock
+	private BookStoreTokenService tokenService;
+
+	private OrphanedBindingReconciler reconciler;
+
+	@BeforeEach
+	public void setUp() {
+		openMocks(this);
+		this.reconciler = new OrphanedBindingReconciler(this.instanceRepository, this.bindingRepository,
+				this.userRepository, this.userService, this.tokenService, 2, Duration.ofHours(1));
+		given(this.instanceRepository.findAllById(anyIterable()))
+			.willReturn(Flux.just(new ServiceInstance(LIVE_INSTANCE_ID, null, null, new HashMap<>())));
+		given(this.bindingRepository.deleteAllById(any())).willReturn(Mono.empty());
+		given(this.userService.deleteUsers(any())).willAnswer((invocation) -> Mono.just(1L));
+		given(this.tokenService.revokeTokens(any())).willReturn(Mono.empty());
+	}
+
+	@Test
+	public void reconcilePurgesBindingsAndUsersOfDeletedInstances() {
+		given(this.bindingRepository.findAll()).willReturn(Flux.just(
+				new ServiceBinding("live-binding", LIVE_INSTANCE_ID, null, credentials(LIVE_INSTANCE_ID)),
+				new ServiceBinding("orphaned-binding", DELETED_INSTANCE_ID, null, credentials(DELETED_INSTANCE_ID)),
+				new ServiceBinding("legacy-binding", null, credentials(DELETED_INSTANCE_ID))));
+		given(this.userRepository.findAll()).willReturn(Flux.just(new User("admin", "password", FULL_ACCESS),
+				new User("live-binding", "password", FULL_ACCESS, BOOK_STORE_ID_PREFIX + LIVE_INSTANCE_ID),
+				new User("orphaned-binding", "password", FULL_ACCESS, BOOK_STORE_ID_PREFIX + DELETED_INSTANCE_ID)));
+
+		StepVerifier.create(this.reconciler.reconcile()).expectNext(3L).verifyComplete();
+
+		verify(this.bindingRepository).deleteAllById(List.of("orphaned-binding"));
+		verify(this.bindingRepository).deleteAllById(List.of("legacy-binding"));
+		verify(this.userService).deleteUsers(List.of("orphaned-binding"));
+		verify(this.tokenService, never()).revokeTokens(any());
+	}
+
+	private static Map<String, Object> credentials(String instanceId) {
+		Map<String, Object> credentials = new HashMap<>();
+		credentials.put("uri", "https://localhost:8080/bookstores/" + instanceId);
+		credentials.put("username", "user");
+		credentials.put("password", "password");
+		return credentials;
+	}
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.servicebroker.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import org.springframework.cloud.sample.bookstore.inmemory.InMemoryServiceInstanceRepository;
+import org.springframework.cloud.sample.bookstore.servicebroker.model.ServiceInstance;
+import org.springframework.cloud.servicebroker.model.instance.OperationState;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ServiceInstanceOperationExecutorTests {
+
+	private InMemoryServiceInstanceRepository repository;
+
+	private ServiceInstanceOperationExecutor executor;
+
+	@BeforeEach
+	public void setUp() {
+		this.repository = new InMemoryServiceInstanceRepository();
+		this.executor = new ServiceInstanceOperationExecutor(this.repository, 1, 16, Duration.ofMinutes(10));
+	}
+
+	@AfterEach
+	public void tearDown() {
+		this.executor.destroy();
+	}
+
+	@Test
+	public void staleOperationsAreMarkedFailed() {
+		ServiceInstance stale = inProgress("stale-instance", Instant.now().minus(Duration.ofHours(1)));
+		ServiceInstance recent = inProgress("recent-instance", Instant.now());
+		this.repository.save(stale).then(this.repository.save(recent)).block();
+
+		StepVerifier.create(this.executor.failStaleOperations()).expectNext(1L).verifyComplete();
+
+		ServiceInstance failed = this.repository.findById("stale-instance").block();
+		assertThat(failed.getOperationState()).isEqualTo(OperationState.FAILED);
+		assertThat(failed.getOperation()).isEqualTo("provision");
+		assertThat(this.repository.findById("recent-instance").block().getOperationState())
+			.isEqualTo(OperationState.IN_PROGRESS);
+	}
+
+	private static ServiceInstance inProgress(String instanceId, Instant updatedAt) {
+		ServiceInstance instance = new ServiceInstance(instanceId, null, null, new HashMap<>())
+			.withOperation("provision", OperationState.IN_PROGRESS, null);
+		ReflectionTestUtils.setField(instance, "operationUpdatedAt", updatedAt);
+		return instance;
+	}
+
+}
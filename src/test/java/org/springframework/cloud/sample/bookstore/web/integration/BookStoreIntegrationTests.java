@@ -16,25 +16,47 @@
 
 package org.springframework.cloud.sample.bookstore.web.integration;
 
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.ReadContext;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
 import org.springframework.cloud.sample.bookstore.web.controller.BookController;
 import org.springframework.cloud.sample.bookstore.web.controller.BookStoreController;
+import org.springframework.cloud.sample.bookstore.web.controller.BookStoreEventController;
 import org.springframework.cloud.sample.bookstore.web.model.Book;
 import org.springframework.cloud.sample.bookstore.web.model.BookStore;
 import org.springframework.cloud.sample.bookstore.web.repository.BookStoreRepository;
+import org.springframework.cloud.sample.bookstore.web.resource.BookStoreResourceCache;
+import org.springframework.cloud.sample.bookstore.web.service.BookStorage;
+import org.springframework.cloud.sample.bookstore.web.service.BookStoreChangedEvent;
+import org.springframework.cloud.sample.bookstore.web.service.BookStoreEventBroker;
+import org.springframework.cloud.sample.bookstore.web.service.BookStorePurger;
 import org.springframework.cloud.sample.bookstore.web.service.BookStoreService;
+import org.springframework.cloud.sample.bookstore.web.service.BookSuggestionIndex;
+import org.springframework.cloud.sample.bookstore.web.service.EmbeddedBookStorage;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.hateoas.MediaTypes;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -55,23 +77,51 @@ public class BookStoreIntegrationTests {
 
 	private static final String BOOK2_TITLE = "Greg L. Turnquist";
 
+	private static final int CONCURRENT_BOOKS = 50;
+
+	private static final int IMPORT_BATCH_SIZE = 2;
+
 	private WebTestClient client;
 
 	@Autowired
 	private BookStoreRepository repository;
 
+	private BookStorage bookStorage;
+
+	private BookStorePurger purger;
+
+	private BookStoreResourceCache resourceCache;
+
+	private BookStoreEventBroker eventBroker;
+
+	private BookSuggestionIndex suggestionIndex;
+
 	private BookStoreService service;
 
 	private String bookStoreId;
 
 	@BeforeEach
 	public void setUp() {
-		this.service = new BookStoreService(this.repository);
-
-		BookStoreController bookStoreController = new BookStoreController(this.service);
-		BookController bookController = new BookController(this.service);
-
-		this.client = WebTestClient.bindToController(bookStoreController, bookController).build();
+		this.bookStorage = createBookStorage(this.repository);
+		this.purger = new BookStorePurger(this.repository, this.bookStorage, 1, Duration.ZERO, Duration.ofMinutes(1),
+				Duration.ofMinutes(10));
+		this.resourceCache = new BookStoreResourceCache(Jackson2ObjectMapperBuilder.json().build(), 1024 * 1024,
+				Duration.ofMinutes(1));
+		this.eventBroker = new BookStoreEventBroker(16, false);
+		this.suggestionIndex = new BookSuggestionIndex(this.repository, this.bookStorage, 1024 * 1024,
+				Duration.ofMinutes(1));
+		this.service = new BookStoreService(this.repository, this.bookStorage, this.purger, this::publishEvent,
+				IMPORT_BATCH_SIZE, false);
+
+		BookStoreController bookStoreController = new BookStoreController(this.service, this.resourceCache);
+		BookController bookController = new BookController(this.service, this.suggestionIndex);
+		BookStoreEventController eventController = new BookStoreEventController(this.service, this.eventBroker,
+				Duration.ofMinutes(1));
+
+		this.client = WebTestClient.bindToController(bookStoreController, bookController, eventController)
+			.httpMessageCodecs((codecs) -> codecs.customCodecs()
+				.register(new Jackson2JsonEncoder(Jackson2ObjectMapperBuilder.json().build(), MediaTypes.HAL_JSON)))
+			.build();
 
 		this.bookStoreId = this.service.createBookStore()
 			.flatMap((bookStore) -> this.service
@@ -118,6 +168,238 @@ public class BookStoreIntegrationTests {
 			});
 	}
 
+	@Test
+	public void bookStoreIsPaged() {
+		BookStore bookStore = this.service.getBookStore(this.bookStoreId).block();
+		assertThat(bookStore).isNotNull();
+
+		String firstPageBody = this.client.get()
+			.uri("/bookstores/{bookStoreId}?limit=1", bookStore.getId())
+			.accept(MediaType.APPLICATION_JSON)
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectBody(String.class)
+			.returnResult()
+			.getResponseBody();
+		assertThat(firstPageBody).isNotNull();
+		ReadContext firstPage = JsonPath.parse(firstPageBody);
+		assertThat(firstPage.read("$.books", Collection.class)).hasSize(1);
+		List<String> nextLinks = firstPage.read("$.links[?(@.rel == 'next')].href", List.class);
+		assertThat(nextLinks).hasSize(1);
+
+		URI next = URI.create(nextLinks.get(0));
+		assertThat(next.getPath()).isEqualTo(buildBookStoreRef(bookStore.getId()));
+		this.client.get()
+			.uri(next.getPath() + "?" + next.getQuery())
+			.accept(MediaType.APPLICATION_JSON)
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectBody(String.class)
+			.consumeWith((result) -> {
+				String body = result.getResponseBody();
+				assertThat(body).isNotNull();
+				ReadContext ctx = JsonPath.parse(body);
+				assertThat(ctx.read("$.books", Collection.class)).hasSize(1);
+				assertThat(ctx.read("$.books[0].isbn", String.class))
+					.isNotEqualTo(firstPage.read("$.books[0].isbn", String.class));
+			});
+	}
+
+	@Test
+	public void invalidPageSizeIsRejected() {
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}?limit=0", this.bookStoreId)
+			.accept(MediaType.APPLICATION_JSON)
+			.exchange()
+			.expectStatus()
+			.isBadRequest();
+	}
+
+	@Test
+	public void bookStoreIsStreamed() {
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}", this.bookStoreId)
+			.accept(MediaType.APPLICATION_NDJSON)
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectHeader()
+			.contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+			.expectBodyList(Map.class)
+			.hasSize(2);
+	}
+
+	@Test
+	public void booksAreSearched() {
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}/books?isbn={isbn}", this.bookStoreId, BOOK1_ISBN)
+			.accept(MediaType.APPLICATION_JSON)
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectBody(String.class)
+			.consumeWith((result) -> assertThat(JsonPath.parse(result.getResponseBody())
+				.read("$.books[*].isbn", List.class)).containsExactly(BOOK1_ISBN));
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}/books?author={author}", this.bookStoreId, BOOK2_AUTHOR)
+			.accept(MediaType.APPLICATION_JSON)
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectBody(String.class)
+			.consumeWith((result) -> assertThat(JsonPath.parse(result.getResponseBody())
+				.read("$.books[*].isbn", List.class)).containsExactly(BOOK2_ISBN));
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}/books?title={title}", this.bookStoreId, "turnquist")
+			.accept(MediaType.APPLICATION_JSON)
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectBody(String.class)
+			.consumeWith((result) -> assertThat(JsonPath.parse(result.getResponseBody())
+				.read("$.books[*].isbn", List.class)).containsExactly(BOOK2_ISBN));
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}/books?author={author}&isbn={isbn}", this.bookStoreId, BOOK2_AUTHOR,
+					BOOK1_ISBN)
+			.accept(MediaType.APPLICATION_JSON)
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectBody(String.class)
+			.consumeWith((result) -> assertThat(JsonPath.parse(result.getResponseBody()).read("$.books", List.class))
+				.isEmpty());
+	}
+
+	@Test
+	public void titlesAreSearchedByWholeWords() {
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}/books?title={title}", this.bookStoreId, "l. TURNQUIST")
+			.accept(MediaType.APPLICATION_JSON)
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectBody(String.class)
+			.consumeWith((result) -> assertThat(JsonPath.parse(result.getResponseBody())
+				.read("$.books[*].isbn", List.class)).containsExactly(BOOK2_ISBN));
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}/books?title={title}", this.bookStoreId, "turnq")
+			.accept(MediaType.APPLICATION_JSON)
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectBody(String.class)
+			.consumeWith((result) -> assertThat(JsonPath.parse(result.getResponseBody()).read("$.books", List.class))
+				.isEmpty());
+	}
+
+	@Test
+	public void searchResultsArePaged() {
+		String firstPageBody = this.client.get()
+			.uri("/bookstores/{bookStoreId}/books?title={title}&limit=1", this.bookStoreId, "")
+			.accept(MediaType.APPLICATION_JSON)
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectBody(String.class)
+			.returnResult()
+			.getResponseBody();
+		ReadContext firstPage = JsonPath.parse(firstPageBody);
+		assertThat(firstPage.read("$.books", Collection.class)).hasSize(1);
+		List<String> nextLinks = firstPage.read("$.links[?(@.rel == 'next')].href", List.class);
+		assertThat(nextLinks).hasSize(1);
+
+		URI next = URI.create(nextLinks.get(0));
+		assertThat(next.getPath()).isEqualTo(buildBookStoreRef(this.bookStoreId) + "/books");
+		this.client.get()
+			.uri(next.getPath() + "?" + next.getQuery())
+			.accept(MediaType.APPLICATION_JSON)
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectBody(String.class)
+			.consumeWith((result) -> {
+				ReadContext ctx = JsonPath.parse(result.getResponseBody());
+				assertThat(ctx.read("$.books", Collection.class)).hasSize(1);
+				assertThat(ctx.read("$.books[0].isbn", String.class))
+					.isNotEqualTo(firstPage.read("$.books[0].isbn", String.class));
+			});
+	}
+
+	@Test
+	public void searchResultsAreStreamed() {
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}/books?author={author}", this.bookStoreId, BOOK1_AUTHOR)
+			.accept(MediaType.APPLICATION_NDJSON)
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectHeader()
+			.contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+			.expectBodyList(Map.class)
+			.consumeWith((result) -> assertThat(result.getResponseBody()).extracting((book) -> book.get("isbn"))
+				.containsExactly(BOOK1_ISBN));
+	}
+
+	@Test
+	public void titlesAndAuthorsAreSuggested() {
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}/books/suggest?q={q}", this.bookStoreId, "tur")
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectBody(String.class)
+			.consumeWith((result) -> {
+				ReadContext ctx = JsonPath.parse(result.getResponseBody());
+				assertThat(ctx.read("$.titles", List.class)).containsExactly(BOOK2_TITLE);
+				assertThat(ctx.read("$.authors", List.class)).isEmpty();
+			});
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}/books/suggest?q={q}", this.bookStoreId, "Spring")
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectBody(String.class)
+			.consumeWith((result) -> assertThat(JsonPath.parse(result.getResponseBody()).read("$.authors", List.class))
+				.containsExactly(BOOK2_AUTHOR, BOOK1_AUTHOR));
+	}
+
+	@Test
+	public void suggestionsFollowChanges() {
+		// build the index before the changes
+		this.suggestionIndex.suggest(this.bookStoreId, "a", 10).block();
+		Book added = this.service.putBookInStore(this.bookStoreId, new Book("978-1", "Reactive Spring", "Josh Long"))
+			.block();
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}/books/suggest?q={q}", this.bookStoreId, "rea")
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectBody(String.class)
+			.consumeWith((result) -> assertThat(JsonPath.parse(result.getResponseBody()).read("$.titles", List.class))
+				.containsExactly("Reactive Spring"));
+
+		this.service.removeBookFromStore(this.bookStoreId, added.getId()).block();
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}/books/suggest?q={q}", this.bookStoreId, "rea")
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectBody(String.class)
+			.consumeWith((result) -> assertThat(JsonPath.parse(result.getResponseBody()).read("$.titles", List.class))
+				.isEmpty());
+	}
+
+	@Test
+	public void unknownBookStoreSuggestionsAreRejected() {
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}/books/suggest?q={q}", "unknown", "spring")
+			.exchange()
+			.expectStatus()
+			.isBadRequest();
+	}
+
 	@Test
 	public void bookIsRetrieved() {
 		BookStore bookStore = this.service.getBookStore(this.bookStoreId).block();
@@ -150,6 +432,22 @@ public class BookStoreIntegrationTests {
 		assertThat(updatedBokStore.getBooks()).size().isEqualTo(2);
 	}
 
+	@Test
+	public void unknownBookIsRejected() {
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}/books/{bookId}", this.bookStoreId, "unknown-book-id")
+			.exchange()
+			.expectStatus()
+			.isBadRequest()
+			.expectBody(String.class)
+			.consumeWith((result) -> {
+				String body = result.getResponseBody();
+				assertThat(body).isNotNull();
+				ReadContext ctx = JsonPath.parse(body);
+				assertThat(ctx.read("$.errorMessage", String.class)).contains("unknown-book-id");
+			});
+	}
+
 	@Test
 	public void bookIsAdded() {
 		BookStore bookStore = this.service.getBookStore(this.bookStoreId).block();
@@ -181,6 +479,48 @@ public class BookStoreIntegrationTests {
 		assertThat(updatedBokStore.getBooks()).size().isEqualTo(3);
 	}
 
+	@Test
+	public void booksAreImported() {
+		this.client.post()
+			.uri("/bookstores/{bookStoreId}/books", this.bookStoreId)
+			.contentType(MediaType.APPLICATION_JSON)
+			.accept(MediaType.APPLICATION_JSON)
+			.bodyValue("[{\"isbn\":\"978-1785284151\",\"title\":\"Spring Boot Cookbook\",\"author\":\"Alex Antonov\"},"
+					+ "{\"isbn\":\"978-1617294945\",\"title\":\"Spring in Action\",\"author\":\"Craig Walls\"},"
+					+ "{\"isbn\":\"978-1484227893\",\"title\":\"Pro Spring 5\",\"author\":\"Iuliana Cosmina\"}]")
+			.exchange()
+			.expectStatus()
+			.isCreated()
+			.expectBody(String.class)
+			.consumeWith((result) -> {
+				String body = result.getResponseBody();
+				assertThat(body).isNotNull();
+				ReadContext ctx = JsonPath.parse(body);
+				assertThat(ctx.read("$.ids", Collection.class)).hasSize(3).doesNotContainNull();
+			});
+
+		BookStore updatedBookStore = this.service.getBookStore(this.bookStoreId).block();
+		assertThat(updatedBookStore).isNotNull();
+		assertThat(updatedBookStore.getBooks()).size().isEqualTo(5);
+	}
+
+	@Test
+	public void booksAreImportedFromNdjson() {
+		this.client.post()
+			.uri("/bookstores/{bookStoreId}/books", this.bookStoreId)
+			.contentType(MediaType.APPLICATION_NDJSON)
+			.accept(MediaType.APPLICATION_JSON)
+			.bodyValue("{\"isbn\":\"978-1785284151\",\"title\":\"Spring Boot Cookbook\",\"author\":\"Alex Antonov\"}\n"
+					+ "{\"isbn\":\"978-1617294945\",\"title\":\"Spring in Action\",\"author\":\"Craig Walls\"}\n")
+			.exchange()
+			.expectStatus()
+			.isCreated();
+
+		BookStore updatedBookStore = this.service.getBookStore(this.bookStoreId).block();
+		assertThat(updatedBookStore).isNotNull();
+		assertThat(updatedBookStore.getBooks()).size().isEqualTo(4);
+	}
+
 	@Test
 	public void bookIsDeleted() {
 		BookStore bookStore = this.service.getBookStore(this.bookStoreId).block();
@@ -212,6 +552,302 @@ public class BookStoreIntegrationTests {
 		assertThat(updatedBookStore.getBooks()).size().isEqualTo(1);
 	}
 
+	@Test
+	public void concurrentBookAdditionsAreNotLost() {
+		Flux.range(0, CONCURRENT_BOOKS)
+			.flatMap((i) -> this.service.putBookInStore(this.bookStoreId, new Book("isbn-" + i, "title", "author")),
+					CONCURRENT_BOOKS)
+			.blockLast();
+
+		BookStore updatedBookStore = this.service.getBookStore(this.bookStoreId).block();
+		assertThat(updatedBookStore).isNotNull();
+		assertThat(updatedBookStore.getBooks()).size().isEqualTo(CONCURRENT_BOOKS + 2);
+	}
+
+	@Test
+	public void unchangedBookStoreIsNotModified() {
+		String eTag = this.client.get()
+			.uri("/bookstores/{bookStoreId}", this.bookStoreId)
+			.accept(MediaType.APPLICATION_JSON)
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.returnResult(String.class)
+			.getResponseHeaders()
+			.getETag();
+		assertThat(eTag).isNotNull().doesNotStartWith("W/");
+
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}", this.bookStoreId)
+			.accept(MediaType.APPLICATION_JSON)
+			.ifNoneMatch(eTag)
+			.exchange()
+			.expectStatus()
+			.isNotModified()
+			.expectHeader()
+			.valueEquals(HttpHeaders.ETAG, eTag)
+			.expectBody()
+			.isEmpty();
+
+		this.service.putBookInStore(this.bookStoreId, new Book(BOOK1_ISBN, BOOK1_TITLE, BOOK1_AUTHOR)).block();
+
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}", this.bookStoreId)
+			.accept(MediaType.APPLICATION_JSON)
+			.ifNoneMatch(eTag)
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectHeader()
+			.value(HttpHeaders.ETAG, (newETag) -> assertThat(newETag).isNotEqualTo(eTag));
+	}
+
+	@Test
+	public void bookStoreIsNegotiatedForMediaTypesOtherThanJson() {
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}", this.bookStoreId)
+			.accept(MediaTypes.HAL_JSON)
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectHeader()
+			.contentTypeCompatibleWith(MediaTypes.HAL_JSON)
+			.expectHeader()
+			.exists(HttpHeaders.ETAG);
+
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}", this.bookStoreId)
+			.accept(MediaType.TEXT_PLAIN)
+			.exchange()
+			.expectStatus()
+			.isEqualTo(HttpStatus.NOT_ACCEPTABLE);
+	}
+
+	@Test
+	public void unchangedBookIsNotModified() {
+		Book book = this.service.getBookStore(this.bookStoreId).block().getBooks().get(0);
+		String eTag = this.client.get()
+			.uri("/bookstores/{bookStoreId}/books/{bookId}", this.bookStoreId, book.getId())
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.returnResult(String.class)
+			.getResponseHeaders()
+			.getETag();
+		assertThat(eTag).isNotNull();
+
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}/books/{bookId}", this.bookStoreId, book.getId())
+			.ifNoneMatch(eTag)
+			.exchange()
+			.expectStatus()
+			.isNotModified();
+	}
+
+	@Test
+	public void conditionalUpdatesRequireCurrentVersion() {
+		BookStore bookStore = this.service.getBookStore(this.bookStoreId).block();
+		String eTag = "\"" + bookStore.getVersion() + "\"";
+
+		this.client.put()
+			.uri("/bookstores/{bookStoreId}/books", this.bookStoreId)
+			.contentType(MediaType.APPLICATION_JSON)
+			.ifMatch(eTag)
+			.bodyValue("{\"isbn\":\"978-1785284151\", \"title\":\"Spring Boot Cookbook\", \"author\":\"Alex Antonov\"}")
+			.exchange()
+			.expectStatus()
+			.isCreated();
+
+		this.client.delete()
+			.uri("/bookstores/{bookStoreId}/books/{bookId}", this.bookStoreId, bookStore.getBooks().get(0).getId())
+			.ifMatch(eTag)
+			.exchange()
+			.expectStatus()
+			.isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+		BookStore updatedBookStore = this.service.getBookStore(this.bookStoreId).block();
+		assertThat(updatedBookStore.getBooks()).hasSize(3);
+
+		this.client.delete()
+			.uri("/bookstores/{bookStoreId}/books/{bookId}", this.bookStoreId, bookStore.getBooks().get(0).getId())
+			.ifMatch("\"" + updatedBookStore.getVersion() + "\"")
+			.exchange()
+			.expectStatus()
+			.isOk();
+		assertThat(this.service.getBookStore(this.bookStoreId).block().getBooks()).hasSize(2);
+	}
+
+	@Test
+	public void conditionalDeleteOfUnknownBookKeepsVersion() {
+		long version = this.service.getBookStoreVersion(this.bookStoreId).block();
+
+		this.client.delete()
+			.uri("/bookstores/{bookStoreId}/books/{bookId}", this.bookStoreId, "unknown-book-id")
+			.ifMatch("\"" + version + "\"")
+			.exchange()
+			.expectStatus()
+			.isBadRequest();
+
+		assertThat(this.service.getBookStoreVersion(this.bookStoreId).block()).isEqualTo(version);
+	}
+
+	@Test
+	public void cachedBookStoreIsServedUntilChanged() {
+		String eTag = this.client.get()
+			.uri("/bookstores/{bookStoreId}", this.bookStoreId)
+			.accept(MediaType.APPLICATION_JSON)
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.returnResult(String.class)
+			.getResponseHeaders()
+			.getETag();
+
+		// removed behind the service's back, so the cache is not told
+		this.repository.deleteById(this.bookStoreId).block();
+
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}", this.bookStoreId)
+			.accept(MediaType.APPLICATION_JSON)
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectHeader()
+			.valueEquals(HttpHeaders.ETAG, eTag)
+			.expectHeader()
+			.contentTypeCompatibleWith(MediaType.APPLICATION_JSON)
+			.expectBody(String.class)
+			.consumeWith((result) -> assertThat(JsonPath.parse(result.getResponseBody()).read("$.books", List.class))
+				.hasSize(2));
+
+		this.service.deleteBookStore(this.bookStoreId).block();
+
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}", this.bookStoreId)
+			.accept(MediaType.APPLICATION_JSON)
+			.exchange()
+			.expectStatus()
+			.isBadRequest();
+	}
+
+	@Test
+	public void bookStoreChangesAreStreamed() {
+		Flux<ServerSentEvent<Map<String, Object>>> events = this.client.get()
+			.uri("/bookstores/{bookStoreId}/events", this.bookStoreId)
+			.accept(MediaType.TEXT_EVENT_STREAM)
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.returnResult(new ParameterizedTypeReference<ServerSentEvent<Map<String, Object>>>() {
+			})
+			.getResponseBody();
+
+		// the stream follows the store asynchronously, so books are added until one is seen
+		Disposable additions = Flux.interval(Duration.ofMillis(100))
+			.concatMap((tick) -> this.service.putBookInStore(this.bookStoreId,
+					new Book(BOOK1_ISBN, BOOK1_TITLE, BOOK1_AUTHOR)))
+			.subscribe();
+		try {
+			StepVerifier.create(events.take(1)).assertNext((event) -> {
+				assertThat(event.event()).isEqualTo("book-added");
+				assertThat(Long.parseLong(event.id())).isPositive();
+				assertThat(event.data()).containsEntry("isbn", BOOK1_ISBN);
+				assertThat(event.data()).containsKey("links");
+			}).expectComplete().verify(Duration.ofSeconds(10));
+		}
+		finally {
+			additions.dispose();
+		}
+	}
+
+	@Test
+	public void unknownBookStoreEventsAreRejected() {
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}/events", "unknown")
+			.accept(MediaType.TEXT_EVENT_STREAM)
+			.exchange()
+			.expectStatus()
+			.isBadRequest();
+	}
+
+	@Test
+	public void softDeletedBookStoreIsRejectedAndPurged() {
+		BookStore bookStore = this.service.getBookStore(this.bookStoreId).block();
+		assertThat(bookStore).isNotNull();
+		Book book = bookStore.getBooks().get(0);
+		BookStoreService softDeleteService = new BookStoreService(this.repository, this.bookStorage, this.purger,
+				this::publishEvent, IMPORT_BATCH_SIZE, true);
+
+		softDeleteService.deleteBookStore(this.bookStoreId).block();
+
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}", this.bookStoreId)
+			.accept(MediaType.APPLICATION_JSON)
+			.exchange()
+			.expectStatus()
+			.isBadRequest();
+		this.client.get()
+			.uri("/bookstores/{bookStoreId}/books/{bookId}", this.bookStoreId, book.getId())
+			.exchange()
+			.expectStatus()
+			.isBadRequest();
+		assertThat(this.repository.existsById(this.bookStoreId).block()).isTrue();
+
+		this.purger.purgeDeletedBookStores().block();
+
+		assertThat(this.repository.existsById(this.bookStoreId).block()).isFalse();
+		assertThat(this.bookStorage.streamBooks(this.bookStoreId).collectList().block()).isEmpty();
+	}
+
+	@Test
+	public void softDeletedBookStoreClaimedByAnotherPurgerIsOnlyPurgedOnceTheClaimIsStale() {
+		Instant claimedAt = Instant.now().minus(Duration.ofMinutes(5));
+		this.repository.markDeleted(this.bookStoreId).block();
+		assertThat(this.repository.claimForPurge(this.bookStoreId, "other-purger", claimedAt, claimedAt).block())
+			.isTrue();
+
+		this.purger.purgeDeletedBookStores().block();
+
+		assertThat(this.repository.existsById(this.bookStoreId).block()).isTrue();
+
+		new BookStorePurger(this.repository, this.bookStorage, 1, Duration.ZERO, Duration.ofMinutes(1),
+				Duration.ofMinutes(1))
+			.purgeDeletedBookStores()
+			.block();
+
+		assertThat(this.repository.existsById(this.bookStoreId).block()).isFalse();
+		assertThat(this.bookStorage.streamBooks(this.bookStoreId).collectList().block()).isEmpty();
+	}
+
+	@Test
+	public void bookRemovalFromStoreMarkedDeletedElsewhereIsRejected() {
+		BookStore bookStore = this.service.getBookStore(this.bookStoreId).block();
+		assertThat(bookStore).isNotNull();
+		Book book = bookStore.getBooks().get(0);
+
+		this.repository.markDeleted(this.bookStoreId).block();
+
+		this.client.delete()
+			.uri("/bookstores/{bookStoreId}/books/{bookId}", this.bookStoreId, book.getId())
+			.exchange()
+			.expectStatus()
+			.isBadRequest();
+		assertThat(this.bookStorage.streamBooks(this.bookStoreId).collectList().block())
+			.hasSameSizeAs(bookStore.getBooks());
+	}
+
+	protected BookStorage createBookStorage(BookStoreRepository bookStoreRepository) {
+		return new EmbeddedBookStorage(bookStoreRepository);
+	}
+
+	private void publishEvent(Object event) {
+		if (event instanceof BookStoreChangedEvent) {
+			this.resourceCache.evict(((BookStoreChangedEvent) event).getBookStoreId());
+			this.eventBroker.onApplicationEvent((BookStoreChangedEvent) event);
+			this.suggestionIndex.onApplicationEvent((BookStoreChangedEvent) event);
+		}
+	}
+
 	private String buildBookStoreRef(String bookStoreId) {
 		return "/bookstores/" + bookStoreId;
 	}
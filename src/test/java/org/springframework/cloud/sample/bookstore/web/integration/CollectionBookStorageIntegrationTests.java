@@ -0,0 +1,36 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.integration;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.sample.bookstore.web.repository.BookRepository;
+import org.springframework.cloud.sample.bookstore.web.repository.BookStoreRepository;
+import org.springframework.cloud.sample.bookstore.web.service.BookStorage;
+import org.springframework.cloud.sample.bookstore.web.service.CollectionBookStorage;
+
+public class CollectionBookStorageIntegrationTests extends BookStoreIntegrationTests {
+
+	@Autowired
+	private BookRepository bookRepository;
+
+	@Override
+	protected BookStorage createBookStorage(BookStoreRepository bookStoreRepository) {
+		this.bookRepository.ensureIndexes().block();
+		return new CollectionBookStorage(bookStoreRepository, this.bookRepository);
+	}
+
+}
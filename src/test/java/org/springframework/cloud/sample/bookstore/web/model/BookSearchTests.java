@@ -0,0 +1,47 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BookSearchTests {
+
+	private static final Book BOOK = new Book("978-1786463784", "Learning Spring Boot 2.0", "Greg L. Turnquist");
+
+	@Test
+	public void titleMatchesWholeWordPhraseIgnoringCase() {
+		assertThat(new BookSearch(null, "spring BOOT", null).matches(BOOK)).isTrue();
+		assertThat(new BookSearch(null, "Boot 2.0", null).matches(BOOK)).isTrue();
+		assertThat(new BookSearch(null, "Boo", null).matches(BOOK)).isFalse();
+		assertThat(new BookSearch(null, "Learning Boot", null).matches(BOOK)).isFalse();
+	}
+
+	@Test
+	public void blankCriteriaMatchEveryBook() {
+		assertThat(new BookSearch(" ", "", null).matches(BOOK)).isTrue();
+		assertThat(new BookSearch(" ", "", null).getTitlePattern()).isNull();
+	}
+
+	@Test
+	public void authorAndIsbnMatchExactly() {
+		assertThat(new BookSearch("Greg L. Turnquist", null, "978-1786463784").matches(BOOK)).isTrue();
+		assertThat(new BookSearch("greg l. turnquist", null, null).matches(BOOK)).isFalse();
+	}
+
+}
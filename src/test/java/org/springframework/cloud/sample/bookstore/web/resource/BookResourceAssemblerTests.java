@@ -0,0 +1,98 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.resource;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import org.springframework.cloud.sample.bookstore.web.controller.BookController;
+import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.server.reactive.WebFluxLinkBuilder;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.filter.reactive.ServerWebExchangeContextFilter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BookResourceAssemblerTests {
+
+	private static final String BOOK_STORE_ID = "store 1";
+
+	private static final Context EXCHANGE_CONTEXT = Context.of(
+			ServerWebExchangeContextFilter.EXCHANGE_CONTEXT_ATTRIBUTE,
+			MockServerWebExchange.from(MockServerHttpRequest.get("https://example.com:8443/bookstores/store")));
+
+	private final BookResourceAssembler assembler = new BookResourceAssembler();
+
+	private final List<Book> books = List.of(book("5f1e2d3c4b5a69788796a5b4"), book("book 2"), book("bök-3"));
+
+	@Test
+	public void toCollectionModelLinksMatchLinkBuilder() {
+		List<BookResource> bookResources = this.assembler.toCollectionModel(this.books, BOOK_STORE_ID)
+			.contextWrite(EXCHANGE_CONTEXT)
+			.block();
+
+		assertThat(bookResources).extracting((bookResource) -> bookResource.getRequiredLink("self"))
+			.containsExactlyElementsOf(expectedLinks());
+	}
+
+	@Test
+	public void toModelsLinksMatchLinkBuilder() {
+		List<BookResource> bookResources = this.assembler.toModels(Flux.fromIterable(this.books), BOOK_STORE_ID)
+			.collectList()
+			.contextWrite(EXCHANGE_CONTEXT)
+			.block();
+
+		assertThat(bookResources).extracting(BookResource::getIsbn).containsExactly("isbn", "isbn", "isbn");
+		assertThat(bookResources).extracting((bookResource) -> bookResource.getRequiredLink("self"))
+			.containsExactlyElementsOf(expectedLinks());
+	}
+
+	@Test
+	public void toModelLinkMatchesLinkBuilderWithoutExchange() {
+		Book book = this.books.get(0);
+
+		BookResource bookResource = this.assembler.toModel(book, BOOK_STORE_ID).block();
+
+		assertThat(bookResource.getRequiredLink("self")).isEqualTo(linkBuilderLink(book).block());
+	}
+
+	private List<Link> expectedLinks() {
+		return Flux.fromIterable(this.books)
+			.concatMap(BookResourceAssemblerTests::linkBuilderLink)
+			.collectList()
+			.contextWrite(EXCHANGE_CONTEXT)
+			.block();
+	}
+
+	private static Mono<Link> linkBuilderLink(Book book) {
+		return WebFluxLinkBuilder
+			.linkTo(WebFluxLinkBuilder.methodOn(BookController.class).getBook(BOOK_STORE_ID, book.getId(), null))
+			.withSelfRel()
+			.toMono();
+	}
+
+	private static Book book(String id) {
+		return new Book(id, BOOK_STORE_ID, new Book("isbn", "title", "author"));
+	}
+
+}
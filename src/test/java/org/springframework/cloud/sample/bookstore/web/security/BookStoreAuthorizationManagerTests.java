@@ -0,0 +1,161 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.security;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.web.server.authorization.AuthorizationContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.sample.bookstore.web.security.SecurityAuthorities.BOOK_STORE_ID_PREFIX;
+import static org.springframework.cloud.sample.bookstore.web.security.SecurityAuthorities.FULL_ACCESS;
+import static org.springframework.cloud.sample.bookstore.web.security.SecurityAuthorities.READ_ONLY;
+
+public class BookStoreAuthorizationManagerTests {
+
+	private static final String BOOK_STORE_ID = "store-1";
+
+	private static final String OTHER_BOOK_STORE_ID = "store-2";
+
+	private final BookStoreAuthorizationManager manager = new BookStoreAuthorizationManager();
+
+	@Test
+	public void precomputedAccessIsUsedForBookStoreUserDetails() {
+		Authentication authentication = authenticated(
+				new AccessOnlyUserDetails(BookStoreAccess.of(AuthorityUtils.createAuthorityList(FULL_ACCESS,
+						BOOK_STORE_ID_PREFIX + BOOK_STORE_ID))),
+				READ_ONLY);
+
+		assertThat(isGranted(authentication, HttpMethod.PUT, BOOK_STORE_ID)).isTrue();
+		assertThat(isGranted(authentication, HttpMethod.GET, OTHER_BOOK_STORE_ID)).isFalse();
+	}
+
+	@Test
+	public void fullAccessCanReadAndWriteOwnBookStore() {
+		Authentication authentication = authenticated("user", FULL_ACCESS, BOOK_STORE_ID_PREFIX + BOOK_STORE_ID);
+
+		assertThat(isGranted(authentication, HttpMethod.GET, BOOK_STORE_ID)).isTrue();
+		assertThat(isGranted(authentication, HttpMethod.DELETE, BOOK_STORE_ID)).isTrue();
+		assertThat(isGranted(authentication, HttpMethod.GET, OTHER_BOOK_STORE_ID)).isFalse();
+	}
+
+	@Test
+	public void readOnlyCannotWrite() {
+		Authentication authentication = authenticated("user", READ_ONLY);
+
+		assertThat(isGranted(authentication, HttpMethod.GET, BOOK_STORE_ID)).isTrue();
+		assertThat(isGranted(authentication, HttpMethod.POST, BOOK_STORE_ID)).isFalse();
+	}
+
+	@Test
+	public void readOnlyCanSendOptions() {
+		Authentication authentication = authenticated("user", READ_ONLY);
+
+		assertThat(isGranted(authentication, HttpMethod.OPTIONS, BOOK_STORE_ID)).isTrue();
+	}
+
+	@Test
+	public void unauthenticatedIsDenied() {
+		TestingAuthenticationToken authentication = new TestingAuthenticationToken("user", "password", FULL_ACCESS);
+		authentication.setAuthenticated(false);
+
+		assertThat(isGranted(authentication, HttpMethod.GET, BOOK_STORE_ID)).isFalse();
+	}
+
+	private boolean isGranted(Authentication authentication, HttpMethod method, String bookStoreId) {
+		MockServerWebExchange exchange = MockServerWebExchange
+			.from(MockServerHttpRequest.method(method, "/bookstores/{id}", bookStoreId));
+		AuthorizationContext context = new AuthorizationContext(exchange,
+				Map.of(BookStoreAuthorizationManager.BOOK_STORE_ID_VARIABLE, bookStoreId));
+		return this.manager.check(Mono.just(authentication), context)
+			.map(AuthorizationDecision::isGranted)
+			.blockOptional()
+			.orElse(false);
+	}
+
+	private static Authentication authenticated(Object principal, String... authorities) {
+		return UsernamePasswordAuthenticationToken.authenticated(principal, "password",
+				AuthorityUtils.createAuthorityList(authorities));
+	}
+
+	private static final class AccessOnlyUserDetails implements BookStoreUserDetails {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient BookStoreAccess bookStoreAccess;
+
+		AccessOnlyUserDetails(BookStoreAccess bookStoreAccess) {
+			this.bookStoreAccess = bookStoreAccess;
+		}
+
+		@Override
+		public BookStoreAccess getBookStoreAccess() {
+			return this.bookStoreAccess;
+		}
+
+		@Override
+		public Collection<? extends GrantedAuthority> getAuthorities() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public String getPassword() {
+			return "password";
+		}
+
+		@Override
+		public String getUsername() {
+			return "user";
+		}
+
+		@Override
+		public boolean isAccountNonExpired() {
+			return true;
+		}
+
+		@Override
+		public boolean isAccountNonLocked() {
+			return true;
+		}
+
+		@Override
+		public boolean isCredentialsNonExpired() {
+			return true;
+		}
+
+		@Override
+		public boolean isEnabled() {
+			return true;
+		}
+
+	}
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.security;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import org.springframework.cloud.sample.bookstore.inmemory.InMemoryRevokedTokenRepository;
+import org.springframework.cloud.sample.bookstore.web.model.RevokedToken;
+import org.springframework.cloud.sample.bookstore.web.repository.RevokedTokenRepository;
+import org.springframework.security.authentication.BadCredentialsException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.MockitoAnnotations.openMocks;
+import static org.springframework.cloud.sample.bookstore.web.security.SecurityAuthorities.BOOK_STORE_ID_PREFIX;
+import static org.springframework.cloud.sample.bookstore.web.security.SecurityAuthorities.FULL_ACCESS;
+
+public class BookStoreTokenServiceTests {
+
+	private static final String TOKEN_ID = "binding-id";
+
+	private static final String BOOK_STORE_ID = "instance-id";
+
+	private static final Duration TIME_TO_LIVE = Duration.ofDays(30);
+
+	@Mock
+	private RevokedTokenRepository repository;
+
+	private BookStoreTokenService service;
+
+	@BeforeEach
+	public void setUp() {
+		openMocks(this);
+		this.service = newService(this.repository, "test-secret", TIME_TO_LIVE);
+	}
+
+	@Test
+	public void issuedTokenAuthenticatesWithBookStoreAccess() {
+		String token = issueToken();
+
+		StepVerifier.create(this.service.authenticate(token)).assertNext((authentication) -> {
+			assertThat(authentication.isAuthenticated()).isTrue();
+			assertThat(authentication.getName()).isEqualTo(TOKEN_ID);
+			assertThat(((BookStoreTokenAuthentication) authentication).getBookStoreAccess().getBookStoreIds())
+				.containsExactly(BOOK_STORE_ID);
+		}).verifyComplete();
+	}
+
+	@Test
+	public void tamperedTokenIsRejected() {
+		String token = issueToken();
+		String tampered = "x" + token.substring(1);
+
+		StepVerifier.create(this.service.authenticate(tampered)).verifyError(BadCredentialsException.class);
+		StepVerifier.create(this.service.authenticate("not-a-token")).verifyError(BadCredentialsException.class);
+	}
+
+	@Test
+	public void tokenSignedWithAnotherSecretIsRejected() {
+		String token = newService(this.repository, "other-secret", TIME_TO_LIVE).issueToken(TOKEN_ID, BOOK_STORE_ID, FULL_ACCESS)
+			.block();
+
+		StepVerifier.create(this.service.authenticate(token)).verifyError(BadCredentialsException.class);
+	}
+
+	@Test
+	public void revokedTokenIsRejected() {
+		given(this.repository.save(any(RevokedToken.class)))
+			.willAnswer((invocation) -> Mono.just(invocation.getArgument(0)));
+		String token = issueToken();
+
+		StepVerifier.create(this.service.revokeToken(TOKEN_ID)).verifyComplete();
+
+		StepVerifier.create(this.service.authenticate(token)).verifyError(BadCredentialsException.class);
+	}
+
+	@Test
+	public void expiredTokenIsRejected() {
+		BookStoreTokenService service = newService(this.repository, "test-secret", Duration.ofMillis(-1));
+		String token = service.issueToken(TOKEN_ID, BOOK_STORE_ID, FULL_ACCESS).block();
+
+		StepVerifier.create(service.authenticate(token))
+			.expectErrorMatches((ex) -> ex instanceof BadCredentialsException
+					&& ex.getMessage().equals("Token has expired"))
+			.verify();
+	}
+
+	@Test
+	public void expiredRevocationsArePruned() {
+		InMemoryRevokedTokenRepository repository = new InMemoryRevokedTokenRepository();
+		repository.save(new RevokedToken("expired-id", Instant.now().minus(Duration.ofMinutes(1)))).block();
+		BookStoreTokenService service = newService(repository, "test-secret", TIME_TO_LIVE);
+		service.loadRevokedTokens().then(service.revokeToken(TOKEN_ID)).block();
+
+		StepVerifier.create(service.pruneRevokedTokens()).expectNext(1L).verifyComplete();
+
+		assertThat(repository.findAll().map(RevokedToken::getTokenId).collectList().block())
+			.containsExactly(TOKEN_ID);
+		String token = service.issueToken(TOKEN_ID, BOOK_STORE_ID, FULL_ACCESS).block();
+		StepVerifier.create(service.authenticate(token)).verifyError(BadCredentialsException.class);
+	}
+
+	@Test
+	public void tokenRevokedByAnotherInstanceIsRejectedAfterReload() {
+		InMemoryRevokedTokenRepository repository = new InMemoryRevokedTokenRepository();
+		BookStoreTokenService revoking = newService(repository, "test-secret", TIME_TO_LIVE);
+		BookStoreTokenService reloading = new BookStoreTokenService(repository, new ObjectMapper(), "test-secret",
+				TIME_TO_LIVE, Duration.ofHours(1), Duration.ofMillis(50));
+		reloading.afterSingletonsInstantiated();
+		try {
+			String token = revoking.issueToken(TOKEN_ID, BOOK_STORE_ID, FULL_ACCESS).block();
+			StepVerifier.create(reloading.authenticate(token)).expectNextCount(1).verifyComplete();
+
+			revoking.revokeToken(TOKEN_ID).block();
+
+			StepVerifier.create(Flux.interval(Duration.ofMillis(10))
+				.concatMap((tick) -> reloading.authenticate(token).thenReturn(true).onErrorReturn(false))
+				.filter((authenticated) -> !authenticated)
+				.next()
+				.timeout(Duration.ofSeconds(5))).expectNext(false).verifyComplete();
+		}
+		finally {
+			reloading.destroy();
+		}
+	}
+
+	private static BookStoreTokenService newService(RevokedTokenRepository repository, String secret,
+			Duration timeToLive) {
+		return new BookStoreTokenService(repository, new ObjectMapper(), secret, timeToLive, Duration.ofHours(1),
+				Duration.ofMinutes(1));
+	}
+
+	private String issueToken() {
+		return this.service.issueToken(TOKEN_ID, BOOK_STORE_ID, FULL_ACCESS, BOOK_STORE_ID_PREFIX + BOOK_STORE_ID)
+			.block();
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.security;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import org.springframework.cloud.sample.bookstore.web.service.UserDeletedEvent;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CachingReactiveAuthenticationManagerTests {
+
+	private final AtomicInteger verifications = new AtomicInteger();
+
+	private CachingReactiveAuthenticationManager manager;
+
+	@BeforeEach
+	public void setUp() {
+		this.manager = new CachingReactiveAuthenticationManager((authentication) -> {
+			this.verifications.incrementAndGet();
+			if (!"secret".equals(authentication.getCredentials())) {
+				return Mono.error(new BadCredentialsException("Invalid Credentials"));
+			}
+			return Mono.just(UsernamePasswordAuthenticationToken.authenticated(authentication.getName(), "encoded",
+					AuthorityUtils.createAuthorityList(SecurityAuthorities.FULL_ACCESS)));
+		}, 100, Duration.ofMinutes(5));
+	}
+
+	@Test
+	public void repeatedValidCredentialsAreVerifiedOnce() {
+		StepVerifier.create(this.manager.authenticate(token("user", "secret")))
+			.assertNext((authentication) -> assertThat(authentication.isAuthenticated()).isTrue())
+			.verifyComplete();
+		StepVerifier.create(this.manager.authenticate(token("user", "secret")))
+			.assertNext((authentication) -> assertThat(authentication.getName()).isEqualTo("user"))
+			.verifyComplete();
+
+		assertThat(this.verifications).hasValue(1);
+	}
+
+	@Test
+	public void invalidCredentialsAreNeverCached() {
+		StepVerifier.create(this.manager.authenticate(token("user", "secret"))).expectNextCount(1).verifyComplete();
+		StepVerifier.create(this.manager.authenticate(token("user", "wrong")))
+			.verifyError(BadCredentialsException.class);
+		StepVerifier.create(this.manager.authenticate(token("user", "wrong")))
+			.verifyError(BadCredentialsException.class);
+
+		assertThat(this.verifications).hasValue(3);
+	}
+
+	@Test
+	public void userDeletedEventEvictsCachedCredentials() {
+		StepVerifier.create(this.manager.authenticate(token("user", "secret"))).expectNextCount(1).verifyComplete();
+		StepVerifier.create(this.manager.authenticate(token("other", "secret"))).expectNextCount(1).verifyComplete();
+
+		this.manager.onApplicationEvent(new UserDeletedEvent("user"));
+
+		StepVerifier.create(this.manager.authenticate(token("user", "secret"))).expectNextCount(1).verifyComplete();
+		StepVerifier.create(this.manager.authenticate(token("other", "secret"))).expectNextCount(1).verifyComplete();
+
+		assertThat(this.verifications).hasValue(3);
+	}
+
+	private static UsernamePasswordAuthenticationToken token(String username, String password) {
+		return UsernamePasswordAuthenticationToken.unauthenticated(username, password);
+	}
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.security;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import org.springframework.cloud.sample.bookstore.web.service.UserDeletedEvent;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CachingReactiveUserDetailsServiceTests {
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	private CachingReactiveUserDetailsService service;
+
+	@BeforeEach
+	public void setUp() {
+		this.service = new CachingReactiveUserDetailsService((username) -> {
+			this.loads.incrementAndGet();
+			if ("missing".equals(username)) {
+				return Mono.error(new UsernameNotFoundException(username));
+			}
+			return Mono.just(User.withUsername(username)
+				.password("encoded")
+				.authorities(SecurityAuthorities.FULL_ACCESS)
+				.build());
+		}, 100, Duration.ofMinutes(5));
+	}
+
+	@Test
+	public void repeatedLookupsLoadOnce() {
+		StepVerifier.create(this.service.findByUsername("user"))
+			.assertNext((user) -> assertThat(user.getUsername()).isEqualTo("user"))
+			.verifyComplete();
+		StepVerifier.create(this.service.findByUsername("user")).expectNextCount(1).verifyComplete();
+
+		assertThat(this.loads).hasValue(1);
+	}
+
+	@Test
+	public void failedLookupsAreNotCached() {
+		StepVerifier.create(this.service.findByUsername("missing")).verifyError(UsernameNotFoundException.class);
+		StepVerifier.create(this.service.findByUsername("missing")).verifyError(UsernameNotFoundException.class);
+
+		assertThat(this.loads).hasValue(2);
+	}
+
+	@Test
+	public void evictForcesReload() {
+		StepVerifier.create(this.service.findByUsername("user")).expectNextCount(1).verifyComplete();
+
+		this.service.evict("user");
+
+		StepVerifier.create(this.service.findByUsername("user")).expectNextCount(1).verifyComplete();
+
+		assertThat(this.loads).hasValue(2);
+	}
+
+	@Test
+	public void userDeletedEventForcesReload() {
+		StepVerifier.create(this.service.findByUsername("user")).expectNextCount(1).verifyComplete();
+
+		this.service.onApplicationEvent(new UserDeletedEvent("user"));
+
+		StepVerifier.create(this.service.findByUsername("user")).expectNextCount(1).verifyComplete();
+
+		assertThat(this.loads).hasValue(2);
+	}
+
+	@Test
+	public void hitsAndMissesArePublishedAsMetrics() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		this.service.bindTo(registry);
+
+		StepVerifier.create(this.service.findByUsername("user")).expectNextCount(1).verifyComplete();
+		StepVerifier.create(this.service.findByUsername("user")).expectNextCount(1).verifyComplete();
+
+		assertThat(cacheGets(registry, "hit")).isEqualTo(1);
+		assertThat(cacheGets(registry, "miss")).isEqualTo(1);
+	}
+
+	private static double cacheGets(SimpleMeterRegistry registry, String result) {
+		return registry.get("cache.gets").tag("cache", "userDetails").tag("result", result).functionCounter().count();
+	}
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.service;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import org.springframework.cloud.sample.bookstore.web.model.Book;
+import org.springframework.cloud.sample.bookstore.web.service.BookStoreChangedEvent.ChangeType;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BookStoreEventBrokerTests {
+
+	private static final String BOOK_STORE_ID = "store";
+
+	private final BookStoreEventBroker broker = new BookStoreEventBroker(2, false);
+
+	@Test
+	public void subscribersReceiveChangesOfTheirBookStoreUntilItIsDeleted() {
+		BookStoreChangedEvent added = event(BOOK_STORE_ID, ChangeType.BOOKS_ADDED, "book 1");
+		BookStoreChangedEvent removed = event(BOOK_STORE_ID, ChangeType.BOOKS_REMOVED, "book 1");
+		BookStoreChangedEvent deleted = new BookStoreChangedEvent(BOOK_STORE_ID, ChangeType.BOOK_STORE_DELETED,
+				List.of(), null);
+
+		StepVerifier.create(this.broker.subscribe(BOOK_STORE_ID)).then(() -> {
+			this.broker.onApplicationEvent(added);
+			this.broker.onApplicationEvent(event("other store", ChangeType.BOOKS_ADDED, "book 2"));
+			this.broker.onApplicationEvent(removed);
+			this.broker.onApplicationEvent(deleted);
+		}).expectNext(added, removed, deleted).verifyComplete();
+	}
+
+	@Test
+	public void slowSubscriberOverflowsWithoutHoldingUpOthers() {
+		StepVerifier.create(this.broker.subscribe(BOOK_STORE_ID))
+			.then(() -> StepVerifier.create(this.broker.subscribe(BOOK_STORE_ID), 0).then(() -> {
+				for (int i = 0; i < 3; i++) {
+					this.broker.onApplicationEvent(event(BOOK_STORE_ID, ChangeType.BOOKS_ADDED, "book " + i));
+				}
+			}).thenRequest(2).expectNextCount(2).expectErrorMatches(Exceptions::isOverflow).verify())
+			.expectNextCount(3)
+			.thenCancel()
+			.verify();
+	}
+
+	@Test
+	public void concurrentlyPublishedChangesAreAllDelivered() {
+		BookStoreEventBroker broker = new BookStoreEventBroker(1000, false);
+
+		StepVerifier.create(broker.subscribe(BOOK_STORE_ID))
+			.then(() -> Flux.range(0, 1000)
+				.parallel(4)
+				.runOn(Schedulers.parallel())
+				.doOnNext((i) -> broker.publish(event(BOOK_STORE_ID, ChangeType.BOOKS_ADDED, "book " + i)))
+				.sequential()
+				.blockLast())
+			.expectNextCount(1000)
+			.thenCancel()
+			.verify(Duration.ofSeconds(10));
+	}
+
+	@Test
+	public void changesWithoutSubscribersAreDropped() {
+		this.broker.onApplicationEvent(event(BOOK_STORE_ID, ChangeType.BOOKS_ADDED, "book 1"));
+		BookStoreChangedEvent added = event(BOOK_STORE_ID, ChangeType.BOOKS_ADDED, "book 2");
+
+		StepVerifier.create(this.broker.subscribe(BOOK_STORE_ID))
+			.then(() -> this.broker.onApplicationEvent(added))
+			.assertNext((event) -> assertThat(event.getBooks()).extracting(Book::getId).containsExactly("book 2"))
+			.thenCancel()
+			.verify();
+	}
+
+	@Test
+	public void resyncFailsSubscribersWithOverflow() {
+		StepVerifier.create(this.broker.subscribe(BOOK_STORE_ID))
+			.then(this.broker::resyncAll)
+			.expectErrorMatches(Exceptions::isOverflow)
+			.verify();
+
+		BookStoreChangedEvent added = event(BOOK_STORE_ID, ChangeType.BOOKS_ADDED, "book 1");
+		StepVerifier.create(this.broker.subscribe(BOOK_STORE_ID))
+			.then(() -> this.broker.onApplicationEvent(added))
+			.expectNext(added)
+			.thenCancel()
+			.verify();
+	}
+
+	@Test
+	public void relayedBrokerOnlyDeliversPublishedChanges() {
+		BookStoreEventBroker relayedBroker = new BookStoreEventBroker(2, true);
+		BookStoreChangedEvent local = event(BOOK_STORE_ID, ChangeType.BOOKS_ADDED, "book 1");
+		BookStoreChangedEvent relayed = event(BOOK_STORE_ID, ChangeType.BOOKS_ADDED, "book 2");
+
+		StepVerifier.create(relayedBroker.subscribe(BOOK_STORE_ID)).then(() -> {
+			relayedBroker.onApplicationEvent(local);
+			relayedBroker.publish(relayed);
+		}).expectNext(relayed).thenCancel().verify();
+	}
+
+	private static BookStoreChangedEvent event(String bookStoreId, ChangeType changeType, String bookId) {
+		return new BookStoreChangedEvent(bookStoreId, changeType,
+				List.of(new Book(bookId, bookStoreId, new Book("isbn", "title", "author"))), 1L);
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrefixTreeTests {
+
+	private final PrefixTree tree = new PrefixTree();
+
+	@Test
+	public void termsAreFoundFromAnyWordIgnoringCase() {
+		this.tree.add("Spring Boot in Action");
+		this.tree.add("Learning Spring Boot");
+		this.tree.add("Cloud Native Java");
+
+		assertThat(this.tree.suggest("spr", 10)).containsExactly("Learning Spring Boot", "Spring Boot in Action");
+		assertThat(this.tree.suggest("ACT", 10)).containsExactly("Spring Boot in Action");
+		assertThat(this.tree.suggest("boot in", 10)).containsExactly("Spring Boot in Action");
+		assertThat(this.tree.suggest("pring", 10)).isEmpty();
+	}
+
+	@Test
+	public void suggestionsAreLimited() {
+		for (int i = 0; i < 20; i++) {
+			this.tree.add("Volume " + i);
+		}
+
+		assertThat(this.tree.suggest("vol", 5)).hasSize(5).doesNotHaveDuplicates();
+	}
+
+	@Test
+	public void termIsRemovedWithItsLastOccurrence() {
+		this.tree.add("Reactive Spring");
+		this.tree.add("Reactive Spring");
+
+		this.tree.remove("Reactive Spring");
+		assertThat(this.tree.suggest("rea", 10)).containsExactly("Reactive Spring");
+
+		this.tree.remove("Reactive Spring");
+		assertThat(this.tree.suggest("rea", 10)).isEmpty();
+	}
+
+	@Test
+	public void removedTermsReleaseTheirNodes() {
+		long emptySize = this.tree.estimatedSize();
+		this.tree.add("Spring Boot in Action");
+		assertThat(this.tree.estimatedSize()).isGreaterThan(emptySize);
+
+		this.tree.remove("Spring Boot in Action");
+
+		assertThat(this.tree.estimatedSize()).isEqualTo(emptySize);
+	}
+
+}
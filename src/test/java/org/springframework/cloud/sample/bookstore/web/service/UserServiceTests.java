@@ -0,0 +1,179 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.sample.bookstore.web.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import org.springframework.cloud.sample.bookstore.config.SecurityConfiguration;
+import org.springframework.cloud.sample.bookstore.web.model.User;
+import org.springframework.cloud.sample.bookstore.web.repository.UserRepository;
+import org.springframework.cloud.sample.bookstore.web.security.RepositoryUserDetailsService;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.openMocks;
+import static org.springframework.cloud.sample.bookstore.web.security.SecurityAuthorities.BOOK_STORE_ID_PREFIX;
+import static org.springframework.cloud.sample.bookstore.web.security.SecurityAuthorities.FULL_ACCESS;
+
+public class UserServiceTests {
+
+	private static final String SCHEDULER_NAME = "password-encoder-test";
+
+	@Mock
+	private UserRepository repository;
+
+	private final Queue<Thread> encoderThreads = new ConcurrentLinkedQueue<>();
+
+	private final Queue<Object> publishedEvents = new ConcurrentLinkedQueue<>();
+
+	private Scheduler scheduler;
+
+	private UserService service;
+
+	@BeforeEach
+	public void setUp() {
+		openMocks(this);
+		this.scheduler = Schedulers.newBoundedElastic(1, 10, SCHEDULER_NAME);
+		this.service = new UserService(this.repository, new ThreadRecordingPasswordEncoder(), this.scheduler,
+				this.publishedEvents::add);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		this.scheduler.dispose();
+	}
+
+	@Test
+	public void passwordIsNeverEncodedOnNonBlockingThread() {
+		given(this.repository.save(any(User.class))).willAnswer((invocation) -> Mono.just(invocation.getArgument(0)));
+
+		Mono<User> createdOnEventLoop = Mono.defer(() -> this.service.createUser("user", FULL_ACCESS))
+			.subscribeOn(Schedulers.parallel());
+
+		StepVerifier.create(createdOnEventLoop)
+			.assertNext((user) -> assertThat(user.getPassword()).hasSize(12))
+			.verifyComplete();
+
+		assertThat(this.encoderThreads).hasSize(1);
+		assertThat(this.encoderThreads).allSatisfy((thread) -> {
+			assertThat(thread.getName()).startsWith(SCHEDULER_NAME);
+			assertThat(Schedulers.isNonBlockingThread(thread)).isFalse();
+		});
+	}
+
+	@Test
+	public void passwordIsNeverVerifiedOnNonBlockingThread() {
+		User user = new User("user", new BCryptPasswordEncoder(4).encode("password"), FULL_ACCESS);
+		given(this.repository.findByUsername("user")).willReturn(Mono.just(user));
+		ReactiveAuthenticationManager manager = new SecurityConfiguration().authenticationManager(
+				new RepositoryUserDetailsService(this.repository), new ThreadRecordingPasswordEncoder(), this.scheduler,
+				10, Duration.ofMinutes(5));
+
+		Mono<Authentication> authenticatedOnEventLoop = Mono
+			.defer(() -> manager.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("user", "password")))
+			.subscribeOn(Schedulers.parallel());
+
+		StepVerifier.create(authenticatedOnEventLoop)
+			.assertNext((authentication) -> assertThat(authentication.isAuthenticated()).isTrue())
+			.verifyComplete();
+
+		assertThat(this.encoderThreads).hasSize(1);
+		assertThat(this.encoderThreads).allSatisfy((thread) -> {
+			assertThat(thread.getName()).startsWith(SCHEDULER_NAME);
+			assertThat(Schedulers.isNonBlockingThread(thread)).isFalse();
+		});
+	}
+
+	@Test
+	public void deleteUserPublishesUserDeletedEvent() {
+		User user = new User("user", "encoded", FULL_ACCESS);
+		given(this.repository.findByUsername("user")).willReturn(Mono.just(user));
+		given(this.repository.deleteById(user.getId())).willReturn(Mono.empty());
+
+		StepVerifier.create(this.service.deleteUser("user")).verifyComplete();
+
+		assertThat(List.copyOf(this.publishedEvents)).singleElement()
+			.isInstanceOfSatisfying(UserDeletedEvent.class,
+					(event) -> assertThat(event.getUsername()).isEqualTo("user"));
+	}
+
+	@Test
+	public void deleteBookStoreUsersDeletesInBulkAndPublishesUserDeletedEvents() {
+		String authority = BOOK_STORE_ID_PREFIX + "bookstore";
+		given(this.repository.findByAuthorities(authority)).willReturn(Flux
+			.just(new User("user1", "encoded", FULL_ACCESS, authority), new User("user2", "encoded", authority)));
+		given(this.repository.deleteByUsernameIn(List.of("user1", "user2"))).willReturn(Mono.just(2L));
+
+		StepVerifier.create(this.service.deleteBookStoreUsers("bookstore"))
+			.expectNext("user1", "user2")
+			.verifyComplete();
+
+		verify(this.repository).deleteByUsernameIn(List.of("user1", "user2"));
+		verify(this.repository, never()).deleteById(any(String.class));
+		assertThat(this.publishedEvents).hasSize(2);
+	}
+
+	@Test
+	public void deleteBookStoreUsersWithoutUsersDeletesNothing() {
+		given(this.repository.findByAuthorities(BOOK_STORE_ID_PREFIX + "bookstore")).willReturn(Flux.empty());
+
+		StepVerifier.create(this.service.deleteBookStoreUsers("bookstore")).verifyComplete();
+
+		verify(this.repository, never()).deleteByUsernameIn(any());
+		assertThat(this.publishedEvents).isEmpty();
+	}
+
+	private final class ThreadRecordingPasswordEncoder implements PasswordEncoder {
+
+		private final PasswordEncoder delegate = new BCryptPasswordEncoder(4);
+
+		@Override
+		public String encode(CharSequence rawPassword) {
+			UserServiceTests.this.encoderThreads.add(Thread.currentThread());
+			return this.delegate.encode(rawPassword);
+		}
+
+		@Override
+		public boolean matches(CharSequence rawPassword, String encodedPassword) {
+			UserServiceTests.this.encoderThreads.add(Thread.currentThread());
+			return this.delegate.matches(rawPassword, encodedPassword);
+		}
+
+	}
+
+}